@@ -156,6 +156,59 @@ public class AppletToServletChannel {
     return null;
   }
 
+  /**
+   *  Fetch a serialized object from a server with a GET request.  Nothing is
+   *  posted, so the browser's HTTP cache may keep the response and
+   *  revalidate it with the server, rather than download it again.
+   *  @param u The String representation of the URL suffix
+   *  @return The stream response from the server.
+   */
+  public ObjectInputStream objectGet (String u)
+  {
+    dbg("AppletToServletChannel::objectGet: " + u);
+    retryCount = getNumRetries();
+    try {
+      return objectGet(new URL(urlBase + u));
+    }
+    catch (MalformedURLException mfe)
+    {
+      mfe.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   *  Fetch a serialized object from a server with a GET request.
+   *  @param u The URL to access.
+   *  @return The stream response from the server.
+   */
+  protected ObjectInputStream objectGet (URL u)
+  {
+    try {
+      URLConnection conn = u.openConnection();
+      conn.setUseCaches(true);
+      insertCookie(conn);
+      conn.setDoInput(true);
+      return new ObjectInputStream(conn.getInputStream());
+    }
+    catch (java.io.IOException jrunBad) {
+      dbg("Retry--" + retryCount);
+      retryCount--;
+      if (retryCount >= 0)
+        return objectGet(u);
+      else
+      {
+        System.out.println("AppletToServletChannel::objectGet:  ERROR--" + jrunBad);
+        jrunBad.printStackTrace();
+      }
+    }
+    catch (Exception oh_no) {
+      System.out.println("AppletToServletChannel::objectGet:  ERROR--" + oh_no);
+      oh_no.printStackTrace();
+    }
+    return null;
+  }
+
   private byte [] makeByteArray(Object obj)
   {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -100,16 +100,16 @@ public class BasicToolTip {
     //if we haven't gotten this domain yet,
     if(! (explanationTable.containsKey(domain))) {
       domainTable= new Hashtable();
-      //get the domain hashtable and add it to our explanation table
-      String command = "?command=LOOKUPDOMAIN&label="+ URLEncoder.encode(label) +
-          "&domain="+domain;
+      //get the domain hashtable and add it to our explanation table.  The
+      //URL names only the domain, so that a cached copy serves every label.
+      String command = "?command=LOOKUPDOMAIN&domain=" + URLEncoder.encode(domain);
       String servletURL = BasicFrame.fgiDocumentBase + "ExplanationServlet";
       AppletToServletChannel ch = new AppletToServletChannel(servletURL);
       ch.setCookie(BasicFrame.fgiCookieString);
 
-      AppletToServletParcel box = new AppletToServletParcel(command, null);
       try {
-        box = (AppletToServletParcel)(ch.objectRequest(command, box)).readObject();
+        AppletToServletParcel box =
+          (AppletToServletParcel)(ch.objectGet(command)).readObject();
         domainTable = (Hashtable) box.parcel;
         explanationTable.put(domain, domainTable);
       }
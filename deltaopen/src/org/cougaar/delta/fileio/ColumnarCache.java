@@ -0,0 +1,468 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps parsed copies of formatted files in a binary, columnar form, so that
+ * a file read several times in a run is parsed only once.  The first call to
+ * {@link #open(FormattedFile)} for a file reads it with the rules of
+ * {@link FormattedFile#getRecord()} and writes a cache file holding, for each
+ * record type, a column per field:  Integers as ints and Doubles as doubles,
+ * each with a bitmap of the values that were missing or malformed, and
+ * Strings (and fields of other types) as codes into a dictionary of the
+ * distinct values.  Later calls find the cache file by the path of the
+ * source and use it as long as the source's modification time and length,
+ * and the file definition, are unchanged, reading the columns through a
+ * memory mapping with no parsing at all.
+ * <p>
+ * A cache file is mapped whole, so it is limited to 2GB, or less if
+ * setMaxCacheSize says so; the limit also bounds the columns held in memory
+ * while a cache is built.  open() returns null for a file whose cache would
+ * be larger, and the file should be read with FormattedFile instead.
+ * <p>
+ * Cache files are kept in (data path)\cache unless another directory is
+ * given.
+ * <p>
+ * Example:
+ * <PRE>
+ *    FormattedFile f = FileFormatter.newInputFile("MILSTRIP", "samplea0.txt");
+ *    ColumnarFile cf = new ColumnarCache().open(f);
+ *    if (cf == null)
+ *       ...  // too large to cache; read f with getRecord()
+ *    ColumnarFile.Column qty = cf.getColumn("A0", "quantity");
+ *    for (int row = 0; row < qty.getRowCount(); row++)
+ *       if (!qty.isNull(row))
+ *          total += qty.getInt(row);
+ *    cf.close();
+ * </PRE>
+ * @see ColumnarFile
+ */
+public class ColumnarCache
+{
+  static final int MAGIC = 0x44434f4c;
+  static final int VERSION = 2;
+
+  private File directory;
+  private long maxCacheSize = Integer.MAX_VALUE;
+
+  /**
+   * Uses the cache directory under the data directory.
+   */
+  public ColumnarCache() {
+    this(new File(FileFormatter.getDataDirectory(), "cache"));
+  }
+
+  /**
+   * Uses the given cache directory.
+   */
+  public ColumnarCache(File directory) {
+    this.directory = directory;
+  }
+
+  public File getDirectory() { return directory; }
+
+  /**
+   * Sets the size, in bytes, of the largest cache file to build; at most
+   * Integer.MAX_VALUE, the most that can be mapped at once.
+   */
+  public void setMaxCacheSize(long size) {
+    maxCacheSize = Math.min(size, Integer.MAX_VALUE);
+  }
+
+  public long getMaxCacheSize() { return maxCacheSize; }
+
+  /**
+   * Opens the cached columns of a FormattedFile, building them if they are
+   * missing or out of date.
+   * @return the columns, or null if the file is too large to cache
+   * @throws IOException if the file cannot be read or the cache written
+   */
+  public ColumnarFile open(FormattedFile f) throws IOException {
+    return open(f.getFileDefinition(), f.getFileName());
+  }
+
+  /**
+   * Opens the cached columns of a file, building them if they are missing
+   * or out of date.
+   * @param fd the format of the file
+   * @param filename the name of the file
+   * @return the columns, or null if the file is too large to cache
+   * @throws IOException if the file cannot be read or the cache written
+   */
+  public ColumnarFile open(FileDefinition fd, String filename) throws IOException {
+    File source = new File(filename).getAbsoluteFile();
+    File cache = getCacheFile(source);
+    if (cache.exists()) {
+      try {
+        ColumnarFile cf = new ColumnarFile(cache);
+        if (cf.isCurrent(source, fd))
+          return cf;
+        cf.close();
+      }
+      catch (IOException ioe) {
+        System.err.println("ColumnarCache::open:  rebuilding unreadable cache " + cache + ":  " + ioe);
+      }
+    }
+    if (estimateSize(fd, source) > maxCacheSize || !build(fd, source, cache)) {
+      System.err.println("ColumnarCache::open:  " + source + " is too large to cache");
+      return null;
+    }
+    return new ColumnarFile(cache);
+  }
+
+  /**
+   * Returns a fingerprint of a file definition:  a checksum of its record
+   * types and the positions, types and padding of their fields.  A cache is
+   * used only with the definition it was built with.
+   */
+  public static long fingerprint(FileDefinition fd) {
+    StringBuffer b = new StringBuffer();
+    b.append(".offset ").append(fd.getRecordNameOffset()).append('\n');
+    Enumeration e = fd.getRecordDefinitions();
+    while (e.hasMoreElements()) {
+      RecordDefinition rd = (RecordDefinition) e.nextElement();
+      RecordLayout layout = rd.getLayout();
+      b.append('[').append(rd.getRecordName()).append("]\n");
+      for (int h = 0; h < layout.getFieldCount(); h++) {
+        FieldDefinition f = layout.getFieldDefinition(h);
+        b.append(f.getFieldName()).append(' ').append(f.getStartPosition())
+          .append('-').append(f.getEndPosition()).append(' ')
+          .append(f.getDataType()).append(' ').append(f.getJustification())
+          .append(' ').append(f.getPaddingChar()).append(' ')
+          .append(f.getImpliedDecimals()).append('\n');
+      }
+    }
+    CRC32 crc = new CRC32();
+    String s = b.toString();
+    for (int i = 0; i < s.length(); i++)
+      crc.update(s.charAt(i));
+    return crc.getValue();
+  }
+
+  // Estimate the size of the cache of a file before building it, from the
+  // widest record type and the number of records of the shortest that the
+  // file could hold, counting each String value as distinct
+  private static long estimateSize(FileDefinition fd, File source) {
+    long perRecord = 0;
+    Enumeration e = fd.getRecordDefinitions();
+    while (e.hasMoreElements()) {
+      RecordLayout layout = ((RecordDefinition) e.nextElement()).getLayout();
+      long n = 2;
+      for (int h = 0; h < layout.getFieldCount(); h++) {
+        int type = layout.getType(h);
+        n += (type == RecordLayout.TYPE_DOUBLE ? 8 :
+          type == RecordLayout.TYPE_INTEGER ? 4 : 8 + layout.getWidth(h)) + 1;
+      }
+      perRecord = Math.max(perRecord, n);
+    }
+    long records = source.length() / (Math.max(0, fd.getMinRecordLength()) + 1);
+    return records * perRecord;
+  }
+
+  /**
+   * Returns the cache file for a source file, named after the source and
+   * the hash of its full path.
+   */
+  public File getCacheFile(File source) {
+    String path = source.getAbsolutePath();
+    return new File(directory, source.getName() + "." +
+      Integer.toHexString(path.hashCode()) + ".col");
+  }
+
+  /**
+   * Parses a file and writes its columns to a cache file.  The columns are
+   * written to a temporary file first, so that a reader never sees a
+   * partial cache.
+   * @return false, writing nothing, if the cache would be larger than the
+   * largest allowed
+   */
+  boolean build(FileDefinition fd, File source, File cache) throws IOException {
+    long modified = source.lastModified();
+    long length = source.length();
+
+    // one table of columns for each record type, in the order of the .des file
+    Vector tables = new Vector();
+    Hashtable tablesByDef = new Hashtable();
+    Enumeration e = fd.getRecordDefinitions();
+    while (e.hasMoreElements()) {
+      RecordDefinition rd = (RecordDefinition) e.nextElement();
+      Table t = new Table(rd, tables.size());
+      tables.addElement(t);
+      tablesByDef.put(rd, t);
+    }
+
+    IntBuilder sequence = new IntBuilder();
+    MappedFormattedFile mf = new MappedFormattedFile(fd, source.getPath(),
+      MappedFormattedFile.DEFAULT_WINDOW_SIZE);
+    mf.open();
+    try {
+      MappedRecord r = null;
+      while ((r = mf.nextRecord()) != null) {
+        Table t = (Table) tablesByDef.get(r.getRecordDefinition());
+        sequence.add(t.index);
+        t.add(r);
+      }
+    }
+    finally {
+      mf.close();
+    }
+
+    String path = source.getAbsolutePath();
+    long size = 4 + 4 + 2 + path.length() + 8 + 8 + 8 + 4 + 2L * sequence.size + 4;
+    for (int i = 0; i < tables.size(); i++)
+      size += ((Table) tables.elementAt(i)).size();
+    if (size > maxCacheSize)
+      return false;
+
+    directory.mkdirs();
+    File tmp = File.createTempFile(cache.getName(), ".tmp", directory);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(tmp), 64 * 1024));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeName(out, path);
+      out.writeLong(modified);
+      out.writeLong(length);
+      out.writeLong(fingerprint(fd));
+      out.writeInt(sequence.size);
+      for (int i = 0; i < sequence.size; i++)
+        out.writeShort(sequence.values[i]);
+      out.writeInt(tables.size());
+      for (int i = 0; i < tables.size(); i++)
+        ((Table) tables.elementAt(i)).write(out);
+    }
+    finally {
+      out.close();
+    }
+    cache.delete();
+    if (!tmp.renameTo(cache)) {
+      tmp.delete();
+      throw new IOException("Unable to create " + cache);
+    }
+    return true;
+  }
+
+  // Names are written as a length and one byte per character
+  static void writeName(DataOutputStream out, String s) throws IOException {
+    out.writeShort(s.length());
+    for (int i = 0; i < s.length(); i++)
+      out.writeByte(s.charAt(i));
+  }
+
+  /**
+   * The columns of one record type, as they are built.
+   */
+  private static class Table {
+    RecordDefinition recordDefinition;
+    RecordLayout layout;
+    int index;
+    int rows;
+    ColumnBuilder[] columns;
+
+    Table(RecordDefinition rd, int index) {
+      recordDefinition = rd;
+      layout = rd.getLayout();
+      this.index = index;
+      columns = new ColumnBuilder[layout.getFieldCount()];
+      for (int i = 0; i < columns.length; i++)
+        columns[i] = new ColumnBuilder(layout.getType(i));
+    }
+
+    void add(MappedRecord r) {
+      for (int i = 0; i < columns.length; i++)
+        columns[i].add(r, layout, i);
+      rows++;
+    }
+
+    // the number of bytes write() will write
+    long size() {
+      long n = 2 + recordDefinition.getRecordName().length() + 4 + 4;
+      for (int i = 0; i < columns.length; i++)
+        n += 2 + layout.getFieldDefinition(i).getFieldName().length() +
+          columns[i].size(rows);
+      return n;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      writeName(out, recordDefinition.getRecordName());
+      out.writeInt(rows);
+      out.writeInt(columns.length);
+      for (int i = 0; i < columns.length; i++) {
+        writeName(out, layout.getFieldDefinition(i).getFieldName());
+        columns[i].write(out, rows);
+      }
+    }
+  }
+
+  /**
+   * The values of one field, as they are built.
+   */
+  private static class ColumnBuilder {
+    int type;
+    IntBuilder ints;
+    double[] doubles;
+    byte[] nulls = new byte[16];
+    // the dictionary of a String column
+    Hashtable codes;
+    Vector dictionary;
+    int rows;
+
+    ColumnBuilder(int type) {
+      this.type = type;
+      if (type == RecordLayout.TYPE_DOUBLE)
+        doubles = new double[64];
+      else
+        ints = new IntBuilder();
+      if (type != RecordLayout.TYPE_INTEGER && type != RecordLayout.TYPE_DOUBLE) {
+        codes = new Hashtable();
+        dictionary = new Vector();
+      }
+    }
+
+    void add(MappedRecord r, RecordLayout layout, int handle) {
+      boolean present = layout.isPresent(r, handle);
+      boolean isNull = !present;
+      if (type == RecordLayout.TYPE_INTEGER) {
+        int v = 0;
+        if (present) {
+          long l = layout.parseInteger(r, handle, Integer.MIN_VALUE, Integer.MAX_VALUE);
+          if (l == RecordLayout.MALFORMED)
+            isNull = true;
+          else
+            v = (int) l;
+        }
+        ints.add(v);
+      }
+      else if (type == RecordLayout.TYPE_DOUBLE) {
+        double v = 0;
+        if (present) {
+          v = layout.parseDecimal(r, handle);
+          if (Double.isNaN(v)) {
+            isNull = true;
+            v = 0;
+          }
+        }
+        if (rows == doubles.length) {
+          double[] d = new double[2 * rows];
+          System.arraycopy(doubles, 0, d, 0, rows);
+          doubles = d;
+        }
+        doubles[rows] = v;
+      }
+      else {
+        int code = -1;
+        if (present) {
+          String s = layout.readString(r, handle);
+          Integer c = (Integer) codes.get(s);
+          if (c == null) {
+            c = new Integer(dictionary.size());
+            codes.put(s, c);
+            dictionary.addElement(s);
+          }
+          code = c.intValue();
+        }
+        ints.add(code);
+      }
+      if (rows / 8 == nulls.length) {
+        byte[] b = new byte[2 * nulls.length];
+        System.arraycopy(nulls, 0, b, 0, nulls.length);
+        nulls = b;
+      }
+      if (isNull)
+        nulls[rows / 8] |= (byte) (1 << (rows % 8));
+      rows++;
+    }
+
+    // the number of bytes write() will write
+    long size(int rows) {
+      long n = 1 + (rows + 7) / 8;
+      if (type == RecordLayout.TYPE_INTEGER)
+        return n + 4L * rows;
+      if (type == RecordLayout.TYPE_DOUBLE)
+        return n + 8L * rows;
+      n += 4 + 4L * (dictionary.size() + 1) + 4L * rows;
+      for (int i = 0; i < dictionary.size(); i++)
+        n += ((String) dictionary.elementAt(i)).length();
+      return n;
+    }
+
+    void write(DataOutputStream out, int rows) throws IOException {
+      out.writeByte(type);
+      out.write(nulls, 0, (rows + 7) / 8);
+      if (type == RecordLayout.TYPE_INTEGER) {
+        for (int i = 0; i < rows; i++)
+          out.writeInt(ints.values[i]);
+      }
+      else if (type == RecordLayout.TYPE_DOUBLE) {
+        for (int i = 0; i < rows; i++)
+          out.writeDouble(doubles[i]);
+      }
+      else {
+        // the dictionary:  its size, the offsets of its values, their characters
+        int n = dictionary.size();
+        out.writeInt(n);
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+          out.writeInt(offset);
+          offset += ((String) dictionary.elementAt(i)).length();
+        }
+        out.writeInt(offset);
+        for (int i = 0; i < n; i++) {
+          String s = (String) dictionary.elementAt(i);
+          for (int j = 0; j < s.length(); j++)
+            out.writeByte(s.charAt(j));
+        }
+        for (int i = 0; i < rows; i++)
+          out.writeInt(ints.values[i]);
+      }
+    }
+  }
+
+  /**
+   * A growable array of ints.
+   */
+  private static class IntBuilder {
+    int[] values = new int[64];
+    int size;
+
+    void add(int v) {
+      if (size == values.length) {
+        int[] a = new int[2 * size];
+        System.arraycopy(values, 0, a, 0, size);
+        values = a;
+      }
+      values[size++] = v;
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+
+/**
+ * The columns of a formatted file, read through a memory mapping of a cache
+ * file written by {@link ColumnarCache}.  The records of each type form a
+ * table, with a {@link Column} for each field of the record type (including
+ * those it extends); rows are numbered from 0 in the order of the source
+ * file.  The type of every record, in order, is kept as well, so the file
+ * can also be walked as it was written.
+ * <p>
+ * Values are read straight from the mapping.  A Column's values match what
+ * {@link FormattedRecord#readField(String)} returns for the same record:  a
+ * missing or malformed Integer or Double is null (see isNull()), and fields
+ * of other data types are kept as Strings.
+ */
+public class ColumnarFile
+{
+  private File file;
+  private RandomAccessFile raf;
+  private MappedByteBuffer buf;
+
+  private String sourcePath;
+  private long sourceModified;
+  private long sourceLength;
+  private long definitionFingerprint;
+  private int recordCount;
+  // the position of the record types in file order
+  private int sequenceStart;
+  private String[] recordTypes;
+  private int[] rowCounts;
+  // a Hashtable of Columns for each record type
+  private Hashtable[] columns;
+  // for each record in file order, its row in its table; built on first use
+  private int[] rowOf;
+
+  /**
+   * Opens a cache file.
+   * @throws IOException if the file cannot be read or is not a cache file
+   */
+  public ColumnarFile(File file) throws IOException {
+    this.file = file;
+    raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Cache file too large: " + file);
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      readDirectory();
+    }
+    catch (IOException ioe) {
+      close();
+      throw ioe;
+    }
+    catch (RuntimeException re) {
+      // a truncated or damaged file
+      close();
+      throw new IOException("Bad cache file " + file + ":  " + re);
+    }
+  }
+
+  // Find the columns, without reading their values
+  private void readDirectory() throws IOException {
+    if (buf.getInt() != ColumnarCache.MAGIC || buf.getInt() != ColumnarCache.VERSION)
+      throw new IOException("Not a cache file: " + file);
+    sourcePath = readName();
+    sourceModified = buf.getLong();
+    sourceLength = buf.getLong();
+    definitionFingerprint = buf.getLong();
+    recordCount = buf.getInt();
+    sequenceStart = buf.position();
+    buf.position(sequenceStart + 2 * recordCount);
+
+    int n = buf.getInt();
+    recordTypes = new String[n];
+    rowCounts = new int[n];
+    columns = new Hashtable[n];
+    for (int i = 0; i < n; i++) {
+      recordTypes[i] = readName();
+      int rows = rowCounts[i] = buf.getInt();
+      int cols = buf.getInt();
+      columns[i] = new Hashtable();
+      for (int j = 0; j < cols; j++) {
+        String name = readName();
+        Column c = new Column(name, buf.get(), rows);
+        columns[i].put(name, c);
+        c.nulls = buf.position();
+        int pos = c.nulls + (rows + 7) / 8;
+        if (c.type == RecordLayout.TYPE_INTEGER) {
+          c.values = pos;
+          pos += 4 * rows;
+        }
+        else if (c.type == RecordLayout.TYPE_DOUBLE) {
+          c.values = pos;
+          pos += 8 * rows;
+        }
+        else {
+          int size = buf.getInt(pos);
+          c.dictionary = new String[size];
+          c.offsets = pos + 4;
+          c.chars = c.offsets + 4 * (size + 1);
+          c.values = c.chars + buf.getInt(c.offsets + 4 * size);
+          pos = c.values + 4 * rows;
+        }
+        buf.position(pos);
+      }
+    }
+  }
+
+  private String readName() {
+    int n = buf.getShort();
+    char[] c = new char[n];
+    for (int i = 0; i < n; i++)
+      c[i] = (char) (buf.get() & 0xff);
+    return new String(c);
+  }
+
+  /**
+   * Tells whether this cache was built from the current contents of a file,
+   * judged by its path, modification time and length.  The definition the
+   * cache was built with is not checked; see isCurrent(File, FileDefinition).
+   */
+  public boolean isCurrent(File source) {
+    return source.getAbsolutePath().equals(sourcePath) &&
+      source.lastModified() == sourceModified && source.length() == sourceLength;
+  }
+
+  /**
+   * Tells whether this cache was built from the current contents of a file,
+   * read with the given definition.
+   */
+  public boolean isCurrent(File source, FileDefinition fd) {
+    return isCurrent(source) &&
+      ColumnarCache.fingerprint(fd) == definitionFingerprint;
+  }
+
+  public String getSourcePath() { return sourcePath; }
+
+  public long getSourceModified() { return sourceModified; }
+
+  /**
+   * Closes the cache file.  Its columns may not be used afterward.
+   */
+  public void close() {
+    buf = null;
+    if (raf == null)
+      return;
+    try {
+      raf.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+    raf = null;
+  }
+
+  /**
+   * Returns the record types, in the order of the .des file.
+   */
+  public String[] getRecordTypes() {
+    return (String[]) recordTypes.clone();
+  }
+
+  /**
+   * Returns the number of records of a type, or 0 if there is no such type.
+   */
+  public int getRowCount(String recordType) {
+    int t = typeIndex(recordType);
+    return (t < 0 ? 0 : rowCounts[t]);
+  }
+
+  /**
+   * Returns a column of a record type.
+   * @return the column, or null if there is no such record type or field
+   */
+  public Column getColumn(String recordType, String fieldName) {
+    int t = typeIndex(recordType);
+    return (t < 0 ? null : (Column) columns[t].get(fieldName));
+  }
+
+  /**
+   * Returns the number of records in the source file.
+   */
+  public int getRecordCount() { return recordCount; }
+
+  /**
+   * Returns the record type of a record of the source file.
+   * @param i the position of the record in the file, counting from 0
+   */
+  public String getRecordType(int i) {
+    return recordTypes[buf.getShort(sequenceStart + 2 * i)];
+  }
+
+  /**
+   * Returns the row, in the table of its record type, of a record of the
+   * source file.
+   * @param i the position of the record in the file, counting from 0
+   */
+  public synchronized int getRow(int i) {
+    if (rowOf == null) {
+      int[] rows = new int[recordCount];
+      int[] next = new int[recordTypes.length];
+      for (int j = 0; j < recordCount; j++)
+        rows[j] = next[buf.getShort(sequenceStart + 2 * j)]++;
+      rowOf = rows;
+    }
+    return rowOf[i];
+  }
+
+  private int typeIndex(String recordType) {
+    for (int i = 0; i < recordTypes.length; i++)
+      if (recordTypes[i].equals(recordType))
+        return i;
+    return -1;
+  }
+
+  /**
+   * The values of one field of one record type.
+   */
+  public class Column {
+    private String name;
+    private int type;
+    private int rows;
+    // the positions in the mapping of the null bitmap, the values and,
+    // for Strings, the dictionary
+    private int nulls;
+    private int values;
+    private int offsets;
+    private int chars;
+    private String[] dictionary;
+
+    private Column(String name, int type, int rows) {
+      this.name = name;
+      this.type = type;
+      this.rows = rows;
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Returns the data type of the field, as in {@link RecordLayout#getType(int)}.
+     */
+    public int getType() { return type; }
+
+    public int getRowCount() { return rows; }
+
+    /**
+     * Tells whether a value is missing, because the record was too short,
+     * or (for numbers) malformed.
+     */
+    public boolean isNull(int row) {
+      return (buf.get(nulls + row / 8) & (1 << (row % 8))) != 0;
+    }
+
+    /**
+     * Returns the value of an Integer field; 0 if the value is null.
+     */
+    public int getInt(int row) {
+      return buf.getInt(values + 4 * row);
+    }
+
+    /**
+     * Returns the value of a Double field; 0 if the value is null.
+     */
+    public double getDouble(int row) {
+      return buf.getDouble(values + 8 * row);
+    }
+
+    /**
+     * Returns the dictionary code of the value of a String field, or -1 if
+     * the value is null.  Equal values have equal codes.
+     */
+    public int getCode(int row) {
+      return buf.getInt(values + 4 * row);
+    }
+
+    /**
+     * Returns the number of distinct values of a String field.
+     */
+    public int getDictionarySize() {
+      return (dictionary == null ? 0 : dictionary.length);
+    }
+
+    /**
+     * Returns the value of a String field with a dictionary code.  Each
+     * value is made into a String once, when first asked for.
+     */
+    public String getDictionaryValue(int code) {
+      String s = dictionary[code];
+      if (s == null) {
+        int start = buf.getInt(offsets + 4 * code);
+        int end = buf.getInt(offsets + 4 * code + 4);
+        char[] c = new char[end - start];
+        for (int i = 0; i < c.length; i++)
+          c[i] = (char) (buf.get(chars + start + i) & 0xff);
+        dictionary[code] = s = new String(c);
+      }
+      return s;
+    }
+
+    /**
+     * Returns the value of a String field, or null.
+     */
+    public String getString(int row) {
+      int code = getCode(row);
+      return (code < 0 ? null : getDictionaryValue(code));
+    }
+
+    /**
+     * Returns a value as FormattedRecord.readField would:  an Integer,
+     * Double or String, or null.
+     */
+    public Object getValue(int row) {
+      if (isNull(row))
+        return null;
+      switch (type) {
+      case RecordLayout.TYPE_INTEGER:
+        return new Integer(getInt(row));
+      case RecordLayout.TYPE_DOUBLE:
+        return new Double(getDouble(row));
+      case RecordLayout.TYPE_STRING:
+        return getString(row);
+      default:
+        return null;
+      }
+    }
+  }
+}
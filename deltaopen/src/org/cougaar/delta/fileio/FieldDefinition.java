@@ -38,6 +38,7 @@ public class FieldDefinition implements Serializable
   private String dataType;
   private String justification;
   private String paddingChar;
+  private int impliedDecimals = 0;
 
 
 
@@ -73,6 +74,14 @@ public class FieldDefinition implements Serializable
     this.paddingChar = paddingChar;
   }
 
+  /**
+   * Sets the number of decimal places implied in a Double field written
+   * without a decimal point; with 2, the text "12345" is read as 123.45.
+   */
+  public void setImpliedDecimals(int impliedDecimals) {
+    this.impliedDecimals = impliedDecimals;
+  }
+
 
   public String getFieldName() { return fieldName; }
 
@@ -86,4 +95,6 @@ public class FieldDefinition implements Serializable
 
   public String getPaddingChar() { return paddingChar; }
 
+  public int getImpliedDecimals() { return impliedDecimals; }
+
 }
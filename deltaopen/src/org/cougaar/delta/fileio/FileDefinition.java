@@ -22,6 +22,7 @@
 
 package org.cougaar.delta.fileio;
 
+import java.io.PrintStream;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -39,6 +40,8 @@ public class FileDefinition
   private int minRecordLength = Integer.MAX_VALUE;
   private int recordNameOffset = 0; //indicates how many positions into the record
                                     //to look to find the start of the recordName
+  // built on first use; see findRecordDefinition()
+  private RecordTypeTable recordTypes;
 
   public FileDefinition() {
     fileName = null;
@@ -102,6 +105,7 @@ public class FileDefinition
    */
   public void addRecordDefinition(RecordDefinition rd) {
     recordDefinitions.addElement(rd);
+    recordTypes = null;
       int len = rd.getLength();
       if (len > maxRecordLength)
           maxRecordLength = len;
@@ -109,6 +113,17 @@ public class FileDefinition
           minRecordLength = len;
   }
 
+  /**
+   * Prints, for each record, the counts of blank and malformed numbers
+   * read from its fields.
+   * @see RecordLayout#printStatistics(PrintStream)
+   */
+  public void printFieldStatistics(PrintStream out) {
+    Enumeration e = recordDefinitions.elements();
+    while (e.hasMoreElements())
+      ((RecordDefinition) e.nextElement()).getLayout().printStatistics(out);
+  }
+
   public String getFileName() { return fileName; }
 
   public void setFileName(String fileName) { this.fileName = fileName; }
@@ -163,6 +178,44 @@ public class FileDefinition
    */
   public void setRecordNameOffset(int offset){
     recordNameOffset = offset;
+    recordTypes = null;
+  }
+
+  /**
+   * Finds the definition of a record from the record name found at the
+   * record name offset, ignoring case.  Where several names match, the
+   * definition appearing last in the .des file is chosen; where none does,
+   * the first definition is.
+   * @param record the characters of the record
+   * @return the {@link RecordDefinition} for the record, or null if this
+   * file defines no records
+   */
+  public RecordDefinition findRecordDefinition(CharSequence record) {
+    return getRecordTypeTable().lookup(record, record.length());
+  }
+
+  /**
+   * Compiles the record type table and the layouts of all the records, so
+   * that they are ready before the first record is read.
+   */
+  void compile() {
+    getRecordTypeTable();
+    for (int i = 0; i < recordDefinitions.size(); i++)
+      ((RecordDefinition) recordDefinitions.elementAt(i)).getLayout();
+  }
+
+  /**
+   * Returns the table used to find the definitions of records, building it
+   * if the record definitions have changed since it was last used.
+   */
+  RecordTypeTable getRecordTypeTable() {
+    RecordTypeTable t = recordTypes;
+    if (t == null) {
+      RecordDefinition[] defs = new RecordDefinition[recordDefinitions.size()];
+      recordDefinitions.copyInto(defs);
+      recordTypes = t = new RecordTypeTable(defs, recordNameOffset);
+    }
+    return t;
   }
 
 }
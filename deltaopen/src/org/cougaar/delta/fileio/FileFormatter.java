@@ -34,6 +34,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 
+import java.util.Hashtable;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -82,6 +83,18 @@ import java.util.Vector;
  * character String in record positions 5 through 7 would be defined as follows:
  * <p>
  * foo 5-7 String
+ * <p>
+ * A numeric field may go on to give its justification ("left" or "right"), the
+ * character with which it is padded (a single character, or "space") and, for a
+ * Double, the number of decimal places implied when no decimal point is written.
+ * For example, an amount written as "0000012345" and read as 123.45 would be
+ * defined as follows:
+ * <p>
+ * amount 20-29 Double right 0 2
+ * <p>
+ * Blanks around a number are skipped once a justification is given, and a sign
+ * may lead or trail the digits.  See {@link RecordLayout} for the counts it keeps
+ * of values that are blank or malformed.
  * <p><p>
  * Putting this all together produces a sample description file named "foo.des":
  * <p><p>
@@ -107,7 +120,8 @@ import java.util.Vector;
  */
 public class FileFormatter {
 
-  private static Vector fileDefinitions = new Vector();
+  // a DefinitionEntry for each file type, by name
+  private static Hashtable fileDefinitions = new Hashtable();
 
   private static String dataDirectory = null;
 
@@ -259,27 +273,11 @@ public class FileFormatter {
    */
   public static FormattedFile newOutputFile(String fileType, String filename) {
 
-    boolean loaded = false;
     FormattedFile fgif = null;
-    // Need a number to add to filename for incremental filenames.
-    // First, check to see if we've previously serialized the number in a previous
-    // run; if so, use it; else set to 0 (assume first run).
-    // N.B. Only allow for four digit integers in file name, i.e. foo_XXXX.txt.  Therefore,
-    // we have an odometer effect when we get to 9999 -> 0000.
-    int filenum = 0;
-    File intFile = new File(getDataDirectory() + File.separator + filename + "intfile.out");
-    if (intFile.exists()) {
-      try {
-        FileInputStream istream = new FileInputStream(intFile);
-        ObjectInputStream oistream = new ObjectInputStream(istream);
-        filenum = oistream.readInt();
-        istream.close();
-      } catch(IOException ioe) {
-        ioe.printStackTrace();
-      }
-    }
+    File intFile = getSequenceFile(filename);
+    int filenum = readSequenceNumber(intFile);
     // Now, add this number to the filename.
-    String newFilename = getDataDirectory() + File.separator + filename + "_" + createPadding(filenum) + ".txt";
+    String newFilename = getOutputFileName(filename, filenum);
     try {
       fgif = loadFileType(fileType, newFilename);
     } catch (Exception e) {
@@ -296,20 +294,75 @@ public class FileFormatter {
       }
     }
     // Bump up the file number if we've opened a file successfully.
-    if (fgif != null) {
-      if (filenum++ > 9999)
-        filenum = 0;
+    if (fgif != null)
+      writeSequenceNumber(intFile, filenum);
+    return fgif;
+  }
+
+  /**
+   * Opens a new output file, named as by newOutputFile(), for writing through
+   * a {@link FormattedFileWriter}.  The file's sequence number is read and
+   * bumped once, here, rather than as records are written.
+   * @param fileType the type of file to be created
+   * @param filename the "base" of the filename, e.g. "foo" rather than "foo.txt"
+   * @return the writer, or null if the file cannot be created
+   */
+  public static FormattedFileWriter newOutputWriter(String fileType, String filename) {
+    FormattedFileWriter writer = null;
+    File intFile = getSequenceFile(filename);
+    int filenum = readSequenceNumber(intFile);
+    try {
+      writer = new FormattedFileWriter(getFileDefinition(fileType),
+        getOutputFileName(filename, filenum));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    if (writer != null)
+      writeSequenceNumber(intFile, filenum);
+    return writer;
+  }
+
+  // The file in which the sequence number of output files is kept
+  private static File getSequenceFile(String filename) {
+    return new File(getDataDirectory() + File.separator + filename + "intfile.out");
+  }
+
+  // Need a number to add to filename for incremental filenames.
+  // First, check to see if we've previously serialized the number in a previous
+  // run; if so, use it; else set to 0 (assume first run).
+  private static int readSequenceNumber(File intFile) {
+    int filenum = 0;
+    if (intFile.exists()) {
       try {
-        FileOutputStream ostream = new FileOutputStream(intFile);
-        ObjectOutputStream oostream = new ObjectOutputStream(ostream);
-        oostream.writeInt(filenum);
-        oostream.flush();
-        ostream.close();
+        FileInputStream istream = new FileInputStream(intFile);
+        ObjectInputStream oistream = new ObjectInputStream(istream);
+        filenum = oistream.readInt();
+        istream.close();
       } catch(IOException ioe) {
         ioe.printStackTrace();
       }
     }
-    return fgif;
+    return filenum;
+  }
+
+  // N.B. Only allow for four digit integers in file name, i.e. foo_XXXX.txt.  Therefore,
+  // we have an odometer effect when we get to 9999 -> 0000.
+  private static void writeSequenceNumber(File intFile, int filenum) {
+    if (filenum++ > 9999)
+      filenum = 0;
+    try {
+      FileOutputStream ostream = new FileOutputStream(intFile);
+      ObjectOutputStream oostream = new ObjectOutputStream(ostream);
+      oostream.writeInt(filenum);
+      oostream.flush();
+      ostream.close();
+    } catch(IOException ioe) {
+      ioe.printStackTrace();
+    }
+  }
+
+  private static String getOutputFileName(String filename, int filenum) {
+    return getDataDirectory() + File.separator + filename + "_" + createPadding(filenum) + ".txt";
   }
 
   /**
@@ -317,28 +370,88 @@ public class FileFormatter {
    * stored in the (data path)\des directory.  The data path is defined
    * as the concatenation of the values of the system properties <I>org.cougaar.install.path</I>
    * and <I>org.cougaar.delta.data.path</I>).
+   * <p>
+   * Definitions are kept once loaded, with their record layouts and record type
+   * table already compiled, and are loaded again only if the .des file has been
+   * modified since.  Any number of threads may call this method; a definition is
+   * loaded by one of them while the others wait for it.
    * @param fileType the type of file for which the definition is desired
    * @return the definition of the file type passed as an argument to this method.
    * @throws FileNotFoundException if the .des file does not exist
    */
   public static FileDefinition getFileDefinition(String fileType) throws Exception {
-    String newFileType = getDataDirectory() + File.separator + "des" + File.separator + fileType;
-
-    int size = fileDefinitions.size();
-    for (int i = 0; i < size; i++) {
-      /*
-       * Iterate through fileDefinitions already loaded, checking to see if this one
-       * needs to be loaded
-       */
-      FileDefinition fd = (FileDefinition) fileDefinitions.elementAt(i);
-      if (fd.getFileName().equals(fileType)) {
-        return fd;
+    File file = new File(getDataDirectory() + File.separator + "des" +
+      File.separator + fileType + ".des");
+    DefinitionEntry entry = null;
+    synchronized (fileDefinitions) {
+      entry = (DefinitionEntry) fileDefinitions.get(fileType);
+      if (entry == null) {
+        entry = new DefinitionEntry();
+        fileDefinitions.put(fileType, entry);
+      }
+    }
+
+    synchronized (entry) {
+      long modified = file.lastModified();
+      if (entry.definition != null && file.equals(entry.file) &&
+          (modified == entry.modified || modified == 0))
+      {
+        // unchanged, or removed since it was loaded
+        return entry.definition;
+      }
+      FileDefinition fd = readFileDefinition(fileType, file);
+      if (fd != null) {
+        fd.compile();
+        entry.definition = fd;
+        entry.file = file;
+        entry.modified = modified;
+      }
+      return fd;
+    }
+  }
+
+  /**
+   * Loads the definition of every file type in the (data path)\des directory,
+   * so that files of those types can be opened without first parsing their
+   * .des files.  Intended to be called at startup.
+   * @return the number of definitions loaded
+   */
+  public static int loadFileDefinitions() {
+    File desdir = new File(getDataDirectory() + File.separator + "des");
+    String[] desList = desdir.list(new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+          return name.endsWith(".des");
+        }});
+    if (desList == null)
+      return 0;
+    int n = 0;
+    for (int i = 0; i < desList.length; i++) {
+      String fileType = desList[i].substring(0, desList[i].length() - 4);
+      try {
+        if (getFileDefinition(fileType) != null)
+          n++;
+      } catch (Exception e) {
+        System.err.println("FileFormatter::loadFileDefinitions:ERROR:  could not load " + desList[i]);
+        e.printStackTrace();
       }
     }
+    return n;
+  }
+
+  /**
+   * A loaded file definition, and the .des file and modification time it
+   * was loaded from.
+   */
+  private static class DefinitionEntry {
+    FileDefinition definition;
+    File file;
+    long modified;
+  }
 
+  // Parse a .des file
+  private static FileDefinition readFileDefinition(String fileType, File file) throws Exception {
     RecordDefinition rd = null;
 
-    File file = new File(newFileType + ".des");
     try {
       BufferedReader in = new BufferedReader(new FileReader(file));
       try {
@@ -379,14 +492,25 @@ public class FileFormatter {
             field.setEndPosition(endpos);
             field.setDataType(st.nextToken());
 
-            if (st.hasMoreTokens()) {
+            if (st.hasMoreTokens())
               field.setJustification(st.nextToken());
+            if (st.hasMoreTokens())
               field.setPaddingChar(st.nextToken());
+            if (st.hasMoreTokens()) {
+              String decimals = st.nextToken();
+              try {
+                field.setImpliedDecimals(Integer.parseInt(decimals));
+              }
+              catch (NumberFormatException nfe) {
+                // one bad field should not lose the rest of the definition
+                System.err.println("FileFormatter::readFileDefinition:ERROR:  bad implied decimals \"" +
+                    decimals + "\" for field " + field.getFieldName() + " in " + file + "; using 0");
+                field.setImpliedDecimals(0);
+              }
             }
             rd.addFieldDefinition(field);
           }
         }
-        fileDefinitions.addElement(fd);
         return fd;
       }
       catch (IOException ioe) {
@@ -44,7 +44,8 @@ public class FormattedFile
   private String filename;
   private RandomAccessFile file;
   private BufferedReader in;
-  private char[] recordBuf;
+  // reads records from in for getRecord()
+  private RecordEnumeration cursor;
   String fs = File.separator;
   final String removeString = "."; //make this null if value is to be configurable
   String dataDir = FileFormatter.getDataDirectory();
@@ -129,6 +130,49 @@ public class FormattedFile
     }
   }
 
+  /**
+   * Returns the records of the file one at a time, as they are read.  The
+   * file is opened by this call and closed when the last record has been
+   * read; a caller that stops early should call close() on the enumeration.
+   * Records are divided as by getRecord().
+   * @return the records, or null if the file cannot be opened
+   */
+  public RecordEnumeration records() {
+    return records((String[]) null);
+  }
+
+  /**
+   * Returns the records of one type, one at a time, as they are read.
+   * Records of other types are skipped without being made into
+   * FormattedRecords.
+   * @param recordType the record name of the records wanted
+   * @return the records, or null if the file cannot be opened
+   * @see #records()
+   */
+  public RecordEnumeration records(String recordType) {
+    return records(new String[] {recordType});
+  }
+
+  /**
+   * Returns the records of several types, one at a time, as they are read.
+   * @param recordTypes the record names of the records wanted, or null for
+   * all records
+   * @return the records, or null if the file cannot be opened
+   * @see #records()
+   */
+  public RecordEnumeration records(String[] recordTypes) {
+    File file = new File(filename);
+    if (file.exists()) {
+      try {
+        return new RecordEnumeration(fileDefinition,
+          new BufferedReader(new FileReader(file)), recordTypes, true);
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
+    return null;
+  }
+
   public Vector getRecords(Enumeration records) {
     Vector records_vect = new Vector();
     while (records.hasMoreElements()) {
@@ -145,6 +189,7 @@ public class FormattedFile
    * specified in the input parameter.
    * @param record The record name of all the records desired from the data file
    * @return A Vector of FormattedRecords whose record names match the input specification
+   * @see #records(String)
    */
   public Vector getRecords(String record) {
     Vector records = new Vector();
@@ -167,7 +212,7 @@ public class FormattedFile
 
           while (in.ready()) {
             String newString = in.readLine();
-            if (newString.substring(0 + offset).startsWith(record)) {
+            if (newString.startsWith(record, offset)) {
               FormattedRecord fr = new FormattedRecord(rd, newString);
               records.addElement(fr);
             }
@@ -190,6 +235,7 @@ public class FormattedFile
    */
   public BufferedReader openFile() {
     in = null;
+    cursor = null;
     File file = new File(filename);
     if (file.exists()) {
       try {
@@ -216,6 +262,7 @@ public class FormattedFile
       ioe.printStackTrace();
     }
     in = null;
+    cursor = null;
   }
 
 
@@ -240,49 +287,9 @@ public class FormattedFile
    * </PRE>
    */
   public FormattedRecord getRecord() {
-    FormattedRecord fr = null;
-    if (recordBuf == null)
-      recordBuf = new char[fileDefinition.getMaxRecordLength()];
-    int init = fileDefinition.getMinRecordLength();
-    int start = 0;
-    try {
-      int numread = in.read(recordBuf, start, init);
-      if (numread == -1)
-        return null;
-      else if (numread != init)
-      {
-        System.err.println("FormattedFile::getRecord:ERROR:  less than minimum record length (" + init + " characters)!");
-        return null;
-      }
-      fr = new FormattedRecord(new String(recordBuf, 0, init));
-      fr.setRecordDefinition(getRecordDef(fr));
-
-      // If this record is longer than the minimum for this file,
-      // make sure we have the whole record
-      int more = fr.getRecordDefinition().getLength() - init;
-      if (more > 0)
-      {
-        if (in.read(recordBuf, init, more) != more)
-        {
-          System.err.println("FormattedFile::getRecord:ERROR:  less than required record length (" + (init+more) + " characters)!");
-          return null;
-        }
-        fr.setRecord(new String(recordBuf, 0, init + more));
-      }
-
-      // Ignore whitespace between records
-      in.mark(2);
-      char ch = (char) in.read();
-      while (Character.isWhitespace(ch))
-      {
-        in.mark(2);
-        ch = (char) in.read();
-      }
-      in.reset();
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-    }
-    return fr;
+    if (cursor == null)
+      cursor = new RecordEnumeration(fileDefinition, in, null, false);
+    return cursor.read();
   }
 
 
@@ -292,8 +299,7 @@ public class FormattedFile
    */
   public FormattedRecord getRecord(String s) {
     FormattedRecord fr = null;
-    fr = new FormattedRecord(s);
-    fr.setRecordDefinition(getRecordDef(fr));
+    fr = new FormattedRecord(fileDefinition.findRecordDefinition(s), s);
     return fr;
   }
 
@@ -310,8 +316,7 @@ public class FormattedFile
     try {
       String wholeLine = in.readLine();
       if (wholeLine != null) {
-        fr = new FormattedRecord(wholeLine);
-        fr.setRecordDefinition(getRecordDef(fr));
+        fr = new FormattedRecord(fileDefinition.findRecordDefinition(wholeLine), wholeLine);
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -325,18 +330,7 @@ public class FormattedFile
    * Return the record definition for a record
    */
   RecordDefinition getRecordDef(FormattedRecord fr) {
-    Enumeration recordDefs = fileDefinition.getRecordDefinitions();
-    offset = fileDefinition.getRecordNameOffset();
-    RecordDefinition rd = null;
-    String raw_record = fr.getRecord();
-    while (recordDefs.hasMoreElements()) {
-      RecordDefinition tmp_rd = (RecordDefinition)recordDefs.nextElement();
-      String rname = tmp_rd.getRecordName();
-      if (rd == null || (raw_record.length() >= rname.length() &&
-        rname.equalsIgnoreCase(raw_record.substring(0 + offset, rname.length() + offset))))
-            rd = tmp_rd;
-    }
-    return rd;
+    return fileDefinition.findRecordDefinition(fr.getRecord());
   }
 
 
@@ -0,0 +1,369 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+/**
+ * Writes formatted records to a file through a large buffer.  Records are
+ * built in a {@link RecordBuffer}, one per record type, which is reused for
+ * every record of that type; fields are placed with the same truncation and
+ * padding rules as {@link FormattedRecord#writeField(String, String)}, using
+ * fill arrays rather than building padding Strings.  Finished records are
+ * copied into an NIO buffer, which is written to the file when it fills,
+ * every {@link #setFlushInterval(int) flushInterval} records if one is set,
+ * and on close().  Whether the file is forced to disk on each flush, on
+ * close only or never is chosen with {@link #setSyncPolicy(int)}.
+ * <p>
+ * As with FormattedRecord.finish(), records are appended to the file with
+ * one byte per character and followed by the line separator.
+ * <p>
+ * Example:
+ * <PRE>
+ *    FormattedFileWriter w = FileFormatter.newOutputWriter("MILSTRIP", "out");
+ *    FormattedFileWriter.RecordBuffer r = w.startRecord("A0");
+ *    int nsn = r.getLayout().getHandle("nsn");
+ *    for (int i = 0; i < items.size(); i++) {
+ *       r = w.startRecord("A0");
+ *       r.writeField(nsn, (String) items.elementAt(i));
+ *       w.write(r);
+ *    }
+ *    w.close();
+ * </PRE>
+ */
+public class FormattedFileWriter
+{
+  /** The default size of the output buffer, in bytes */
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+  /** Never force the file to disk */
+  public static final int SYNC_NEVER = 0;
+  /** Force the file to disk when it is closed */
+  public static final int SYNC_ON_CLOSE = 1;
+  /** Force the file to disk whenever the buffer is written */
+  public static final int SYNC_ON_FLUSH = 2;
+
+  private static String lineSeparator = System.getProperty("line.separator");
+  // fill for padding fields
+  private static char[] spaces = new char[0];
+  private static char[] zeros = new char[0];
+
+  private FileDefinition fileDefinition;
+  private String filename;
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private int flushInterval = 0;
+  private int syncPolicy = SYNC_ON_CLOSE;
+  private int unflushed = 0;
+  private int recordCount = 0;
+  // a RecordBuffer for each record name
+  private Hashtable recordBuffers = new Hashtable();
+
+  /**
+   * Opens a file for appending records, with a buffer of the default size.
+   * @param fileDefinition the format of the file
+   * @param filename the name of the file
+   * @throws IOException if the file cannot be opened
+   */
+  public FormattedFileWriter(FileDefinition fileDefinition, String filename)
+      throws IOException
+  {
+    this(fileDefinition, filename, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Opens a file for appending records.
+   * @param fileDefinition the format of the file
+   * @param filename the name of the file
+   * @param bufferSize the size of the output buffer, in bytes
+   * @throws IOException if the file cannot be opened
+   */
+  public FormattedFileWriter(FileDefinition fileDefinition, String filename,
+      int bufferSize) throws IOException
+  {
+    this.fileDefinition = fileDefinition;
+    this.filename = filename;
+    raf = new RandomAccessFile(filename, "rw");
+    channel = raf.getChannel();
+    channel.position(channel.size());
+    buffer = ByteBuffer.allocateDirect(Math.max(bufferSize,
+      fileDefinition.getMaxRecordLength() + lineSeparator.length()));
+  }
+
+  public FileDefinition getFileDefinition() { return fileDefinition; }
+
+  public String getFileName() { return filename; }
+
+  /**
+   * Sets the number of records after which the buffer is written to the
+   * file, even if it is not full; 0 (the default) writes only full buffers.
+   */
+  public void setFlushInterval(int records) {
+    flushInterval = Math.max(0, records);
+  }
+
+  /**
+   * Sets when the file is forced to disk:  SYNC_NEVER, SYNC_ON_CLOSE (the
+   * default) or SYNC_ON_FLUSH.
+   */
+  public void setSyncPolicy(int policy) {
+    syncPolicy = policy;
+  }
+
+  /**
+   * Returns the number of records written so far.
+   */
+  public int getRecordCount() { return recordCount; }
+
+  /**
+   * Starts a record of the named type, at the length of its definition.
+   * N.B. the same RecordBuffer is returned for every record of a type, and
+   * is cleared by this call.
+   * @param recName the record name
+   * @return the cleared buffer, or null if there is no such record type
+   */
+  public RecordBuffer startRecord(String recName) {
+    RecordBuffer r = (RecordBuffer) recordBuffers.get(recName);
+    if (r == null) {
+      RecordDefinition rd = fileDefinition.getRecordDefinition(recName);
+      if (rd == null)
+        return null;
+      r = new RecordBuffer(rd.getLayout(), rd.getLength());
+      recordBuffers.put(recName, r);
+    }
+    r.clear();
+    return r;
+  }
+
+  /**
+   * Appends a record to the file.
+   */
+  public void write(RecordBuffer r) throws IOException {
+    append(r.chars, r.length);
+  }
+
+  /**
+   * Appends a FormattedRecord to the file, as FormattedRecord.finish() would.
+   */
+  public void write(FormattedRecord fr) throws IOException {
+    char[] chars = fr.toString().toCharArray();
+    append(chars, chars.length);
+  }
+
+  private void append(char[] chars, int length) throws IOException {
+    if (buffer.remaining() < length + lineSeparator.length())
+      flush();
+    if (buffer.remaining() < length + lineSeparator.length()) {
+      // a record larger than the buffer
+      ByteBuffer big = ByteBuffer.allocate(length + lineSeparator.length());
+      put(big, chars, length);
+      big.flip();
+      drain(big);
+    }
+    else
+      put(buffer, chars, length);
+    recordCount++;
+    if (flushInterval > 0 && ++unflushed >= flushInterval)
+      flush();
+  }
+
+  private static void put(ByteBuffer b, char[] chars, int length) {
+    for (int i = 0; i < length; i++) {
+      char c = chars[i];
+      b.put((byte) (c == '\u0000' ? ' ' : c));
+    }
+    for (int i = 0; i < lineSeparator.length(); i++)
+      b.put((byte) lineSeparator.charAt(i));
+  }
+
+  private void drain(ByteBuffer b) throws IOException {
+    while (b.hasRemaining())
+      channel.write(b);
+  }
+
+  /**
+   * Writes the buffered records to the file, forcing it to disk if the sync
+   * policy is SYNC_ON_FLUSH.
+   */
+  public void flush() throws IOException {
+    buffer.flip();
+    drain(buffer);
+    buffer.clear();
+    unflushed = 0;
+    if (syncPolicy == SYNC_ON_FLUSH)
+      channel.force(false);
+  }
+
+  /**
+   * Writes the buffered records and closes the file.
+   */
+  public void close() throws IOException {
+    if (raf == null)
+      return;
+    try {
+      flush();
+      if (syncPolicy == SYNC_ON_CLOSE)
+        channel.force(false);
+    }
+    finally {
+      raf.close();
+      raf = null;
+      channel = null;
+    }
+  }
+
+  // Return a fill array of at least n characters
+  private static synchronized char[] fill(char c, int n) {
+    char[] a = (c == ' ' ? spaces : zeros);
+    if (a.length < n) {
+      a = new char[Math.max(n, 2 * a.length)];
+      Arrays.fill(a, c);
+      if (c == ' ')
+        spaces = a;
+      else
+        zeros = a;
+    }
+    return a;
+  }
+
+  /**
+   * A record being built.  Fields are addressed by the handles of the
+   * record's {@link RecordLayout}, or by name.
+   */
+  public static class RecordBuffer {
+    private RecordLayout layout;
+    private char[] chars;
+    private int length;
+    private int defaultLength;
+    // for formatting numbers and copying Strings
+    private char[] scratch = new char[32];
+
+    private RecordBuffer(RecordLayout layout, int length) {
+      this.layout = layout;
+      defaultLength = this.length = length;
+      chars = new char[length];
+    }
+
+    public RecordLayout getLayout() { return layout; }
+
+    public int getLength() { return length; }
+
+    // blank the record, as FormattedRecord would leave unwritten positions
+    private void clear() {
+      length = defaultLength;
+      System.arraycopy(fill(' ', length), 0, chars, 0, length);
+    }
+
+    /**
+     * Writes a field by name.
+     * @throws IllegalArgumentException if the record has no such field
+     */
+    public void writeField(String fieldName, String value) {
+      int handle = layout.getHandle(fieldName);
+      if (handle < 0)
+        throw new IllegalArgumentException("Field: " + fieldName + " not found in record definition");
+      writeField(handle, value);
+    }
+
+    /**
+     * Writes a field, truncating a value that is too long and padding one
+     * that is too short:  Strings, dates and times with spaces on the right,
+     * other types with zeros on the left.
+     */
+    public void writeField(int handle, String value) {
+      if (value == null)
+        value = "";
+      int n = value.length();
+      if (scratch.length < n)
+        scratch = new char[n];
+      value.getChars(0, n, scratch, 0);
+      writeChars(handle, scratch, 0, n);
+    }
+
+    /**
+     * Writes a number into a field, as writeField would write its decimal
+     * representation, without making a String of it.
+     */
+    public void writeLong(int handle, long value) {
+      int pos = scratch.length;
+      long v = value;
+      do {
+        // take the digits from the remainder's magnitude, which also works
+        // for Long.MIN_VALUE
+        int d = (int) (v % 10);
+        scratch[--pos] = (char) ('0' + (d < 0 ? -d : d));
+        v /= 10;
+      } while (v != 0);
+      if (value < 0)
+        scratch[--pos] = '-';
+      writeChars(handle, scratch, pos, scratch.length - pos);
+    }
+
+    /**
+     * Writes characters into a field, truncating or padding as writeField does.
+     */
+    public void writeChars(int handle, char[] value, int off, int n) {
+      FieldDefinition fd = layout.getFieldDefinition(handle);
+      int start = fd.getStartPosition() - 1;
+      int width = fd.getEndPosition() - start;
+      ensureLength(start + width);
+      if (n >= width) {
+        // truncate if too long
+        System.arraycopy(value, off, chars, start, width);
+        return;
+      }
+      int diff = width - n;
+      String type = fd.getDataType();
+      if (type.equals("String") || type.equals("date") || type.equals("time")) {
+        System.arraycopy(value, off, chars, start, n);
+        System.arraycopy(fill(' ', diff), 0, chars, start + n, diff);
+      }
+      else {
+        System.arraycopy(fill('0', diff), 0, chars, start, diff);
+        System.arraycopy(value, off, chars, start + diff, n);
+      }
+    }
+
+    private void ensureLength(int n) {
+      if (n <= length)
+        return;
+      if (n > chars.length) {
+        char[] c = new char[n];
+        System.arraycopy(chars, 0, c, 0, length);
+        chars = c;
+      }
+      System.arraycopy(fill(' ', n - length), 0, chars, length, n - length);
+      length = n;
+    }
+
+    public String toString() {
+      return new String(chars, 0, length);
+    }
+  }
+}
@@ -25,6 +25,7 @@ package org.cougaar.delta.fileio;
 import java.io.File;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -76,76 +77,93 @@ public class FormattedRecord implements Serializable
 
   public RecordDefinition getRecordDefinition() { return recordDefinition; }
 
+  /**
+   * Reads a field as an Integer, String or Double, according to its data type.
+   * Fields of the record extended through the .extends directive are found too.
+   * @return the value, or null if the field is missing, has some other type,
+   * lies beyond the end of the record or (for numbers) is not a number
+   */
   public Object readField(String field) {
     if (recordDefinition == null)
       return null;
-    String record_str = record.toString();
-    Object o = new Object();
-    FieldDefinition fd = recordDefinition.getFieldDefinition(field);
+    RecordLayout layout = recordDefinition.getLayout();
+    int handle = layout.getHandle(field);
+    if (handle < 0)
+      return null;
+    return layout.readField(record, handle);
+  }
 
-    if (fd != null) {
-      int start = fd.getStartPosition() - 1;
-      int end = fd.getEndPosition();
-
-      if (fd.getDataType().equals("Integer")) {
-        try {
-          o = Integer.valueOf(record_str.substring(start, end));
-        } catch (NumberFormatException nfe) {
-          return null;
-        }
-        return (Integer)o;
-      }
-      else if (fd.getDataType().equals("String")) {
-        try {
-          o = record_str.substring(start, end);
-        } catch (StringIndexOutOfBoundsException sie) {
-          System.err.println("\nFormattedRecord: ERROR - incorrect record length "+ record_str.length() + " for record: " + record_str);
-          return null;
-        }
-        return (String)o;
-      }
-      else if (fd.getDataType().equals("Double")) {
-        try {
-          o = Double.valueOf(record_str.substring(start, end));
-        } catch (NumberFormatException nfe) {
-          return null;
-        }
-        return (Double)o;
-      }
-      else
-        return null;
-    } else {
-      RecordDefinition extends_record = recordDefinition.getExtends();
-      if (extends_record != null) {
-        FieldDefinition super_fd = extends_record.getFieldDefinition(field);
-        int super_start = super_fd.getStartPosition() - 1;
-        int super_end = super_fd.getEndPosition();
-
-        if (super_fd.getDataType().equals("Integer")) {
-          try {
-            o = Integer.valueOf(record_str.substring(super_start, super_end));
-          } catch (NumberFormatException nfe) {
-            return null;
-          }
-          return (Integer)o;
-        }
-        else if (super_fd.getDataType().equals("String")) {
-          o = record_str.substring(super_start, super_end);
-          return (String)o;
-        }
-        else if (fd.getDataType().equals("Double")) {
-          try {
-            o = Double.valueOf(record_str.substring(super_start, super_end));
-          } catch (NumberFormatException nfe) {
-            return null;
-          }
-          return (Double)o;
-        }
-        else
-          return null;
-      }
-    }
-    return null;
+  /**
+   * Returns the compiled layout of this record, for looking up the handles
+   * used by readInt, readLong, readDouble and readChars.
+   */
+  public RecordLayout getLayout() {
+    return (recordDefinition == null ? null : recordDefinition.getLayout());
+  }
+
+  /**
+   * Parses a field as an int, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold an int
+   * @see RecordLayout#readInt(CharSequence, int)
+   */
+  public int readInt(int handle) {
+    return recordDefinition.getLayout().readInt(record, handle);
+  }
+
+  /**
+   * Parses a field as a long, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold a long
+   */
+  public long readLong(int handle) {
+    return recordDefinition.getLayout().readLong(record, handle);
+  }
+
+  /**
+   * Parses a field as a double, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold a number
+   */
+  public double readDouble(int handle) {
+    return recordDefinition.getLayout().readDouble(record, handle);
+  }
+
+  /**
+   * Parses a field as an int, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   * @see RecordLayout#readInt(CharSequence, int, int)
+   */
+  public int readInt(int handle, int defaultValue) {
+    return recordDefinition.getLayout().readInt(record, handle, defaultValue);
+  }
+
+  /**
+   * Parses a field as a long, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   */
+  public long readLong(int handle, long defaultValue) {
+    return recordDefinition.getLayout().readLong(record, handle, defaultValue);
+  }
+
+  /**
+   * Parses a field as a double, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   */
+  public double readDouble(int handle, double defaultValue) {
+    return recordDefinition.getLayout().readDouble(record, handle, defaultValue);
+  }
+
+  /**
+   * Copies the text of a field into an array.
+   * @param handle the handle of the field in this record's layout
+   * @return the number of characters copied
+   */
+  public int readChars(int handle, char[] dst, int off) {
+    return recordDefinition.getLayout().readChars(record, handle, dst, off);
   }
 
   /**
@@ -228,11 +246,9 @@ public class FormattedRecord implements Serializable
 
 
   public String createString(char c, int length) {
-    StringBuffer sb = new StringBuffer();
-    for (int i = 0; i < length; i++) {
-      sb = sb.append(c);
-    }
-    return sb.toString();
+    char[] chars = new char[Math.max(0, length)];
+    Arrays.fill(chars, c);
+    return new String(chars);
   }
 
   public String toString()
@@ -0,0 +1,255 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a formatted file through memory-mapped windows rather than a Reader.
+ * Records are divided as by {@link FormattedFile#getRecord()}, but nothing is
+ * decoded into Strings:  each record is returned as a {@link MappedRecord},
+ * a view of the mapped bytes from which fields are read directly.  The same
+ * view is reused for every record, so reading a file allocates nothing per
+ * record.  Files larger than the mapped window (multi-gigabyte feeds, for
+ * instance) are read by sliding the window along the file.
+ * <p>
+ * Each byte of the file is taken to be one character, as in the ASCII
+ * fixed-width feeds this package is used for.
+ * <p>
+ * Example:
+ * <PRE>
+ *    FormattedFile f = FileFormatter.newInputFile("MILSTRIP", "samplea0.txt");
+ *    MappedFormattedFile mf = new MappedFormattedFile(f);
+ *    mf.open();
+ *    MappedRecord r = null;
+ *    while ((r = mf.nextRecord()) != null) {
+ *       if (r.isRecordType("A0"))
+ *          System.out.println("Found an A0 record for " + r.readField("nsn"));
+ *    }
+ *    mf.close();
+ * </PRE>
+ */
+public class MappedFormattedFile
+{
+  /**
+   * The default size of the mapped window, in bytes.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private FileDefinition fileDefinition;
+  private String filename;
+  private int windowSize;
+
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private long fileLength;
+  // the mapped part of the file, and its position in the file
+  private MappedByteBuffer window;
+  private long windowStart;
+  // the position in the file of the next record
+  private long position;
+  // the position at which reading stops
+  private long limit;
+
+  private RecordTypeTable recordTypes;
+  private int minRecordLength;
+  private int maxRecordLength;
+
+  // the view returned for every record
+  private MappedRecord current = new MappedRecord();
+
+  /**
+   * Prepares to read a FormattedFile, using its file name and definition.
+   */
+  public MappedFormattedFile(FormattedFile f) {
+    this(f.getFileDefinition(), f.getFileName(), DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Prepares to read the named file according to a file definition.
+   * @param fileDefinition the format of the file
+   * @param filename the name of the file
+   * @param windowSize the number of bytes to map at a time
+   */
+  public MappedFormattedFile(FileDefinition fileDefinition, String filename,
+      int windowSize)
+  {
+    this.fileDefinition = fileDefinition;
+    this.filename = filename;
+    recordTypes = fileDefinition.getRecordTypeTable();
+    minRecordLength = fileDefinition.getMinRecordLength();
+    maxRecordLength = fileDefinition.getMaxRecordLength();
+    // a window must be able to hold any record
+    this.windowSize = Math.max(windowSize, 2 * maxRecordLength);
+  }
+
+  public FileDefinition getFileDefinition() {
+    return fileDefinition;
+  }
+
+  public String getFileName() {
+    return filename;
+  }
+
+  /**
+   * Opens the file for reading from the beginning.  N.B. must call close()
+   * when finished with nextRecord().
+   * @throws IOException if the file cannot be opened
+   */
+  public void open() throws IOException {
+    open(0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Opens the file for reading the records that begin in a range of
+   * positions.  The range should begin at the start of a record, or in the
+   * whitespace that precedes one; the last record read may extend past the
+   * end of the range.  N.B. must call close() when finished with nextRecord().
+   * @param start the position of the first record to read
+   * @param end the position at which to stop reading
+   * @throws IOException if the file cannot be opened
+   */
+  public void open(long start, long end) throws IOException {
+    close();
+    raf = new RandomAccessFile(filename, "r");
+    channel = raf.getChannel();
+    fileLength = channel.size();
+    window = null;
+    position = Math.min(start, fileLength);
+    limit = end;
+    // as the whitespace following the previous record would have been
+    if (position > 0)
+      skipWhitespace();
+  }
+
+  /**
+   * Closes the file.  Views of its records may not be used afterward.
+   */
+  public void close() {
+    window = null;
+    if (raf == null)
+      return;
+    try {
+      raf.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+    raf = null;
+    channel = null;
+  }
+
+  /**
+   * Gets the length of the open file, in bytes.
+   */
+  public long getFileLength() {
+    return fileLength;
+  }
+
+  /**
+   * Gets the position in the file at which the next record begins.
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * Returns the next record (of any type).  N.B. the same MappedRecord is
+   * returned every time, pointing at a different record; it remains valid
+   * only until the next call.  Use {@link MappedRecord#toFormattedRecord()}
+   * to keep a copy.
+   * @return the record, or null at the end of the file or if the remainder
+   * of the file is too short to be a record
+   */
+  public MappedRecord nextRecord() {
+    try {
+      long remaining = fileLength - position;
+      if (remaining <= 0 || position >= limit)
+        return null;
+      int init = minRecordLength;
+      if (remaining < init) {
+        System.err.println("MappedFormattedFile::nextRecord:ERROR:  less than minimum record length (" + init + " characters)!");
+        position = fileLength;
+        return null;
+      }
+      // map enough for the longest record, so the whole record is in view
+      int base = map(position, (int) Math.min(maxRecordLength, remaining));
+      // view the first init bytes to find the record's definition
+      current.set(window, base, init, null);
+      RecordDefinition rd = recordTypes.lookup(current, init);
+      int length = Math.max(init, rd.getLength());
+      if (length > remaining) {
+        System.err.println("MappedFormattedFile::nextRecord:ERROR:  less than required record length (" + length + " characters)!");
+        position = fileLength;
+        return null;
+      }
+      current.set(window, base, length, rd);
+      position += length;
+      skipWhitespace();
+      return current;
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Finds the start of the line following a position:  the position just
+   * after the first newline at or after pos, or the end of the file.
+   */
+  long nextLineStart(long pos) throws IOException {
+    while (pos < fileLength) {
+      int i = map(pos, (int) Math.min(windowSize, fileLength - pos));
+      int n = window.limit();
+      for (; i < n; i++, pos++)
+        if (window.get(i) == '\n')
+          return pos + 1;
+    }
+    return fileLength;
+  }
+
+  // Ignore whitespace between records
+  private void skipWhitespace() throws IOException {
+    while (position < fileLength) {
+      int i = map(position, 1);
+      if (!Character.isWhitespace((char) (window.get(i) & 0xff)))
+        return;
+      position++;
+    }
+  }
+
+  // Make sure that length bytes starting at pos are mapped, and return the
+  // index in the window of the byte at pos
+  private int map(long pos, int length) throws IOException {
+    if (window == null || pos < windowStart ||
+        pos + length > windowStart + window.capacity())
+    {
+      windowStart = pos;
+      long size = Math.min(windowSize, fileLength - pos);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+    }
+    return (int) (pos - windowStart);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A view of one record of a {@link MappedFormattedFile}, read directly from
+ * the mapped bytes of the file.  A view is reused for successive records, so
+ * it is valid only until the next record is read; {@link #toFormattedRecord()}
+ * makes a copy that can be kept.
+ * <p>
+ * Fields are found as by {@link FormattedRecord#readField(String)}, including
+ * those inherited through the .extends directive.  Nothing is decoded until a
+ * field is asked for, and {@link #copyField(String, char[], int)},
+ * {@link #fieldEquals(String, String)} and the accessors taking the handles
+ * of a {@link RecordLayout} read a field without allocating.
+ */
+public class MappedRecord implements CharSequence
+{
+  private ByteBuffer buf;
+  private int base;
+  private int length;
+  private RecordDefinition recordDefinition;
+
+  MappedRecord() {
+  }
+
+  /**
+   * Points this view at a record.
+   * @param buf the buffer holding the record
+   * @param base the index in the buffer of the record's first character
+   * @param length the length of the record
+   * @param rd the definition of the record
+   */
+  void set(ByteBuffer buf, int base, int length, RecordDefinition rd) {
+    this.buf = buf;
+    this.base = base;
+    this.length = length;
+    recordDefinition = rd;
+  }
+
+  public RecordDefinition getRecordDefinition() { return recordDefinition; }
+
+  /**
+   * Returns the length of the record, in characters.
+   */
+  public int getLength() { return length; }
+
+  public int length() { return length; }
+
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end)
+      throw new StringIndexOutOfBoundsException(start);
+    char[] chars = new char[end - start];
+    for (int i = start; i < end; i++)
+      chars[i - start] = (char) (buf.get(base + i) & 0xff);
+    return new String(chars);
+  }
+
+  /**
+   * Returns the character at a position in the record.
+   * @param index the position, counting from 0
+   */
+  public char charAt(int index) {
+    if (index < 0 || index >= length)
+      throw new StringIndexOutOfBoundsException(index);
+    return (char) (buf.get(base + index) & 0xff);
+  }
+
+  public boolean isRecordType(String rt) {
+    return recordDefinition != null && recordDefinition.getRecordName().equals(rt);
+  }
+
+  /**
+   * Returns the compiled layout of this record, for looking up the handles
+   * used by readInt, readLong, readDouble and readChars.
+   */
+  public RecordLayout getLayout() {
+    return (recordDefinition == null ? null : recordDefinition.getLayout());
+  }
+
+  /**
+   * Finds the definition of a field of this record, or of the record it
+   * extends.
+   * @return the definition, or null if there is no such field
+   */
+  public FieldDefinition getFieldDefinition(String field) {
+    int h = handle(field);
+    return (h < 0 ? null : recordDefinition.getLayout().getFieldDefinition(h));
+  }
+
+  private int handle(String field) {
+    if (recordDefinition == null)
+      return -1;
+    return recordDefinition.getLayout().getHandle(field);
+  }
+
+  /**
+   * Reads a field as an Integer, String or Double, according to its data type.
+   * @return the value, or null if the field is missing, has some other type,
+   * lies beyond the end of the record or (for numbers) is not a number
+   */
+  public Object readField(String field) {
+    int h = handle(field);
+    return (h < 0 ? null : recordDefinition.getLayout().readField(this, h));
+  }
+
+  /**
+   * Reads the text of a field, whatever its data type.
+   * @return the text, or null if there is no such field or it lies beyond
+   * the end of the record
+   */
+  public String getField(String field) {
+    int h = handle(field);
+    RecordLayout layout = getLayout();
+    if (h < 0 || !layout.isPresent(this, h))
+      return null;
+    return layout.readString(this, h);
+  }
+
+  /**
+   * Copies the text of a field into an array, without allocating.
+   * @param dst the array into which the characters are copied
+   * @param off the position in dst of the first character
+   * @return the number of characters copied, or -1 if there is no such
+   * field or it lies beyond the end of the record
+   */
+  public int copyField(String field, char[] dst, int off) {
+    int h = handle(field);
+    RecordLayout layout = getLayout();
+    if (h < 0 || !layout.isPresent(this, h))
+      return -1;
+    return layout.readChars(this, h, dst, off);
+  }
+
+  /**
+   * Parses a field as an int, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold an int
+   * @see RecordLayout#readInt(CharSequence, int)
+   */
+  public int readInt(int handle) {
+    return recordDefinition.getLayout().readInt(this, handle);
+  }
+
+  /**
+   * Parses a field as a long, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold a long
+   */
+  public long readLong(int handle) {
+    return recordDefinition.getLayout().readLong(this, handle);
+  }
+
+  /**
+   * Parses a field as a double, in place.
+   * @param handle the handle of the field in this record's layout
+   * @throws NumberFormatException if the field does not hold a number
+   */
+  public double readDouble(int handle) {
+    return recordDefinition.getLayout().readDouble(this, handle);
+  }
+
+  /**
+   * Parses a field as an int, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   * @see RecordLayout#readInt(CharSequence, int, int)
+   */
+  public int readInt(int handle, int defaultValue) {
+    return recordDefinition.getLayout().readInt(this, handle, defaultValue);
+  }
+
+  /**
+   * Parses a field as a long, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   */
+  public long readLong(int handle, long defaultValue) {
+    return recordDefinition.getLayout().readLong(this, handle, defaultValue);
+  }
+
+  /**
+   * Parses a field as a double, without throwing an exception.
+   * @param handle the handle of the field in this record's layout
+   * @param defaultValue the value returned if the field is blank or malformed
+   */
+  public double readDouble(int handle, double defaultValue) {
+    return recordDefinition.getLayout().readDouble(this, handle, defaultValue);
+  }
+
+  /**
+   * Copies the text of a field into an array, without allocating.
+   * @param handle the handle of the field in this record's layout
+   * @return the number of characters copied
+   */
+  public int readChars(int handle, char[] dst, int off) {
+    return recordDefinition.getLayout().readChars(this, handle, dst, off);
+  }
+
+  /**
+   * Compares the text of a field with a String, without allocating.
+   * @return true if and only if the field exists and holds exactly value
+   */
+  public boolean fieldEquals(String field, String value) {
+    FieldDefinition fd = getFieldDefinition(field);
+    if (fd == null)
+      return false;
+    int start = fd.getStartPosition() - 1;
+    int end = fd.getEndPosition();
+    if (start < 0 || end > length || end - start != value.length())
+      return false;
+    for (int i = start; i < end; i++)
+      if ((char) (buf.get(base + i) & 0xff) != value.charAt(i - start))
+        return false;
+    return true;
+  }
+
+  /**
+   * Makes a FormattedRecord holding a copy of this record.
+   */
+  public FormattedRecord toFormattedRecord() {
+    return new FormattedRecord(recordDefinition, toString());
+  }
+
+  public String toString() {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++)
+      chars[i] = (char) (buf.get(base + i) & 0xff);
+    return new String(chars);
+  }
+}
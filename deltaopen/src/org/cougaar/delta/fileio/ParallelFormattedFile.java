@@ -0,0 +1,430 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Reads a formatted file on several threads at once.  The file is divided
+ * into chunks of about {@link #setChunkSize(int) chunkSize} bytes, each
+ * beginning at the start of a record, and the chunks are parsed in parallel
+ * by worker threads using {@link MappedFormattedFile}.  The records are
+ * handed to a {@link RecordHandler} on the calling thread, so the handler
+ * need not be thread-safe; they come either in the order of the file or,
+ * if {@link #setOrdered(boolean) ordered} is false, chunk by chunk in the
+ * order in which the chunks are finished.  Only a few chunks per thread are
+ * held in memory at a time.
+ * <p>
+ * By default chunks are divided at line breaks, as records are one to a
+ * line in the files this package is meant for.  For files in which records
+ * are not separated by line breaks, setLineDelimited(false) makes the reader
+ * find the chunk boundaries by first stepping through the records with the
+ * rules of {@link FormattedFile#getRecord()}, which reads only the record
+ * names.  In either case the records are the same as those getRecord()
+ * returns for a well-formed file.
+ * <p>
+ * Example:
+ * <PRE>
+ *    FormattedFile f = FileFormatter.newInputFile("MILSTRIP", "samplea0.txt");
+ *    ParallelFormattedFile pf = new ParallelFormattedFile(f);
+ *    pf.read(new ParallelFormattedFile.RecordHandler() {
+ *        public boolean handleRecord(FormattedRecord r) {
+ *          if (r.isRecordType("A0") == r.IS_RECORD_TYPE)
+ *            System.out.println("Found an A0 record");
+ *          return true;
+ *        }});
+ *    System.out.println(pf.getRecordCount() + " records in " + pf.getElapsedTime() + " ms");
+ * </PRE>
+ * Running this class as a program compares the throughput of the parallel
+ * reader on one to N threads with that of FormattedFile.getRecord().
+ */
+public class ParallelFormattedFile
+{
+  /**
+   * Receives the records read from a file.
+   */
+  public interface RecordHandler {
+    /**
+     * Process a record.
+     * @param r the record
+     * @return true to continue with the next record, false to stop early
+     */
+    public boolean handleRecord(FormattedRecord r);
+  }
+
+  /** The default size of a chunk, in bytes */
+  public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+  // the number of chunks per thread that may be parsed ahead of the handler
+  private static final int CHUNKS_AHEAD = 2;
+
+  private FileDefinition fileDefinition;
+  private String filename;
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private boolean ordered = true;
+  private boolean lineDelimited = true;
+
+  // figures for the last read
+  private int recordCount;
+  private long byteCount;
+  private long elapsedTime;
+
+  // the state of a read in progress, guarded by this object
+  private Chunk[] chunks;
+  private int nextChunk;
+  private int handledChunks;
+  private Vector finished = new Vector();
+  private boolean stopped;
+
+  /**
+   * Prepares to read a FormattedFile, using its file name and definition.
+   */
+  public ParallelFormattedFile(FormattedFile f) {
+    this(f.getFileDefinition(), f.getFileName());
+  }
+
+  /**
+   * Prepares to read the named file according to a file definition.
+   */
+  public ParallelFormattedFile(FileDefinition fileDefinition, String filename) {
+    this.fileDefinition = fileDefinition;
+    this.filename = filename;
+  }
+
+  /**
+   * Sets the number of worker threads; by default, the number of processors.
+   */
+  public void setThreadCount(int n) {
+    threadCount = Math.max(1, n);
+  }
+
+  public int getThreadCount() { return threadCount; }
+
+  /**
+   * Sets the approximate size of the chunks into which the file is divided.
+   */
+  public void setChunkSize(int bytes) {
+    chunkSize = Math.max(1, bytes);
+  }
+
+  public int getChunkSize() { return chunkSize; }
+
+  /**
+   * Chooses whether records are handled in the order of the file (the
+   * default) or in the order in which their chunks are parsed.
+   */
+  public void setOrdered(boolean ordered) {
+    this.ordered = ordered;
+  }
+
+  public boolean isOrdered() { return ordered; }
+
+  /**
+   * Chooses whether chunks are divided at line breaks (the default) or at
+   * record boundaries found by stepping through the file.
+   */
+  public void setLineDelimited(boolean lineDelimited) {
+    this.lineDelimited = lineDelimited;
+  }
+
+  public boolean isLineDelimited() { return lineDelimited; }
+
+  /**
+   * Returns the number of records handled by the last read.
+   */
+  public int getRecordCount() { return recordCount; }
+
+  /**
+   * Returns the time taken by the last read, in milliseconds.
+   */
+  public long getElapsedTime() { return elapsedTime; }
+
+  /**
+   * Returns the rate at which the last read went through the file, in
+   * bytes per second.
+   */
+  public double getThroughput() {
+    return (elapsedTime == 0 ? 0 : byteCount * 1000.0 / elapsedTime);
+  }
+
+  /**
+   * Reads the file, handing each record to a handler.
+   * @param handler the handler, called on this thread
+   * @return the number of records handled
+   * @throws IOException if the file cannot be read
+   * @throws RuntimeException if one was thrown while parsing a chunk
+   */
+  public int read(RecordHandler handler) throws IOException {
+    long startTime = System.currentTimeMillis();
+    recordCount = 0;
+    byteCount = new File(filename).length();
+    synchronized (this) {
+      chunks = divide();
+      nextChunk = 0;
+      handledChunks = 0;
+      finished.removeAllElements();
+      stopped = false;
+    }
+
+    int n = Math.min(threadCount, chunks.length);
+    Worker[] workers = new Worker[n];
+    for (int i = 0; i < n; i++) {
+      workers[i] = new Worker(i);
+      workers[i].start();
+    }
+
+    Throwable error = null;
+    try {
+      for (int i = 0; i < chunks.length && error == null; i++) {
+        Chunk c = nextFinishedChunk(i);
+        if (c.error != null) {
+          error = c.error;
+          break;
+        }
+        for (int j = 0; j < c.records.size(); j++) {
+          recordCount++;
+          if (!handler.handleRecord((FormattedRecord) c.records.elementAt(j))) {
+            i = chunks.length;
+            break;
+          }
+        }
+        synchronized (this) {
+          c.records = null;
+          handledChunks++;
+          notifyAll();
+        }
+      }
+    }
+    finally {
+      synchronized (this) {
+        stopped = true;
+        notifyAll();
+      }
+      for (int i = 0; i < n; i++) {
+        try {
+          workers[i].join();
+        }
+        catch (InterruptedException ie) {
+        }
+      }
+      chunks = null;
+      finished.removeAllElements();
+      elapsedTime = System.currentTimeMillis() - startTime;
+    }
+    if (error instanceof IOException)
+      throw (IOException) error;
+    if (error instanceof RuntimeException)
+      throw (RuntimeException) error;
+    if (error instanceof Error)
+      throw (Error) error;
+    return recordCount;
+  }
+
+  // Wait for the next chunk to hand to the handler:  chunk i if ordered,
+  // otherwise whichever chunk was finished first
+  private synchronized Chunk nextFinishedChunk(int i) {
+    while (true) {
+      if (ordered) {
+        if (chunks[i].done) {
+          finished.removeElement(chunks[i]);
+          return chunks[i];
+        }
+      }
+      else if (!finished.isEmpty()) {
+        Chunk c = (Chunk) finished.elementAt(0);
+        finished.removeElementAt(0);
+        return c;
+      }
+      try {
+        wait();
+      }
+      catch (InterruptedException ie) {
+      }
+    }
+  }
+
+  // Take the next chunk to parse, waiting if the handler has fallen behind;
+  // null if there is nothing more to do
+  private synchronized Chunk takeChunk() {
+    int ahead = CHUNKS_AHEAD * threadCount;
+    while (!stopped && nextChunk < chunks.length && nextChunk - handledChunks >= ahead) {
+      try {
+        wait();
+      }
+      catch (InterruptedException ie) {
+      }
+    }
+    if (stopped || nextChunk >= chunks.length)
+      return null;
+    return chunks[nextChunk++];
+  }
+
+  private synchronized void chunkDone(Chunk c) {
+    c.done = true;
+    finished.addElement(c);
+    notifyAll();
+  }
+
+  /**
+   * Divides the file into chunks beginning at record boundaries.
+   */
+  private Chunk[] divide() throws IOException {
+    Vector v = new Vector();
+    MappedFormattedFile mf = new MappedFormattedFile(fileDefinition, filename,
+      MappedFormattedFile.DEFAULT_WINDOW_SIZE);
+    mf.open();
+    try {
+      long length = mf.getFileLength();
+      long start = 0;
+      if (lineDelimited) {
+        while (start < length) {
+          long end = (length - start <= chunkSize ? length :
+            mf.nextLineStart(start + chunkSize - 1));
+          v.addElement(new Chunk(start, end));
+          start = end;
+        }
+      }
+      else {
+        long end = chunkSize;
+        while (mf.nextRecord() != null) {
+          long pos = mf.getPosition();
+          if (pos >= end || pos >= length) {
+            v.addElement(new Chunk(start, pos));
+            start = pos;
+            end = pos + chunkSize;
+          }
+        }
+        if (start < length)
+          v.addElement(new Chunk(start, length));
+      }
+    }
+    finally {
+      mf.close();
+    }
+    Chunk[] c = new Chunk[v.size()];
+    v.copyInto(c);
+    return c;
+  }
+
+  /**
+   * A part of the file, and the records parsed from it.
+   */
+  private static class Chunk {
+    long start;
+    long end;
+    Vector records = new Vector();
+    boolean done;
+    // whatever stopped the chunk from being parsed, to be thrown by read()
+    Throwable error;
+
+    Chunk(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * Parses chunks until there are no more, or the read is stopped.
+   */
+  private class Worker extends Thread {
+    private MappedFormattedFile mf;
+
+    public Worker(int i) {
+      super("ParallelFormattedFile worker " + i + ": " + filename);
+      setDaemon(true);
+      mf = new MappedFormattedFile(fileDefinition, filename,
+        (int) Math.min(MappedFormattedFile.DEFAULT_WINDOW_SIZE,
+          (long) chunkSize + 2 * fileDefinition.getMaxRecordLength()));
+    }
+
+    public void run() {
+      Chunk c = null;
+      while ((c = takeChunk()) != null) {
+        try {
+          mf.open(c.start, c.end);
+          MappedRecord r = null;
+          while ((r = mf.nextRecord()) != null)
+            c.records.addElement(r.toFormattedRecord());
+        }
+        catch (Throwable t) {
+          c.error = t;
+        }
+        finally {
+          // the reader waits for every chunk, parsed or not
+          try {
+            mf.close();
+          }
+          finally {
+            chunkDone(c);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares the throughput of FormattedFile.getRecord() with that of the
+   * parallel reader on 1 to N threads.
+   * <br>Usage:  ParallelFormattedFile fileType fileName [maxThreads [chunkSize]]
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage:  ParallelFormattedFile fileType fileName [maxThreads [chunkSize]]");
+      return;
+    }
+    int maxThreads = (args.length > 2 ? Integer.parseInt(args[2]) :
+      Runtime.getRuntime().availableProcessors());
+    FormattedFile f = FileFormatter.loadFileType(args[0], args[1]);
+    double mb = new File(args[1]).length() / (1024.0 * 1024.0);
+
+    long t = System.currentTimeMillis();
+    int n = 0;
+    f.openFile();
+    while (f.getRecord() != null)
+      n++;
+    f.closeFile();
+    t = Math.max(1, System.currentTimeMillis() - t);
+    System.out.println("sequential:  " + n + " records in " + t + " ms, " +
+      (int) (mb * 1000 / t) + " MB/s");
+
+    RecordHandler counter = new RecordHandler() {
+        public boolean handleRecord(FormattedRecord r) {
+          return true;
+        }};
+    ParallelFormattedFile pf = new ParallelFormattedFile(f);
+    if (args.length > 3)
+      pf.setChunkSize(Integer.parseInt(args[3]));
+    for (int threads = 1; threads <= maxThreads; threads++) {
+      for (int o = 0; o < 2; o++) {
+        pf.setThreadCount(threads);
+        pf.setOrdered(o == 0);
+        pf.read(counter);
+        System.out.println(threads + " threads, " + (o == 0 ? "ordered:    " : "unordered:  ") +
+          pf.getRecordCount() + " records in " + pf.getElapsedTime() + " ms, " +
+          (int) (pf.getThroughput() / (1024 * 1024)) + " MB/s");
+      }
+    }
+  }
+}
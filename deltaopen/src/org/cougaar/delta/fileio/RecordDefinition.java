@@ -40,6 +40,8 @@ public class RecordDefinition implements Serializable
   private String recordName;
   private RecordDefinition extends_record;
   private int length;
+  // compiled on first use; see getLayout()
+  private transient RecordLayout layout;
 
   public RecordDefinition() {
     recordName = null;
@@ -64,6 +66,7 @@ public class RecordDefinition implements Serializable
 
   public void setExtends(RecordDefinition name) {
     extends_record = name;
+    layout = null;
     if (name.getLength() > length)
       length = name.getLength();
   }
@@ -79,6 +82,7 @@ public class RecordDefinition implements Serializable
 
   public void addFieldDefinition(FieldDefinition fd) {
     fieldDefinitions.put(fd.getFieldName(), fd);
+    layout = null;
     if (fd.getEndPosition() > length)
       length = fd.getEndPosition();
   }
@@ -95,4 +99,16 @@ public class RecordDefinition implements Serializable
   {
     return length;
   }
+
+  /**
+   * Returns this definition compiled for reading.  The layout is compiled
+   * when first asked for, so the definition (and any definition it extends)
+   * should be complete by then, as it is once the .des file is loaded.
+   */
+  public RecordLayout getLayout() {
+    RecordLayout l = layout;
+    if (l == null)
+      layout = l = new RecordLayout(this);
+    return l;
+  }
 }
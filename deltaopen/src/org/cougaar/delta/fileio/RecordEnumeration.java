@@ -0,0 +1,203 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the records of a {@link FormattedFile} one at a time, as they are
+ * asked for, rather than gathering them all into a Vector.  The records may
+ * be limited to certain record types; the type of each record is found from
+ * its name before the rest of it is read, and records of other types are
+ * skipped without being made into FormattedRecords.
+ * <p>
+ * The file is closed when the last record has been read or an error occurs.
+ * A caller that stops early should call {@link #close()}.
+ * <p>
+ * Example:
+ * <PRE>
+ *    FormattedFile f = FileFormatter.newInputFile("MILSTRIP", "samplea0.txt");
+ *    RecordEnumeration e = f.records("A0");
+ *    while (e.hasMoreElements()) {
+ *       FormattedRecord r = e.nextRecord();
+ *       if (r.readField("nsn").equals(wanted)) {
+ *          e.close();
+ *          break;
+ *       }
+ *    }
+ * </PRE>
+ * @see FormattedFile#records(String[])
+ */
+public class RecordEnumeration implements Enumeration
+{
+  private FileDefinition fileDefinition;
+  private BufferedReader in;
+  // the names of the record types wanted, or null for all
+  private Hashtable recordTypes;
+  private boolean autoClose;
+
+  private char[] recordBuf;
+  // recordBuf as a CharSequence, for finding record definitions
+  private CharBuffer recordChars;
+  // the record read ahead by hasMoreElements()
+  private FormattedRecord next;
+
+  /**
+   * Prepares to read records.
+   * @param fileDefinition the format of the file
+   * @param in the open file
+   * @param recordTypes the names of the record types to return, or null for
+   * all records
+   * @param autoClose whether to close the file at its end or on an error
+   */
+  RecordEnumeration(FileDefinition fileDefinition, BufferedReader in,
+      String[] recordTypes, boolean autoClose)
+  {
+    this.fileDefinition = fileDefinition;
+    this.in = in;
+    this.autoClose = autoClose;
+    if (recordTypes != null) {
+      this.recordTypes = new Hashtable();
+      for (int i = 0; i < recordTypes.length; i++)
+        this.recordTypes.put(recordTypes[i], recordTypes[i]);
+    }
+    recordBuf = new char[fileDefinition.getMaxRecordLength()];
+    recordChars = CharBuffer.wrap(recordBuf);
+  }
+
+  public boolean hasMoreElements() {
+    if (next == null)
+      next = read();
+    return next != null;
+  }
+
+  public Object nextElement() {
+    return nextRecord();
+  }
+
+  /**
+   * Returns the next record of the types wanted.
+   * @throws NoSuchElementException if there are no more records
+   */
+  public FormattedRecord nextRecord() {
+    if (!hasMoreElements())
+      throw new NoSuchElementException();
+    FormattedRecord fr = next;
+    next = null;
+    return fr;
+  }
+
+  /**
+   * Closes the file.  No more records are returned afterward.
+   */
+  public void close() {
+    next = null;
+    if (in == null)
+      return;
+    try {
+      in.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+    in = null;
+  }
+
+  /**
+   * Reads the next record of the types wanted, following the rules
+   * described for {@link FormattedFile#getRecord()}.
+   * @return the record, or null at the end of the file or on an error
+   */
+  FormattedRecord read() {
+    if (in == null)
+      return null;
+    int init = fileDefinition.getMinRecordLength();
+    RecordTypeTable table = fileDefinition.getRecordTypeTable();
+    try {
+      while (true) {
+        int numread = in.read(recordBuf, 0, init);
+        if (numread == -1)
+          return end();
+        else if (numread != init)
+        {
+          System.err.println("FormattedFile::getRecord:ERROR:  less than minimum record length (" + init + " characters)!");
+          return end();
+        }
+        RecordDefinition rd = table.lookup(recordChars, init);
+        boolean wanted = (recordTypes == null ||
+          recordTypes.containsKey(rd.getRecordName()));
+
+        // If this record is longer than the minimum for this file,
+        // make sure we have the whole record
+        int more = Math.max(0, rd.getLength() - init);
+        if (more > 0 &&
+            (wanted ? in.read(recordBuf, init, more) : skip(more)) != more)
+        {
+          System.err.println("FormattedFile::getRecord:ERROR:  less than required record length (" + (init+more) + " characters)!");
+          return end();
+        }
+        FormattedRecord fr = null;
+        if (wanted)
+          fr = new FormattedRecord(rd, new String(recordBuf, 0, init + more));
+
+        // Ignore whitespace between records
+        in.mark(2);
+        char ch = (char) in.read();
+        while (Character.isWhitespace(ch))
+        {
+          in.mark(2);
+          ch = (char) in.read();
+        }
+        in.reset();
+
+        if (fr != null)
+          return fr;
+      }
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+      return end();
+    }
+  }
+
+  // skip characters, returning the number skipped
+  private int skip(int n) throws IOException {
+    int skipped = 0;
+    while (skipped < n) {
+      long s = in.skip(n - skipped);
+      if (s <= 0)
+        break;
+      skipped += (int) s;
+    }
+    return skipped;
+  }
+
+  private FormattedRecord end() {
+    if (autoClose)
+      close();
+    return null;
+  }
+}
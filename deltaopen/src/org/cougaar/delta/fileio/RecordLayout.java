@@ -0,0 +1,557 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+import java.io.PrintStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * A {@link RecordDefinition} compiled for reading.  Each field, including
+ * those of the record extended through the .extends directive, is given an
+ * integer handle, and its position and data type are kept in arrays indexed
+ * by the handle.  A caller looks up the handle of a field once, by name, and
+ * then reads the field from any number of records without further lookups.
+ * <p>
+ * Records are read as CharSequences, so a layout serves the StringBuffer of a
+ * {@link FormattedRecord} and the mapped bytes of a {@link MappedRecord}
+ * alike.  Numbers are parsed in place, without making a String of the field,
+ * and according to the justification, padding character and implied decimal
+ * places of the field definition (see {@link FileFormatter}).  A bad number
+ * does not cost an exception:  the readers taking a default value return it,
+ * and readField returns null.  Either way the layout counts the blank and
+ * malformed numbers found in each field, so that the quality of a feed can be
+ * watched; see getMalformedCount and printStatistics.
+ * <p>
+ * Example:
+ * <PRE>
+ *    RecordLayout layout = fd.getRecordDefinition("A0").getLayout();
+ *    int qty = layout.getHandle("qty");
+ *    FormattedRecord r = null;
+ *    while ((r = f.getRecord()) != null) {
+ *       if (r.getRecordDefinition().getLayout() == layout)
+ *          total += r.readInt(qty);
+ *    }
+ * </PRE>
+ */
+public class RecordLayout
+{
+  /** The data type of a field that is not a String, Integer or Double */
+  public static final int TYPE_OTHER = 0;
+  public static final int TYPE_STRING = 1;
+  public static final int TYPE_INTEGER = 2;
+  public static final int TYPE_DOUBLE = 3;
+
+  // powers of ten that are exactly representable as doubles
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  // the largest mantissa that is exactly representable as a double
+  private static final long MAX_EXACT_MANTISSA = (1L << 53) - 1;
+  // exponents beyond this make any double zero or infinite
+  private static final int MAX_EXPONENT = 100000;
+  // the padding of a field that is not stripped at all
+  private static final int NO_PAD = -1;
+
+  /**
+   * Returned by parseInteger for a blank or malformed field.
+   */
+  static final long MALFORMED = Long.MIN_VALUE;
+
+  private RecordDefinition recordDefinition;
+  private Hashtable handles = new Hashtable();
+  private FieldDefinition[] fields;
+  // the position of each field, counting from 0; ends are exclusive
+  private int[] starts;
+  private int[] ends;
+  private int[] types;
+  // the padding stripped from the front and back of each numeric field; a
+  // blank stands for any whitespace, which is stripped with any padding
+  private int[] leadPads;
+  private int[] trailPads;
+  private int[] impliedDecimals;
+  // the blank and malformed numbers read from each field
+  private long[] blankCounts;
+  private long[] malformedCounts;
+
+  /**
+   * Compiles a record definition.  The fields of the record come first,
+   * followed by those of the record it extends that it does not redefine.
+   */
+  public RecordLayout(RecordDefinition rd) {
+    recordDefinition = rd;
+    Vector v = new Vector();
+    Enumeration e = rd.getFieldDefinitions().elements();
+    while (e.hasMoreElements())
+      add(v, (FieldDefinition) e.nextElement());
+    if (rd.getExtends() != null) {
+      RecordLayout parent = rd.getExtends().getLayout();
+      for (int i = 0; i < parent.getFieldCount(); i++)
+        add(v, parent.getFieldDefinition(i));
+    }
+
+    int n = v.size();
+    fields = new FieldDefinition[n];
+    v.copyInto(fields);
+    starts = new int[n];
+    ends = new int[n];
+    types = new int[n];
+    leadPads = new int[n];
+    trailPads = new int[n];
+    impliedDecimals = new int[n];
+    blankCounts = new long[n];
+    malformedCounts = new long[n];
+    for (int i = 0; i < n; i++) {
+      starts[i] = fields[i].getStartPosition() - 1;
+      ends[i] = fields[i].getEndPosition();
+      types[i] = typeOf(fields[i].getDataType());
+      setPadding(i);
+      if (types[i] == TYPE_DOUBLE)
+        impliedDecimals[i] = Math.max(0, fields[i].getImpliedDecimals());
+    }
+  }
+
+  // Blanks are stripped from both ends of a justified field, and its padding
+  // character from the end opposite the justification.  Without a
+  // justification, a Double is trimmed of blanks, as Double.parseDouble
+  // trims them, and an Integer must be all digits, as for Integer.parseInt.
+  // Padding with a digit is read as part of the number.
+  private void setPadding(int h) {
+    String just = fields[h].getJustification();
+    if (just == null || just.length() == 0) {
+      leadPads[h] = trailPads[h] = (types[h] == TYPE_DOUBLE ? ' ' : NO_PAD);
+      return;
+    }
+    int pad = ' ';
+    String p = fields[h].getPaddingChar();
+    if (p != null && p.length() == 1)
+      pad = p.charAt(0);
+    else if (p != null && p.length() > 1 && !p.equalsIgnoreCase("space") &&
+        !p.equalsIgnoreCase("blank"))
+      System.err.println("RecordLayout: ERROR - unknown padding \"" + p + "\" for field " + fields[h].getFieldName() + "; using blanks");
+    if (pad >= '0' && pad <= '9')
+      pad = ' ';
+    char j = Character.toLowerCase(just.charAt(0));
+    leadPads[h] = (j == 'r' ? pad : ' ');
+    trailPads[h] = (j == 'l' ? pad : ' ');
+  }
+
+  private void add(Vector v, FieldDefinition fd) {
+    if (handles.get(fd.getFieldName()) == null) {
+      handles.put(fd.getFieldName(), new Integer(v.size()));
+      v.addElement(fd);
+    }
+  }
+
+  private static int typeOf(String dataType) {
+    if ("String".equals(dataType))
+      return TYPE_STRING;
+    else if ("Integer".equals(dataType))
+      return TYPE_INTEGER;
+    else if ("Double".equals(dataType))
+      return TYPE_DOUBLE;
+    else
+      return TYPE_OTHER;
+  }
+
+  public RecordDefinition getRecordDefinition() { return recordDefinition; }
+
+  /**
+   * Looks up the handle of a field.
+   * @param fieldName the name of the field
+   * @return the handle, or -1 if the record has no such field
+   */
+  public int getHandle(String fieldName) {
+    Integer h = (Integer) handles.get(fieldName);
+    return (h == null ? -1 : h.intValue());
+  }
+
+  public int getFieldCount() { return fields.length; }
+
+  public FieldDefinition getFieldDefinition(int handle) { return fields[handle]; }
+
+  /**
+   * Returns the data type of a field, one of TYPE_STRING, TYPE_INTEGER,
+   * TYPE_DOUBLE or TYPE_OTHER.
+   */
+  public int getType(int handle) { return types[handle]; }
+
+  /**
+   * Returns the width of a field, in characters.
+   */
+  public int getWidth(int handle) { return ends[handle] - starts[handle]; }
+
+  /**
+   * Tells whether a record is long enough to hold a field.
+   */
+  public boolean isPresent(CharSequence record, int handle) {
+    return starts[handle] >= 0 && starts[handle] <= ends[handle] &&
+      ends[handle] <= record.length();
+  }
+
+  /**
+   * Reads a field as an Integer, String or Double, according to its data
+   * type, as {@link FormattedRecord#readField(String)} does.
+   * @return the value, or null if the field has some other type, lies
+   * beyond the end of the record or (for numbers) is blank or malformed
+   */
+  public Object readField(CharSequence record, int handle) {
+    if (!isPresent(record, handle)) {
+      System.err.println("\nRecordLayout: ERROR - incorrect record length " + record.length() + " for field " + fields[handle].getFieldName() + " of record: " + record);
+      return null;
+    }
+    switch (types[handle]) {
+    case TYPE_STRING:
+      return readString(record, handle);
+    case TYPE_INTEGER:
+      long v = parseInteger(record, handle, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      return (v == MALFORMED ? null : new Integer((int) v));
+    case TYPE_DOUBLE:
+      double d = parseDecimal(record, handle);
+      return (Double.isNaN(d) ? null : new Double(d));
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Reads the text of a field, whatever its data type.
+   * @throws StringIndexOutOfBoundsException if the field lies beyond the
+   * end of the record
+   */
+  public String readString(CharSequence record, int handle) {
+    return record.subSequence(starts[handle], ends[handle]).toString();
+  }
+
+  /**
+   * Copies the text of a field into an array, without allocating.
+   * @param dst the array into which the characters are copied
+   * @param off the position in dst of the first character
+   * @return the number of characters copied
+   * @throws StringIndexOutOfBoundsException if the field lies beyond the
+   * end of the record
+   */
+  public int readChars(CharSequence record, int handle, char[] dst, int off) {
+    int start = starts[handle];
+    int end = ends[handle];
+    if (end > record.length())
+      throw new StringIndexOutOfBoundsException(end);
+    for (int i = start; i < end; i++)
+      dst[off + i - start] = record.charAt(i);
+    return end - start;
+  }
+
+  /**
+   * Parses a field as an int.
+   * @throws NumberFormatException if the field does not hold an int
+   * @throws StringIndexOutOfBoundsException if the field lies beyond the
+   * end of the record
+   */
+  public int readInt(CharSequence record, int handle) {
+    checkLength(record, handle);
+    long v = parseInteger(record, handle, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    if (v == MALFORMED)
+      throw badNumber(record, handle);
+    return (int) v;
+  }
+
+  /**
+   * Parses a field as an int, without throwing an exception.
+   * @param defaultValue the value returned if the field is blank, malformed
+   * or lies beyond the end of the record
+   */
+  public int readInt(CharSequence record, int handle, int defaultValue) {
+    if (!isPresent(record, handle))
+      return defaultValue;
+    long v = parseInteger(record, handle, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    return (v == MALFORMED ? defaultValue : (int) v);
+  }
+
+  /**
+   * Parses a field as a long.  The one long that cannot be read is
+   * Long.MIN_VALUE, which is taken as malformed.
+   * @throws NumberFormatException if the field does not hold a long
+   * @throws StringIndexOutOfBoundsException if the field lies beyond the
+   * end of the record
+   */
+  public long readLong(CharSequence record, int handle) {
+    checkLength(record, handle);
+    long v = parseInteger(record, handle, Long.MIN_VALUE + 1, Long.MAX_VALUE);
+    if (v == MALFORMED)
+      throw badNumber(record, handle);
+    return v;
+  }
+
+  /**
+   * Parses a field as a long, without throwing an exception.
+   * @param defaultValue the value returned if the field is blank, malformed
+   * or lies beyond the end of the record
+   */
+  public long readLong(CharSequence record, int handle, long defaultValue) {
+    if (!isPresent(record, handle))
+      return defaultValue;
+    long v = parseInteger(record, handle, Long.MIN_VALUE + 1, Long.MAX_VALUE);
+    return (v == MALFORMED ? defaultValue : v);
+  }
+
+  /**
+   * Parses a field as a double.  Plain decimals of up to fifteen significant
+   * digits are parsed in place; longer ones and those with exponents are
+   * checked, then handed to Double.parseDouble for rounding.  NaN,
+   * Infinity, hexadecimal and suffixed numbers are malformed.
+   * @throws NumberFormatException if the field does not hold a number
+   * @throws StringIndexOutOfBoundsException if the field lies beyond the
+   * end of the record
+   */
+  public double readDouble(CharSequence record, int handle) {
+    checkLength(record, handle);
+    double d = parseDecimal(record, handle);
+    if (Double.isNaN(d))
+      throw badNumber(record, handle);
+    return d;
+  }
+
+  /**
+   * Parses a field as a double, without throwing an exception.
+   * @param defaultValue the value returned if the field is blank, malformed
+   * or lies beyond the end of the record
+   */
+  public double readDouble(CharSequence record, int handle, double defaultValue) {
+    if (!isPresent(record, handle))
+      return defaultValue;
+    double d = parseDecimal(record, handle);
+    return (Double.isNaN(d) ? defaultValue : d);
+  }
+
+  /**
+   * Returns the number of blank values read from a numeric field since the
+   * layout was compiled or the counts were reset.
+   */
+  public synchronized long getBlankCount(int handle) {
+    return blankCounts[handle];
+  }
+
+  /**
+   * Returns the number of malformed values read from a numeric field since
+   * the layout was compiled or the counts were reset.
+   */
+  public synchronized long getMalformedCount(int handle) {
+    return malformedCounts[handle];
+  }
+
+  public synchronized void resetCounts() {
+    for (int h = 0; h < fields.length; h++) {
+      blankCounts[h] = 0;
+      malformedCounts[h] = 0;
+    }
+  }
+
+  /**
+   * Prints the counts of the fields from which blank or malformed values
+   * have been read.
+   */
+  public synchronized void printStatistics(PrintStream out) {
+    for (int h = 0; h < fields.length; h++) {
+      if (blankCounts[h] > 0 || malformedCounts[h] > 0)
+        out.println(recordDefinition.getRecordName() + "." +
+          fields[h].getFieldName() + ":  " + blankCounts[h] + " blank, " +
+          malformedCounts[h] + " malformed");
+    }
+  }
+
+  private synchronized void countBlank(int handle) {
+    blankCounts[handle]++;
+  }
+
+  private synchronized void countMalformed(int handle) {
+    malformedCounts[handle]++;
+  }
+
+  private static boolean isPad(char c, int pad) {
+    return pad != NO_PAD && (c == pad || c <= ' ');
+  }
+
+  /**
+   * Parses a field as an integer limited to [min, max], stripping its
+   * padding and accepting a sign before or after the digits.  The field
+   * must lie within the record.
+   * @return the value, or MALFORMED if the field is blank or malformed
+   */
+  long parseInteger(CharSequence s, int handle, long min, long max) {
+    int i = starts[handle];
+    int end = ends[handle];
+    int lead = leadPads[handle];
+    int trail = trailPads[handle];
+    while (i < end && isPad(s.charAt(i), lead))
+      i++;
+    while (end > i && isPad(s.charAt(end - 1), trail))
+      end--;
+    if (i == end) {
+      countBlank(handle);
+      return MALFORMED;
+    }
+    boolean negative = false;
+    char c = s.charAt(i);
+    if (c == '-' || c == '+') {
+      negative = (c == '-');
+      for (i++; i < end && isPad(s.charAt(i), lead); i++)
+        ;
+    }
+    else {
+      c = s.charAt(end - 1);
+      if (c == '-' || c == '+') {
+        negative = (c == '-');
+        for (end--; end > i && isPad(s.charAt(end - 1), trail); end--)
+          ;
+      }
+    }
+    if (i == end) {
+      countMalformed(handle);
+      return MALFORMED;
+    }
+    // accumulate negatively, since |min| > max
+    long limit = (negative ? min : -max);
+    long multmin = limit / 10;
+    long result = 0;
+    for (; i < end; i++) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < multmin || result * 10 < limit + digit) {
+        countMalformed(handle);
+        return MALFORMED;
+      }
+      result = result * 10 - digit;
+    }
+    return (negative ? result : -result);
+  }
+
+  /**
+   * Parses a field as a double, stripping its padding, accepting a sign
+   * before or after the digits and applying its implied decimal places if
+   * no decimal point is written.  The field must lie within the record.
+   * @return the value, or NaN if the field is blank or malformed
+   */
+  double parseDecimal(CharSequence s, int handle) {
+    int i = starts[handle];
+    int end = ends[handle];
+    int lead = leadPads[handle];
+    int trail = trailPads[handle];
+    while (i < end && isPad(s.charAt(i), lead))
+      i++;
+    while (end > i && isPad(s.charAt(end - 1), trail))
+      end--;
+    if (i == end) {
+      countBlank(handle);
+      return Double.NaN;
+    }
+    boolean negative = false;
+    char c = s.charAt(i);
+    if (c == '-' || c == '+') {
+      negative = (c == '-');
+      for (i++; i < end && isPad(s.charAt(i), lead); i++)
+        ;
+    }
+    else {
+      c = s.charAt(end - 1);
+      if (c == '-' || c == '+') {
+        negative = (c == '-');
+        for (end--; end > i && isPad(s.charAt(end - 1), trail); end--)
+          ;
+      }
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int scale = -1;
+    boolean exact = true;
+    int k = i;
+    for (; k < end; k++) {
+      c = s.charAt(k);
+      if (c >= '0' && c <= '9') {
+        if (mantissa < MAX_EXACT_MANTISSA / 10)
+          mantissa = mantissa * 10 + (c - '0');
+        else
+          exact = false;
+        digits++;
+        if (scale >= 0)
+          scale++;
+      }
+      else if (c == '.' && scale < 0)
+        scale = 0;
+      else
+        break;
+    }
+    int mantissaEnd = k;
+    int exponent = 0;
+    if (digits > 0 && k < end && (s.charAt(k) == 'e' || s.charAt(k) == 'E')) {
+      exact = false;
+      boolean negativeExponent = false;
+      if (++k < end && (s.charAt(k) == '-' || s.charAt(k) == '+'))
+        negativeExponent = (s.charAt(k++) == '-');
+      int expDigits = 0;
+      for (; k < end && s.charAt(k) >= '0' && s.charAt(k) <= '9'; k++) {
+        if (exponent < MAX_EXPONENT)
+          exponent = exponent * 10 + (s.charAt(k) - '0');
+        expDigits++;
+      }
+      if (expDigits == 0)
+        k = -1;
+      if (negativeExponent)
+        exponent = -exponent;
+    }
+    if (digits == 0 || k != end) {
+      countMalformed(handle);
+      return Double.NaN;
+    }
+    if (scale < 0)
+      scale = impliedDecimals[handle];
+
+    if (exact && scale < POWERS_OF_TEN.length) {
+      // the mantissa and the power of ten are both exact, so the quotient
+      // is correctly rounded
+      double d = (scale > 0 ? mantissa / POWERS_OF_TEN[scale] : (double) mantissa);
+      return (negative ? -d : d);
+    }
+    // long mantissas and exponents:  the text is known to be good, so
+    // Double.parseDouble does the rounding without failing
+    StringBuffer buf = new StringBuffer(mantissaEnd - i + 12);
+    if (negative)
+      buf.append('-');
+    for (k = i; k < mantissaEnd; k++) {
+      if (s.charAt(k) != '.')
+        buf.append(s.charAt(k));
+    }
+    buf.append('E').append(exponent - scale);
+    return Double.parseDouble(buf.toString());
+  }
+
+  private void checkLength(CharSequence s, int handle) {
+    if (ends[handle] > s.length())
+      throw new StringIndexOutOfBoundsException(ends[handle]);
+  }
+
+  private NumberFormatException badNumber(CharSequence s, int handle) {
+    return new NumberFormatException("For input string: \"" + s.subSequence(starts[handle], ends[handle]) + "\"");
+  }
+}
@@ -0,0 +1,122 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.fileio;
+
+/**
+ * Finds the definition of a record from the record name at the record name
+ * offset of a {@link FileDefinition}.  The names are kept in a trie, folded
+ * to one case, so a record is resolved in a single pass over the characters
+ * of its name however many record types the file has.  The result is the
+ * one {@link FormattedFile} has always given:  the last definition (in the
+ * order of the .des file) whose name appears at the offset, ignoring case,
+ * or the first definition if no name does.
+ */
+class RecordTypeTable
+{
+  private RecordDefinition[] definitions;
+  private int offset;
+  private Node root = new Node();
+
+  /**
+   * Builds the table.
+   * @param definitions the record definitions, in the order of the .des file
+   * @param offset the position of the record name within a record
+   */
+  RecordTypeTable(RecordDefinition[] definitions, int offset) {
+    this.definitions = definitions;
+    this.offset = offset;
+    for (int i = 0; i < definitions.length; i++) {
+      String name = definitions[i].getRecordName();
+      Node node = root;
+      for (int j = 0; j < name.length(); j++)
+        node = node.addChild(fold(name.charAt(j)));
+      // a later definition of the same name takes precedence
+      node.definition = i;
+    }
+  }
+
+  /**
+   * Finds the definition of a record.
+   * @param record the characters of the record
+   * @param available the number of characters of the record that may be
+   * examined, starting from the first
+   * @return the definition, or null if the file defines no records
+   */
+  RecordDefinition lookup(CharSequence record, int available) {
+    if (definitions.length == 0)
+      return null;
+    int best = 0;
+    if (available < offset)
+      return definitions[best];
+    Node node = root;
+    if (node.definition > best)
+      best = node.definition;
+    for (int i = offset; i < available; i++) {
+      node = node.getChild(fold(record.charAt(i)));
+      if (node == null)
+        break;
+      if (node.definition > best)
+        best = node.definition;
+    }
+    return definitions[best];
+  }
+
+  // the case in which characters are compared, as by equalsIgnoreCase
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  /**
+   * A node of the trie.  Record names are short and few share a prefix, so
+   * the children are found by a scan of a small array.
+   */
+  private static class Node {
+    char[] keys = new char[0];
+    Node[] children = new Node[0];
+    // the index of the definition whose name ends here, or -1
+    int definition = -1;
+
+    Node getChild(char c) {
+      for (int i = 0; i < keys.length; i++)
+        if (keys[i] == c)
+          return children[i];
+      return null;
+    }
+
+    Node addChild(char c) {
+      Node child = getChild(c);
+      if (child != null)
+        return child;
+      int n = keys.length;
+      char[] k = new char[n + 1];
+      Node[] ch = new Node[n + 1];
+      System.arraycopy(keys, 0, k, 0, n);
+      System.arraycopy(children, 0, ch, 0, n);
+      k[n] = c;
+      ch[n] = child = new Node();
+      keys = k;
+      children = ch;
+      return child;
+    }
+  }
+}
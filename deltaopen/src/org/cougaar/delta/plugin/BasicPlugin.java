@@ -25,6 +25,7 @@ package org.cougaar.delta.plugin;
 import org.cougaar.delta.util.BasicConstants;
 import org.cougaar.delta.util.params.ParameterFileReader;
 import org.cougaar.delta.util.Factory;
+import org.cougaar.delta.util.JdbcStatistics;
 
 import org.cougaar.glm.ldm.Constants;
 import org.cougaar.util.UnaryPredicate;
@@ -379,24 +380,28 @@ public abstract class BasicPlugin extends SimplePlugin {
 
 
   public Connection getDatabaseConnection()  {
+    long start = System.currentTimeMillis();
+    Connection c = null;
     if (isPersistenceEnabled) {
-      Connection c = getBlackboardService().getPersistence().getDatabaseConnection(this);
-      return c;
+      c = getBlackboardService().getPersistence().getDatabaseConnection(this);
     }
     else {
       try
       {
-        return DBConnectionPool.getConnection(db_connection_string, db_user, db_password);
+        c = DBConnectionPool.getConnection(db_connection_string, db_user, db_password);
       }
       catch (SQLException e)
       {
         e.printStackTrace();
-        return null;
       }
     }
+    JdbcStatistics.connectionAcquired(c, getPlugInName(),
+      System.currentTimeMillis() - start);
+    return c;
   }
 
   public void releaseConnection(Connection conn) {
+    JdbcStatistics.connectionReleased(conn);
     if (isPersistenceEnabled){
       this.getBlackboardService().getPersistence().releaseDatabaseConnection(this);
     }else {
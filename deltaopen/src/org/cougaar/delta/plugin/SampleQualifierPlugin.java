@@ -30,13 +30,25 @@ import org.cougaar.planning.ldm.plan.PrepositionalPhrase;
 import org.cougaar.glm.ldm.Constants;
 
 import org.cougaar.delta.util.qrule.QRule;
+import org.cougaar.delta.util.qrule.QRuleChangeEvent;
+import org.cougaar.delta.util.qrule.QRuleChangeListener;
 import org.cougaar.delta.util.qrule.QRuleFactory;
+import org.cougaar.delta.util.qrule.QRulePartitions;
+import org.cougaar.delta.util.qrule.EmbeddedQRuleStore;
+import org.cougaar.delta.util.qrule.QRuleSnapshot;
 import org.cougaar.delta.util.qrule.QualifiableCandidate;
 import org.cougaar.delta.util.SampleLoanCandidate;
+import org.cougaar.delta.util.CandidateIngester;
+import org.cougaar.delta.util.CandidateMapping;
+import org.cougaar.delta.fileio.FileFormatter;
+import org.cougaar.delta.fileio.FormattedFile;
+import org.cougaar.delta.fileio.RecordEnumeration;
 
 import org.cougaar.core.agent.service.alarm.Alarm;
 
+import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
 
 import org.cougaar.util.KeyedSet;
 import org.cougaar.util.UnaryPredicate;
@@ -60,11 +72,39 @@ import jess.*;
 
 public class SampleQualifierPlugin extends BasicPlugin {
   private final static String PLUGIN_NAME = "SampleQualifierPlugin";
+  private final static String GLOBAL_PROPERTIES = "GlobalProperties";
+  // a rule log, relative to the plugin's file path, to use instead of the
+  // rule database
+  private final static String RULE_STORE_FILE_P = "qrule.store.File";
+  // a file, relative to the plugin's file path, in which to keep a snapshot
+  // of the active rules for a fast start
+  private final static String RULE_SNAPSHOT_FILE_P = "qrule.snapshot.File";
+  // a formatted file of candidates to qualify, given by its file type and
+  // the start of its name in the data directory, and the mapping of its
+  // records to candidates (see CandidateMapping)
+  private final static String INGEST_FILE_TYPE_P = "ingest.FileType";
+  private final static String INGEST_FILE_P = "ingest.File";
+  private final static String INGEST_RECORD_TYPE_P = "ingest.RecordType";
+  private final static String INGEST_CLASS_P = "ingest.Class";
+  private final static String INGEST_CONSTRUCTOR_P = "ingest.Constructor";
+  private final static String INGEST_PROPERTY_P = "ingest.Property";
+  private final static String INGEST_REGION_P = "ingest.Region";
+  private final static String INGEST_BATCH_SIZE_P = "ingest.BatchSize";
+  private final static String INGEST_QUEUE_SIZE_P = "ingest.QueueSize";
+  // batches qualified in one execute, so that other work is not held up
+  private final static int INGEST_BATCHES_PER_EXECUTE = 4;
+  // how long to wait before looking for more batches, in milliseconds
+  private final static long INGEST_POLL_INTERVAL = 250;
   private Rete rete;
   private QRuleFactory ruleFactory;
-  private Vector allRules = new Vector();
+  private File snapshotFile = null;
+  // the active rules, divided by region and kept up to date by a
+  // RuleChangeTracker rather than fetched for every candidate.  Each
+  // partition builds the Jess commands for its rules on first use.
+  private QRulePartitions partitions = new QRulePartitions();
   private static boolean isJESSDebugging = false;
   private Alarm testAlarm;
+  private CandidateIngester ingester = null;
   boolean done =false;
 
   /**
@@ -81,8 +121,165 @@ public class SampleQualifierPlugin extends BasicPlugin {
     }
   }
 
-  private void getProperties() {
+  private void getProperties() throws IOException {
+    String storeFile = getProperty(GLOBAL_PROPERTIES, RULE_STORE_FILE_P, null);
+    if (storeFile != null && storeFile.length() > 0)
+      ruleFactory.setRuleStore(new EmbeddedQRuleStore(dataFile(storeFile).getPath()));
+    // a local rule store starts quickly enough without a snapshot
+    String snapFile = getProperty(GLOBAL_PROPERTIES, RULE_SNAPSHOT_FILE_P, null);
+    if (snapFile != null && snapFile.length() > 0 &&
+        ruleFactory.getRuleStore() == null)
+      snapshotFile = dataFile(snapFile);
+    String ingestType = getProperty(GLOBAL_PROPERTIES, INGEST_FILE_TYPE_P, null);
+    if (ingestType != null && ingestType.length() > 0)
+      ingester = createIngester(ingestType);
   }
+
+  // set up the reading of candidates from a formatted file
+  private CandidateIngester createIngester(String fileType) throws IOException {
+    String fileName = getProperty(GLOBAL_PROPERTIES, INGEST_FILE_P, null);
+    FormattedFile f = (fileName == null ? null :
+      FileFormatter.newInputFile(fileType, fileName));
+    RecordEnumeration records = (f == null ? null :
+      f.records(getPropertyValueArray(GLOBAL_PROPERTIES, INGEST_RECORD_TYPE_P)));
+    if (records == null)
+      throw new IOException("unable to open " + fileType + " file " + fileName);
+    try {
+      CandidateMapping mapping = new CandidateMapping(getProperty(GLOBAL_PROPERTIES,
+        INGEST_CLASS_P, SampleLoanCandidate.class.getName()));
+      // the rules are written against SampleLoanCandidate (see startJess)
+      if (!SampleLoanCandidate.class.isAssignableFrom(mapping.getCandidateClass()))
+        throw new ClassCastException(mapping.getCandidateClass().getName() +
+          " is not a SampleLoanCandidate");
+      String[] ctor = getPropertyValueArray(GLOBAL_PROPERTIES, INGEST_CONSTRUCTOR_P);
+      if (ctor != null)
+        mapping.setConstructorFields(ctor);
+      Enumeration e = getPropertyValues(GLOBAL_PROPERTIES, INGEST_PROPERTY_P);
+      while (e.hasMoreElements())
+        mapping.addProperty((String) e.nextElement());
+      e = getPropertyValues(GLOBAL_PROPERTIES, INGEST_REGION_P);
+      while (e.hasMoreElements())
+        mapping.addRegion((String) e.nextElement());
+      CandidateIngester ci = new CandidateIngester(records, mapping);
+      ci.setName(PLUGIN_NAME + " ingester");
+      ci.setBatchSize(getProperty(GLOBAL_PROPERTIES, INGEST_BATCH_SIZE_P,
+        CandidateIngester.DEFAULT_BATCH_SIZE));
+      ci.setQueueCapacity(getProperty(GLOBAL_PROPERTIES, INGEST_QUEUE_SIZE_P,
+        CandidateIngester.DEFAULT_QUEUE_CAPACITY));
+      return ci;
+    }
+    catch (Exception e) {
+      records.close();
+      throw new IOException("unable to map " + fileType + " file " + fileName +
+        " to candidates--" + e);
+    }
+  }
+
+  // resolve a file name against the plugin's file path
+  private File dataFile(String name) {
+    File f = new File(name);
+    if (!f.isAbsolute() && file_path_ != null)
+      f = new File(file_path_, name);
+    return f;
+  }
+
+  // replace the current rules
+  private void setCurrentRules(Vector rules) {
+    partitions.setRules(rules);
+  }
+
+  /**
+   *  Follows the changes made to rules through the rule factory, such as
+   *  those saved from the rule editor, and moves each changed rule into the
+   *  partition to which it now belongs, so that only the commands of the
+   *  partitions affected are rebuilt.
+   */
+  private class RuleChangeTracker implements QRuleChangeListener {
+    public void ruleChanged(QRuleChangeEvent e) {
+      QRule r = e.getRule();
+      if (e.isDeletion() || !r.isActive())
+        partitions.remove(e.getRuleId());
+      else
+        partitions.put(r);
+    }
+  }
+
+  // load the rule snapshot, if there is a usable one, and start checking it
+  // against the database
+  private boolean loadSnapshot() {
+    if (snapshotFile == null || !snapshotFile.exists())
+      return false;
+    try {
+      long start = System.currentTimeMillis();
+      QRuleSnapshot snapshot = ruleFactory.readSnapshot(snapshotFile);
+      setCurrentRules(snapshot.getRules());
+      System.out.println(PLUGIN_NAME + ":  loaded " + snapshot.getRules().size() +
+        " rules from " + snapshotFile + " in " +
+        (System.currentTimeMillis() - start) + " ms");
+      new SnapshotReconciler(snapshot).start();
+      return true;
+    }
+    catch (Exception e) {
+      System.err.println(PLUGIN_NAME + ":  unable to read rule snapshot " +
+        snapshotFile + "--" + e);
+      setCurrentRules(new Vector());
+      return false;
+    }
+  }
+
+  // save the given rules as the snapshot for the next start
+  private void saveSnapshot(Vector rules) {
+    if (snapshotFile == null)
+      return;
+    try {
+      ruleFactory.writeSnapshot(snapshotFile, rules);
+    }
+    catch (IOException e) {
+      System.err.println(PLUGIN_NAME + ":  unable to write rule snapshot " +
+        snapshotFile + "--" + e);
+    }
+  }
+
+  /**
+   *  Compares the rule versions in the snapshot with those in the database.
+   *  If they differ, the rules are reloaded from the database and a new
+   *  snapshot is written.
+   */
+  private class SnapshotReconciler extends Thread {
+    private QRuleSnapshot snapshot;
+
+    public SnapshotReconciler(QRuleSnapshot s) {
+      super(PLUGIN_NAME + " snapshot reconciler");
+      snapshot = s;
+      setDaemon(true);
+    }
+
+    public void run() {
+      Connection conn = getDatabaseConnection();
+      try {
+        if (!snapshot.isCurrent(ruleFactory.getActiveRuleVersions(conn))) {
+          Vector rules = new Vector();
+          // changes reported while the rules are read wait until they are
+          // in place, so that none is overwritten
+          synchronized (partitions) {
+            Enumeration e = ruleFactory.getAllRules(conn);
+            while (e.hasMoreElements())
+              rules.add(e.nextElement());
+            setCurrentRules(rules);
+          }
+          saveSnapshot(rules);
+        }
+      }
+      catch (Exception e) {
+        System.err.println(PLUGIN_NAME + ":  unable to check rule snapshot--" + e);
+      }
+      finally {
+        if (conn != null)
+          releaseConnection(conn);
+      }
+    }
+  }
+
   public void initializeDELTAPlugin() throws Exception {
     try
     {
@@ -91,12 +288,22 @@ public class SampleQualifierPlugin extends BasicPlugin {
 
       getProperties();
 
-      Enumeration rules = ruleFactory.getAllRules(this.getDatabaseConnection());
-      while(rules.hasMoreElements()) {
-        allRules.add(rules.nextElement());
+      ruleFactory.addRuleChangeListener(new RuleChangeTracker());
+      if (!loadSnapshot()) {
+        // the operators, operands and rules are loaded side by side.
+        // Changes reported while the rules are read wait until they are in
+        // place, so that none is overwritten.
+        Vector rules;
+        synchronized (partitions) {
+          rules = ruleFactory.getWarmUpRules();
+          setCurrentRules(rules);
+        }
+        saveSnapshot(rules);
       }
       // Start Jess
       startJess();
+      if (ingester != null)
+        ingester.start();
     }
     catch (Exception e)
     {
@@ -166,9 +373,12 @@ public class SampleQualifierPlugin extends BasicPlugin {
         System.out.println("candidate "
                      + ",  " + slc3.getQualification() + ":  " + "\n"
                      + qualString);
+        partitions.printSummary(System.out);
 
         done = true;
       }
+      if (ingester != null)
+        qualifyIngested();
     }
     catch (Exception e) {
       throw new Exception(PLUGIN_NAME + "::doExecute:ERROR "+ e.getMessage());
@@ -176,6 +386,31 @@ public class SampleQualifierPlugin extends BasicPlugin {
   }
 
 
+  /**
+   *  Qualifies and publishes a few batches of the candidates read by the
+   *  ingester, and asks to be woken again while it has more to give.
+   */
+  private void qualifyIngested() throws Exception {
+    for (int n = 0; n < INGEST_BATCHES_PER_EXECUTE; n++) {
+      Vector batch = ingester.pollBatch();
+      if (batch == null)
+        break;
+      for (int i = 0; i < batch.size(); i++) {
+        SampleLoanCandidate slc = (SampleLoanCandidate) batch.elementAt(i);
+        qualifyCandidate(slc);
+        publishAdd(slc);
+      }
+      ingester.batchDone(batch);
+    }
+    if (ingester.isFinished()) {
+      ingester.printSummary(System.out);
+      ingester = null;
+    }
+    else {
+      wakeAfter(ingester.getQueueDepth() > 0 ? 1 : INGEST_POLL_INTERVAL);
+    }
+  }
+
   /**
    *  Qualify a Candidate
    *  @param candidate the Candidate to qualify
@@ -186,17 +421,25 @@ public class SampleQualifierPlugin extends BasicPlugin {
   {
 
     Vector rule_names = new Vector();
-
-    Enumeration rules = ruleFactory.getAllRules(this.getDatabaseConnection());
-
-    while (rules.hasMoreElements()) {
-      QRule r = (QRule)rules.nextElement();
-      Vector cmds = r.toJESS();
+    // a rule confined to several regions is in each of their partitions,
+    // but must be loaded only once
+    Hashtable loaded = new Hashtable();
+
+    // load the global rules and those of the candidate's regions
+    Vector parts = partitions.getPartitions(candidate.getRegions());
+    for (int p = 0; p < parts.size(); p++) {
+      QRulePartitions.Partition part = (QRulePartitions.Partition) parts.elementAt(p);
+      long start = System.currentTimeMillis();
+      Vector cmds = part.getCommands();
       for (int i = 0; i < cmds.size(); i++) {
         String cmd = (String)cmds.elementAt(i);
-        rule_names.addElement(getRuleName(cmd));
+        String name = getRuleName(cmd);
+        if (loaded.put(name, name) != null)
+          continue;
+        rule_names.addElement(name);
         rete.executeCommand (cmd);
       }
+      part.recordCandidate(System.currentTimeMillis() - start);
     }
 
     // run rules on each proposal
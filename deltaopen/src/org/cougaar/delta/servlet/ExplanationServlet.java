@@ -30,6 +30,17 @@ import org.cougaar.delta.util.variant.VariantMap;
 public class ExplanationServlet extends BasicServlet {
   private ExplanationFactory factory = null;
 
+  // The encoded responses to LOOKUPDOMAIN, keyed by domain.  Each is
+  // encoded again only when the domain's version in the factory changes.
+  private Hashtable domainPayloads = new Hashtable();
+
+  // a serialized domain table and the entity tag that identifies it
+  private static class DomainPayload {
+    private long version;
+    private byte[] bytes;
+    private String etag;
+  }
+
   /**
    * No title.
    */
@@ -95,7 +106,13 @@ public class ExplanationServlet extends BasicServlet {
    */
   public void processGet (HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException
-  {/*
+  {
+    // domain tables may be fetched with GET, so that HTTP caches can keep them
+    if ("LOOKUPDOMAIN".equals(getParameter(request, "command"))) {
+      sendDomain(request, response, getParameter(request, "domain"));
+      return;
+    }
+    /*
     Hashtable ht = new Hashtable();
     Vector codes = getCodes(request);
     try {
@@ -123,6 +140,88 @@ public class ExplanationServlet extends BasicServlet {
     }*/
   }
 
+  /**
+   *  Domain tables may be cached by the client, but must be revalidated
+   *  with their entity tag before each use; everything else is sent with
+   *  the default headers.
+   */
+  protected void setHttpHeaders (
+      HttpServletRequest request, HttpServletResponse response)
+  {
+    if ("LOOKUPDOMAIN".equals(getParameter(request, "command")))
+      response.setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+    else
+      super.setHttpHeaders(request, response);
+  }
+
+  /**
+   *  Send the serialized table of explanations for a domain, or only a "304
+   *  Not Modified" status if the client's If-None-Match header shows that
+   *  it already has the current table.
+   */
+  private void sendDomain (HttpServletRequest request,
+      HttpServletResponse response, String domain) throws IOException
+  {
+    DomainPayload p = null;
+    try {
+      p = getDomainPayload(domain == null ? "" : domain);
+    }
+    catch (Exception oh_no) {
+      System.out.println("ExplanationServlet::sendDomain:  ERROR--" + oh_no);
+      oh_no.printStackTrace();
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+    response.setHeader("ETag", p.etag);
+    if (matchesTag(request.getHeader("If-None-Match"), p.etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    response.setContentType("application/octet-stream");
+    response.setContentLength(p.bytes.length);
+    OutputStream out = response.getOutputStream();
+    out.write(p.bytes);
+    out.flush();
+  }
+
+  // Get the encoded table for a domain, encoding it again if the table has
+  // changed since it was last encoded.  The version is read first, so a
+  // change made meanwhile only causes another encoding later.
+  private DomainPayload getDomainPayload (String domain) throws Exception {
+    long version = factory.getDomainVersion(domain);
+    DomainPayload p = (DomainPayload) domainPayloads.get(domain);
+    if (p != null && p.version == version)
+      return p;
+
+    Hashtable table = factory.lookupDomain(domain);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(new AppletToServletParcel("Success", table));
+    oos.close();
+    p = new DomainPayload();
+    p.version = version;
+    p.bytes = bytes.toByteArray();
+    p.etag = "\"" + Long.toHexString(version) + "\"";
+    domainPayloads.put(domain, p);
+    return p;
+  }
+
+  // check an If-None-Match header, which may list several tags, against
+  // the current tag
+  private static boolean matchesTag (String header, String etag) {
+    if (header == null)
+      return false;
+    StringTokenizer tok = new StringTokenizer(header, ",");
+    while (tok.hasMoreTokens()) {
+      String t = tok.nextToken().trim();
+      if (t.startsWith("W/"))
+        t = t.substring(2);
+      if (t.equals("*") || t.equals(etag))
+        return true;
+    }
+    return false;
+  }
+
   /**
    *  Override the default header.  For POST requests, we'll be sending
    *  serialized java Objects, and extraneous HTML tags would interfere.
@@ -192,28 +291,11 @@ public class ExplanationServlet extends BasicServlet {
       String label = getParameter(request, "label");
       String command = getParameter(request, "command");
 
-      ObjectInputStream ois = new ObjectInputStream(request.getInputStream());
-      try
-      {
-           AppletToServletParcel box = (AppletToServletParcel) ois.readObject();
-      } catch (ClassNotFoundException e)
-      {
-        // We can actually ignore this here since we don't need and indeed
-        // always ignore the incoming post data
-      }
+      // Everything we need is in the URL.  The posted parcel is always
+      // ignored, so it isn't read.
       //if we are asked to return a domain's hashtable,
       if(command.equals("LOOKUPDOMAIN")) {
-        Hashtable domainTable = factory.lookupDomain(domain);
-        try {
-          AppletToServletParcel box = new AppletToServletParcel("Success", domainTable);
-          ObjectOutputStream oos = new ObjectOutputStream(response.getOutputStream());
-          oos.writeObject(box);
-        }
-        catch (Exception oh_no) {
-          System.out.println("ExplanationServlet::processPost:lookup(domain)  ERROR--" + oh_no);
-          oh_no.printStackTrace();
-          response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-        }
+        sendDomain(request, response, domain);
         return;
       }
 
@@ -0,0 +1,166 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.servlet;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.*;
+import java.util.*;
+
+import org.cougaar.delta.util.JdbcStatistics;
+
+/**
+ * Shows the figures gathered by JdbcStatistics:  connection pool waits and
+ * hold times, latency histograms and row counts for each query template,
+ * and the connections held longer than the leak threshold, with the stacks
+ * of the code that took them.
+ * <br><br>
+ * Parameters:  "command=RESET" discards the figures gathered so far, and
+ * "threshold" sets the leak threshold in seconds.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class JdbcStatisticsServlet extends BasicServlet {
+  // the widest bar in a histogram, in pixels
+  private static final int BAR_WIDTH = 200;
+
+  public String getTitle() {
+    return "JDBC Statistics";
+  }
+
+  public void processGet (HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException
+  {
+    String command = getParameter(request, "command");
+    if (command != null && command.equalsIgnoreCase("RESET"))
+      JdbcStatistics.reset();
+    String threshold = getParameter(request, "threshold");
+    if (threshold != null) {
+      try {
+        JdbcStatistics.setLeakThreshold(Long.parseLong(threshold.trim()) * 1000);
+      }
+      catch (NumberFormatException nfe) {
+      }
+    }
+
+    PrintWriter o = new PrintWriter(response.getOutputStream());
+    o.println("<BODY>");
+    o.println("<H2>JDBC Statistics</H2>");
+    o.println("<P>Since " + new Date(JdbcStatistics.getResetTime()) +
+      " &nbsp; <A HREF=\"?command=RESET\">Reset</A></P>");
+
+    o.println("<H3>Connections</H3>");
+    JdbcStatistics.Timing wait = JdbcStatistics.getPoolWait();
+    JdbcStatistics.Timing hold = JdbcStatistics.getHoldTime();
+    o.println("<TABLE BORDER=1 CELLPADDING=3>");
+    o.println("<TR><TH></TH><TH>Count</TH><TH>Mean (ms)</TH><TH>95% (ms)</TH><TH>Max (ms)</TH></TR>");
+    timingRow(o, "Waiting for the pool", wait);
+    timingRow(o, "Held", hold);
+    o.println("</TABLE>");
+    o.println("<P>" + JdbcStatistics.getPoolFailures() + " requests failed; " +
+      JdbcStatistics.getCheckedOutCount() + " connections checked out now.</P>");
+    histogram(o, wait);
+
+    o.println("<H3>Connections held more than " +
+      (JdbcStatistics.getLeakThreshold() / 1000) + " seconds</H3>");
+    Vector v = JdbcStatistics.getLongCheckouts();
+    if (v.size() == 0)
+      o.println("<P>None.</P>");
+    for (int i = 0; i < v.size(); i++) {
+      JdbcStatistics.Checkout co = (JdbcStatistics.Checkout) v.elementAt(i);
+      o.println("<P>" + escape(co.getOwner()) + ", thread " +
+        escape(co.getThreadName()) + ", held " + (co.getHeldTime() / 1000) +
+        " seconds</P>");
+      o.println("<PRE>" + escape(co.getStackTrace()) + "</PRE>");
+    }
+
+    o.println("<H3>Queries</H3>");
+    v = JdbcStatistics.getQueryStats();
+    o.println("<TABLE BORDER=1 CELLPADDING=3>");
+    o.println("<TR><TH>Query</TH><TH>Count</TH><TH>Total (ms)</TH><TH>Mean (ms)</TH>" +
+      "<TH>95% (ms)</TH><TH>Max (ms)</TH><TH>Rows</TH><TH>Failures</TH><TH>Retries</TH></TR>");
+    for (int i = 0; i < v.size(); i++) {
+      JdbcStatistics.QueryStats qs = (JdbcStatistics.QueryStats) v.elementAt(i);
+      o.println("<TR><TD><A HREF=\"#q" + i + "\">" + escape(qs.getName()) + "</A></TD>" +
+        "<TD>" + qs.getCount() + "</TD><TD>" + qs.getTotalTime() + "</TD>" +
+        "<TD>" + qs.getMeanTime() + "</TD><TD>" + qs.getPercentile(95) + "</TD>" +
+        "<TD>" + qs.getMaxTime() + "</TD><TD>" + qs.getRows() + "</TD>" +
+        "<TD>" + qs.getFailures() + "</TD><TD>" + qs.getRetries() + "</TD></TR>");
+    }
+    o.println("</TABLE>");
+    for (int i = 0; i < v.size(); i++) {
+      JdbcStatistics.QueryStats qs = (JdbcStatistics.QueryStats) v.elementAt(i);
+      o.println("<A NAME=\"q" + i + "\"></A><P><CODE>" + escape(qs.getName()) + "</CODE></P>");
+      if (qs.getLastError() != null)
+        o.println("<P>Last error:  " + escape(qs.getLastError()) + "</P>");
+      histogram(o, qs);
+    }
+    o.flush();
+  }
+
+  private void timingRow (PrintWriter o, String label, JdbcStatistics.Timing t) {
+    o.println("<TR><TD>" + label + "</TD><TD>" + t.getCount() + "</TD>" +
+      "<TD>" + t.getMeanTime() + "</TD><TD>" + t.getPercentile(95) + "</TD>" +
+      "<TD>" + t.getMaxTime() + "</TD></TR>");
+  }
+
+  // a latency histogram as a table of horizontal bars
+  private void histogram (PrintWriter o, JdbcStatistics.Timing t) {
+    long[] buckets = t.getBuckets();
+    long max = 0;
+    for (int i = 0; i < buckets.length; i++)
+      max = Math.max(max, buckets[i]);
+    if (max == 0)
+      return;
+    o.println("<TABLE CELLSPACING=0 CELLPADDING=1>");
+    for (int i = 0; i < buckets.length; i++) {
+      String label = (i < JdbcStatistics.BUCKET_LIMITS.length ?
+        "&lt;= " + JdbcStatistics.BUCKET_LIMITS[i] + " ms" :
+        "&gt; " + JdbcStatistics.BUCKET_LIMITS[i - 1] + " ms");
+      int width = (int) (buckets[i] * BAR_WIDTH / max);
+      o.print("<TR><TD ALIGN=RIGHT>" + label + "</TD><TD>");
+      if (width > 0)
+        o.print("<TABLE CELLSPACING=0 CELLPADDING=0><TR><TD BGCOLOR=\"#336699\" WIDTH=" +
+          width + " HEIGHT=10></TD></TR></TABLE>");
+      o.println("</TD><TD>" + buckets[i] + "</TD></TR>");
+    }
+    o.println("</TABLE>");
+  }
+
+  private static String escape (String s) {
+    if (s == null)
+      return "";
+    StringBuffer buf = new StringBuffer(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '<')
+        buf.append("&lt;");
+      else if (c == '>')
+        buf.append("&gt;");
+      else if (c == '&')
+        buf.append("&amp;");
+      else
+        buf.append(c);
+    }
+    return buf.toString();
+  }
+}
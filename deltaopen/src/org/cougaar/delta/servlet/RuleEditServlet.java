@@ -268,6 +268,8 @@ public class RuleEditServlet extends BasicServlet {
   public void processInit (ServletConfig sc) throws ServletException {
     try {
       factory = QRuleFactory.getInstance();
+      // have the operators, operands and rules loading while we set up
+      factory.warmUp();
       explFactory = ExplanationFactory.getInstance();
       String domain = "rule";
 
@@ -23,6 +23,7 @@
 package org.cougaar.delta.util;
 
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
 import java.io.PrintWriter;
 import java.sql.SQLException;
@@ -48,6 +49,11 @@ import org.cougaar.delta.util.Factory;
  * Servlets may store their current BatchSearchResult into their
  * session; whenever a new servlet becomes active it will close
  * any BatchSearchResult already in the session.
+ * <p>
+ * If the factory supplies a unique key column, the BatchSearchResult
+ * is instead in keyset mode: it holds no connection, only the query and
+ * the sort and key values of the last row instantiated, and each new
+ * page is fetched by a short query that seeks past those values.
  */
 
 public class BatchSearchResult {
@@ -61,6 +67,16 @@ public class BatchSearchResult {
   private String defaultSortKey = "";
   private boolean isClosed = false;
 
+  // keyset pagination state, used when keysetRequest is not null
+  private Map keysetRequest = null;
+  private String keysetSortColumn = null;
+  private int keysetSortDirection = 1;
+  private String keysetKeyColumn = null;
+  private boolean hasKeysetPosition = false;
+  private Object lastSortValue = null;
+  private Object lastKeyValue = null;
+  private boolean keysetExhausted = false;
+
   protected BatchSearchResult(String servletTitle) {
     this.servletTitle = servletTitle;
   }
@@ -75,6 +91,7 @@ public class BatchSearchResult {
         if(stmt != null) {
           stmt.close();
         }
+        JdbcStatistics.connectionReleased(conn);
         conn.close();
       }
     }
@@ -86,10 +103,20 @@ public class BatchSearchResult {
 
   /**
    * returns true if this connection of this is
-   * already closed
+   * already closed.  A keyset BatchSearchResult holds no
+   * connection and can always fetch more rows, so it is
+   * never reported as closed.
    */
   public boolean isClosed() {
-    return isClosed;
+    return isClosed && !isKeyset();
+  }
+
+  /**
+   * returns true if this is paged with keyset queries
+   * rather than an open cursor
+   */
+  public boolean isKeyset() {
+    return keysetRequest != null;
   }
 
   /**
@@ -205,4 +232,94 @@ public class BatchSearchResult {
     return defaultSortKey;
   }
 
+  /**
+   * put this into keyset mode
+   * called by factory
+   * @param request the query parameters
+   * @param sortColumn the column to sort on, or null for none
+   * @param sortDirection 1 for ascending, -1 for descending
+   * @param keyColumn the column that uniquely identifies each row
+   */
+  protected void setKeyset(Map request, String sortColumn, int sortDirection,
+        String keyColumn) {
+    keysetRequest = request;
+    keysetSortColumn = sortColumn;
+    keysetSortDirection = sortDirection;
+    keysetKeyColumn = keyColumn;
+    hasKeysetPosition = false;
+    keysetExhausted = false;
+  }
+  /**
+   * get the query parameters of a keyset search
+   * called by factory
+   */
+  protected Map getKeysetRequest() {
+    return keysetRequest;
+  }
+  /**
+   * get the sort column of a keyset search
+   * called by factory
+   */
+  protected String getKeysetSortColumn() {
+    return keysetSortColumn;
+  }
+  /**
+   * get the sort direction of a keyset search
+   * called by factory
+   */
+  protected int getKeysetSortDirection() {
+    return keysetSortDirection;
+  }
+  /**
+   * get the unique key column of a keyset search
+   * called by factory
+   */
+  protected String getKeysetKeyColumn() {
+    return keysetKeyColumn;
+  }
+  /**
+   * record the sort and key values of the last row instantiated
+   * called by factory
+   */
+  protected void setKeysetPosition(Object sortValue, Object keyValue) {
+    lastSortValue = sortValue;
+    lastKeyValue = keyValue;
+    hasKeysetPosition = true;
+  }
+  /**
+   * returns true if any rows have been fetched by a keyset search
+   * called by factory
+   */
+  protected boolean hasKeysetPosition() {
+    return hasKeysetPosition;
+  }
+  /**
+   * get the sort value of the last row instantiated
+   * called by factory
+   */
+  protected Object getLastSortValue() {
+    return lastSortValue;
+  }
+  /**
+   * get the key value of the last row instantiated
+   * called by factory
+   */
+  protected Object getLastKeyValue() {
+    return lastKeyValue;
+  }
+  /**
+   * set whether a keyset search has run out of rows
+   * called by factory
+   */
+  protected void setKeysetExhausted(boolean exhausted) {
+    keysetExhausted = exhausted;
+  }
+  /**
+   * returns true if a keyset search has run out of rows
+   * called by factory
+   */
+  protected boolean isKeysetExhausted() {
+    return keysetExhausted;
+  }
+
 }
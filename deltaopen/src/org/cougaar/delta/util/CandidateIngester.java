@@ -0,0 +1,304 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util;
+
+import java.io.PrintStream;
+import java.util.Vector;
+
+import org.cougaar.delta.fileio.FormattedRecord;
+import org.cougaar.delta.fileio.RecordEnumeration;
+import org.cougaar.delta.util.qrule.QualifiableCandidate;
+
+/**
+ * Reads records from a formatted file on a thread of its own, makes them
+ * into candidates through a CandidateMapping, and hands the candidates to a
+ * qualifier in batches.  The batches wait in a queue of bounded size:  when
+ * it is full the reader waits, so that a fast file cannot fill the heap
+ * ahead of a slower rule engine.
+ * <br><br>
+ * The qualifier takes batches with takeBatch() or pollBatch() and reports
+ * each one finished with batchDone(), from which the end-to-end rate is
+ * figured.  For example:
+ * <PRE>
+ *    CandidateIngester ingester = new CandidateIngester(f.records("L0"), mapping);
+ *    ingester.start();
+ *    Vector batch;
+ *    while ((batch = ingester.takeBatch(0)) != null) {
+ *       for (int i = 0; i < batch.size(); i++)
+ *          qualify((QualifiableCandidate) batch.elementAt(i));
+ *       ingester.batchDone(batch);
+ *    }
+ *    ingester.printSummary(System.out);
+ * </PRE>
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class CandidateIngester implements Runnable {
+  public static final int DEFAULT_BATCH_SIZE = 50;
+  public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+  private RecordEnumeration records;
+  private CandidateMapping mapping;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+  private String name = "CandidateIngester";
+
+  // batches of candidates waiting for the qualifier
+  private Vector queue = new Vector();
+  private boolean started = false;
+  private boolean readerDone = false;
+  private boolean stopped = false;
+
+  private long startTime = 0;
+  private long finishTime = 0;
+  private long recordsRead = 0;
+  private long candidatesQueued = 0;
+  private long candidatesDone = 0;
+  private int maxQueueDepth = 0;
+  private long depthSamples = 0;
+  private long depthTotal = 0;
+  // time the reader spent waiting for room in the queue, and the qualifier
+  // waiting for batches
+  private long readerWaitTime = 0;
+  private long qualifierWaitTime = 0;
+
+  /**
+   * Prepares to read candidates.
+   * @param records the records to read; the ingester closes them
+   * @param mapping makes the records into candidates
+   */
+  public CandidateIngester(RecordEnumeration records, CandidateMapping mapping) {
+    this.records = records;
+    this.mapping = mapping;
+  }
+
+  public void setName(String name) { this.name = name; }
+  public String getName() { return name; }
+
+  /**
+   * Sets the number of candidates in a batch.  A smaller last batch carries
+   * the rest.
+   */
+  public void setBatchSize(int n) { batchSize = Math.max(1, n); }
+  public int getBatchSize() { return batchSize; }
+
+  /**
+   * Sets the number of batches that may wait in the queue before the
+   * reader stops to let the qualifier catch up.
+   */
+  public void setQueueCapacity(int n) { queueCapacity = Math.max(1, n); }
+  public int getQueueCapacity() { return queueCapacity; }
+
+  /**
+   * Starts the reader thread.
+   */
+  public synchronized void start() {
+    if (started)
+      return;
+    started = true;
+    startTime = System.currentTimeMillis();
+    Thread t = new Thread(this, name);
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Stops reading.  Batches already queued are discarded.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    queue.removeAllElements();
+    notifyAll();
+  }
+
+  public void run() {
+    try {
+      Vector batch = new Vector(batchSize);
+      while (!isStopped() && records.hasMoreElements()) {
+        FormattedRecord r = records.nextRecord();
+        QualifiableCandidate c = mapping.map(r);
+        synchronized (this) {
+          recordsRead++;
+        }
+        if (c == null)
+          continue;
+        batch.addElement(c);
+        if (batch.size() >= batchSize) {
+          put(batch);
+          batch = new Vector(batchSize);
+        }
+      }
+      if (batch.size() > 0)
+        put(batch);
+    }
+    catch (InterruptedException ie) {
+    }
+    catch (Exception e) {
+      System.err.println("CandidateIngester::run:ERROR: " + e.getMessage());
+      e.printStackTrace();
+    }
+    finally {
+      records.close();
+      synchronized (this) {
+        readerDone = true;
+        finishIfDone();
+        notifyAll();
+      }
+    }
+  }
+
+  private synchronized boolean isStopped() { return stopped; }
+
+  // wait for room in the queue, then add a batch
+  private synchronized void put(Vector batch) throws InterruptedException {
+    long t = System.currentTimeMillis();
+    while (queue.size() >= queueCapacity && !stopped)
+      wait();
+    readerWaitTime += System.currentTimeMillis() - t;
+    if (stopped)
+      return;
+    queue.addElement(batch);
+    candidatesQueued += batch.size();
+    sampleDepth();
+    notifyAll();
+  }
+
+  /**
+   * Takes the next batch, waiting for one if the queue is empty.
+   * @param timeout the longest to wait, in milliseconds, or 0 to wait until
+   * a batch comes or the reader finishes
+   * @return the batch, or null if the time ran out or there are no more
+   */
+  public synchronized Vector takeBatch(long timeout) throws InterruptedException {
+    long t = System.currentTimeMillis();
+    long deadline = t + timeout;
+    while (queue.isEmpty() && !readerDone && !stopped) {
+      long left = (timeout == 0 ? 0 : deadline - System.currentTimeMillis());
+      if (timeout != 0 && left <= 0)
+        break;
+      wait(left);
+    }
+    qualifierWaitTime += System.currentTimeMillis() - t;
+    return removeBatch();
+  }
+
+  /**
+   * Takes the next batch if one is ready, without waiting.
+   * @return the batch, or null if the queue is empty
+   */
+  public synchronized Vector pollBatch() {
+    return removeBatch();
+  }
+
+  private Vector removeBatch() {
+    if (queue.isEmpty())
+      return null;
+    Vector batch = (Vector) queue.elementAt(0);
+    queue.removeElementAt(0);
+    sampleDepth();
+    notifyAll();
+    return batch;
+  }
+
+  /**
+   * Reports that the candidates of a batch have been qualified.
+   */
+  public synchronized void batchDone(Vector batch) {
+    candidatesDone += batch.size();
+    finishIfDone();
+  }
+
+  private void finishIfDone() {
+    if (finishTime == 0 && readerDone && queue.isEmpty() &&
+        candidatesDone >= candidatesQueued)
+      finishTime = System.currentTimeMillis();
+  }
+
+  private void sampleDepth() {
+    maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    depthSamples++;
+    depthTotal += queue.size();
+  }
+
+  /**
+   * Tells whether every record has been read and every batch taken.
+   */
+  public synchronized boolean isFinished() {
+    return (readerDone || stopped) && queue.isEmpty();
+  }
+
+  public synchronized long getRecordsRead() { return recordsRead; }
+
+  public long getRejectedCount() { return mapping.getRejectedCount(); }
+
+  public synchronized long getCandidatesQueued() { return candidatesQueued; }
+
+  public synchronized long getCandidatesDone() { return candidatesDone; }
+
+  /** The number of batches in the queue now */
+  public synchronized int getQueueDepth() { return queue.size(); }
+
+  public synchronized int getMaxQueueDepth() { return maxQueueDepth; }
+
+  /** The mean number of batches in the queue, sampled at each change */
+  public synchronized double getMeanQueueDepth() {
+    return (depthSamples == 0 ? 0.0 : (double) depthTotal / depthSamples);
+  }
+
+  /** Milliseconds the reader has waited for room in the queue */
+  public synchronized long getReaderWaitTime() { return readerWaitTime; }
+
+  /** Milliseconds the qualifier has waited in takeBatch() */
+  public synchronized long getQualifierWaitTime() { return qualifierWaitTime; }
+
+  /**
+   * Returns the milliseconds from start() until the last batch was done,
+   * or until now if it is not.
+   */
+  public synchronized long getElapsedTime() {
+    if (startTime == 0)
+      return 0;
+    return (finishTime != 0 ? finishTime : System.currentTimeMillis()) - startTime;
+  }
+
+  /**
+   * Returns the end-to-end rate:  records read per second, counting only
+   * those whose candidates have been qualified (and those rejected).
+   */
+  public synchronized double getRecordsPerSecond() {
+    long ms = getElapsedTime();
+    if (ms == 0)
+      return 0.0;
+    return (candidatesDone + mapping.getRejectedCount()) * 1000.0 / ms;
+  }
+
+  public void printSummary(PrintStream out) {
+    out.println(name + ":  " + getRecordsRead() + " records read, " +
+      getRejectedCount() + " rejected, " + getCandidatesDone() + " of " +
+      getCandidatesQueued() + " candidates qualified in " +
+      getElapsedTime() + " ms (" + (long) getRecordsPerSecond() + " records/sec)");
+    out.println(name + ":  queue depth " + getQueueDepth() + " of " +
+      queueCapacity + " batches, max " + getMaxQueueDepth() + ", mean " +
+      ((long) (getMeanQueueDepth() * 100) / 100.0) + "; reader waited " +
+      getReaderWaitTime() + " ms, qualifier waited " + getQualifierWaitTime() + " ms");
+  }
+}
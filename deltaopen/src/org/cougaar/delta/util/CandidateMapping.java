@@ -0,0 +1,233 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.cougaar.delta.fileio.FormattedRecord;
+import org.cougaar.delta.util.qrule.QualifiableCandidate;
+
+/**
+ * Makes QualifiableCandidates from the records of a formatted file.  The
+ * mapping names the candidate class, the fields passed to its constructor,
+ * the fields given to its bean properties and the fields holding the regions
+ * in which a candidate lies.  It is normally read from the plugin properties
+ * (see SampleQualifierPlugin), for example:
+ * <PRE>
+ *    ingest.Class = org.cougaar.delta.util.SampleLoanCandidate
+ *    ingest.Constructor = name, amount, years
+ *    ingest.Property = totalAssets:assets, totalDebt:debt
+ *    ingest.Property = recentDefault:default_flag
+ *    ingest.Region = State:state
+ * </PRE>
+ * A property is given as "property:field", or just "property" when the field
+ * has the same name.  A region is given as "Geography:field", and the
+ * candidate is placed in the region "Geography:value".
+ * <br><br>
+ * Field values are converted to the types of the constructor's and setters'
+ * parameters:  String, int, long, float, double and boolean, or their
+ * wrappers.  Booleans are read from numbers (non-zero is true) or from the
+ * text Y, T, TRUE or 1.  A record whose values cannot be converted is
+ * rejected and counted.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class CandidateMapping {
+  private Class candidateClass;
+  private Constructor constructor = null;
+  private String[] constructorFields = new String[0];
+  private Vector setters = new Vector();
+  private Vector propertyFields = new Vector();
+  private Vector regionGeographies = new Vector();
+  private Vector regionFields = new Vector();
+  private long mappedCount = 0;
+  private long rejectedCount = 0;
+
+  /**
+   * Creates a mapping for the given candidate class.
+   * @param className the class of the candidates, a QualifiableCandidate
+   */
+  public CandidateMapping(String className) throws ClassNotFoundException {
+    candidateClass = Class.forName(className);
+    if (!QualifiableCandidate.class.isAssignableFrom(candidateClass))
+      throw new ClassCastException(className + " is not a QualifiableCandidate");
+  }
+
+  public Class getCandidateClass() { return candidateClass; }
+
+  /**
+   * Names the fields whose values are passed to the constructor.  The
+   * first public constructor taking that many parameters of supported types
+   * is used.
+   * @throws NoSuchMethodException if there is no such constructor
+   */
+  public void setConstructorFields(String[] fields) throws NoSuchMethodException {
+    Constructor[] c = candidateClass.getConstructors();
+    for (int i = 0; i < c.length; i++) {
+      if (isSupported(c[i].getParameterTypes(), fields.length)) {
+        constructor = c[i];
+        constructorFields = fields;
+        return;
+      }
+    }
+    throw new NoSuchMethodException(candidateClass.getName() +
+      " has no public constructor taking " + fields.length + " values");
+  }
+
+  /**
+   * Maps a field to a bean property.
+   * @param spec "property:field", or "property" for a field of the same name
+   * @throws NoSuchMethodException if the class has no setter for the property
+   */
+  public void addProperty(String spec) throws NoSuchMethodException {
+    int colon = spec.indexOf(':');
+    String property = (colon < 0 ? spec : spec.substring(0, colon)).trim();
+    String field = (colon < 0 ? property : spec.substring(colon + 1).trim());
+    String name = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    Method[] m = candidateClass.getMethods();
+    for (int i = 0; i < m.length; i++) {
+      if (m[i].getName().equals(name) && isSupported(m[i].getParameterTypes(), 1)) {
+        setters.addElement(m[i]);
+        propertyFields.addElement(field);
+        return;
+      }
+    }
+    throw new NoSuchMethodException(candidateClass.getName() + "." + name);
+  }
+
+  /**
+   * Maps a field to the region in which a candidate lies.
+   * @param spec "Geography:field"
+   */
+  public void addRegion(String spec) {
+    int colon = spec.indexOf(':');
+    if (colon < 0)
+      throw new IllegalArgumentException("region \"" + spec + "\" is not Geography:field");
+    regionGeographies.addElement(spec.substring(0, colon).trim());
+    regionFields.addElement(spec.substring(colon + 1).trim());
+  }
+
+  /**
+   * Makes a candidate from a record.
+   * @return the candidate, or null if the record was rejected
+   */
+  public QualifiableCandidate map(FormattedRecord r) {
+    try {
+      QualifiableCandidate c;
+      if (constructor == null) {
+        c = (QualifiableCandidate) candidateClass.newInstance();
+      }
+      else {
+        Class[] types = constructor.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < args.length; i++)
+          args[i] = convert(r, constructorFields[i], types[i]);
+        c = (QualifiableCandidate) constructor.newInstance(args);
+      }
+      Object[] arg = new Object[1];
+      for (int i = 0; i < setters.size(); i++) {
+        Method m = (Method) setters.elementAt(i);
+        arg[0] = convert(r, (String) propertyFields.elementAt(i), m.getParameterTypes()[0]);
+        m.invoke(c, arg);
+      }
+      for (int i = 0; i < regionFields.size(); i++) {
+        Object region = r.readField((String) regionFields.elementAt(i));
+        if (region != null && region.toString().trim().length() > 0)
+          c.addRegion(regionGeographies.elementAt(i) + ":" + region.toString().trim());
+      }
+      synchronized (this) {
+        mappedCount++;
+      }
+      return c;
+    }
+    catch (Exception e) {
+      Throwable t = e;
+      if (e instanceof InvocationTargetException)
+        t = ((InvocationTargetException) e).getTargetException();
+      System.err.println("CandidateMapping::map:ERROR: " + t + " for record: " + r);
+      synchronized (this) {
+        rejectedCount++;
+      }
+      return null;
+    }
+  }
+
+  /** The number of candidates made so far */
+  public synchronized long getMappedCount() { return mappedCount; }
+
+  /** The number of records rejected so far */
+  public synchronized long getRejectedCount() { return rejectedCount; }
+
+  // read a field and convert it to the type of a parameter
+  private static Object convert(FormattedRecord r, String field, Class type) {
+    Object value = r.readField(field);
+    if (value == null) {
+      if (type.isPrimitive())
+        throw new IllegalArgumentException("field " + field + " is missing or malformed");
+      return null;
+    }
+    if (value instanceof String)
+      value = ((String) value).trim();
+    if (type == String.class)
+      return value.toString();
+    if (type == Boolean.TYPE || type == Boolean.class) {
+      if (value instanceof Number)
+        return new Boolean(((Number) value).doubleValue() != 0);
+      String s = ((String) value).toUpperCase();
+      return new Boolean(s.equals("Y") || s.equals("T") || s.equals("TRUE") || s.equals("1"));
+    }
+    Number n;
+    if (value instanceof Number)
+      n = (Number) value;
+    else if (((String) value).length() == 0 && !type.isPrimitive())
+      return null;
+    else
+      n = new Double((String) value);
+    if (type == Integer.TYPE || type == Integer.class)
+      return new Integer(n.intValue());
+    if (type == Long.TYPE || type == Long.class)
+      return new Long(n.longValue());
+    if (type == Float.TYPE || type == Float.class)
+      return new Float(n.floatValue());
+    return new Double(n.doubleValue());
+  }
+
+  private static final Class[] SUPPORTED = {
+    String.class, Integer.TYPE, Integer.class, Long.TYPE, Long.class,
+    Float.TYPE, Float.class, Double.TYPE, Double.class, Boolean.TYPE,
+    Boolean.class
+  };
+
+  private static boolean isSupported(Class[] types, int count) {
+    if (types.length != count)
+      return false;
+    for (int i = 0; i < types.length; i++) {
+      boolean ok = false;
+      for (int j = 0; j < SUPPORTED.length && !ok; j++)
+        ok = (types[i] == SUPPORTED[j]);
+      if (!ok)
+        return false;
+    }
+    return true;
+  }
+}
@@ -37,6 +37,13 @@ public class ExplanationFactory extends Factory {
 
   private Hashtable explanationTable = new Hashtable();
 
+  // The version of each domain's table (Long), keyed by domain.  Versions
+  // count up from the time the factory was made, so they are not reused
+  // after a restart; a domain not listed has the starting version.
+  private Hashtable domainVersions = new Hashtable();
+  private long startVersion = System.currentTimeMillis();
+  private long lastVersion = startVersion;
+
   private void doInit() {
     /*
     try {
@@ -161,15 +168,64 @@ public class ExplanationFactory extends Factory {
     return new UniversalTable(result);
   }
 
-  public Hashtable lookupDomain(String domain) {
+  /**
+   * Get a copy of the explanations for a domain, keyed by label.  Changes
+   * must be made through putExplanation or removeExplanation, so that the
+   * domain's version follows them.
+   * @param domain the UI domain
+   * @return the domain's explanations
+   */
+  public synchronized Hashtable lookupDomain(String domain) {
     if (explanationTable.containsKey(domain) ) {
       Hashtable domainTable = (Hashtable) explanationTable.get(domain);
-      return domainTable;
+      return (Hashtable) domainTable.clone();
     }
     else return (new Hashtable());
   }
 
-  public String lookupExplanation(String domain, String label) {
+  /**
+   * Get the version of a domain's explanations, which changes whenever one
+   * of them does.  Read it before the explanations themselves, so that a
+   * change made in between is taken for a newer version.
+   * @param domain the UI domain
+   * @return the domain's version
+   */
+  public synchronized long getDomainVersion(String domain) {
+    Long v = (Long) domainVersions.get(domain);
+    return (v == null ? startVersion : v.longValue());
+  }
+
+  /**
+   * Add or replace an explanation.
+   * @param domain the UI domain
+   * @param label the label explained
+   * @param explanation the help text
+   */
+  public synchronized void putExplanation(String domain, String label,
+      String explanation) {
+    Hashtable domainTable = (Hashtable) explanationTable.get(domain);
+    if (domainTable == null)
+      explanationTable.put(domain, domainTable = new Hashtable());
+    domainTable.put(label, explanation);
+    domainChanged(domain);
+  }
+
+  /**
+   * Remove an explanation, if there is one.
+   * @param domain the UI domain
+   * @param label the label explained
+   */
+  public synchronized void removeExplanation(String domain, String label) {
+    Hashtable domainTable = (Hashtable) explanationTable.get(domain);
+    if (domainTable != null && domainTable.remove(label) != null)
+      domainChanged(domain);
+  }
+
+  private void domainChanged(String domain) {
+    domainVersions.put(domain, new Long(++lastVersion));
+  }
+
+  public synchronized String lookupExplanation(String domain, String label) {
 
     if (explanationTable.containsKey(domain) ) {
       Hashtable domainTable = (Hashtable) explanationTable.get(domain);
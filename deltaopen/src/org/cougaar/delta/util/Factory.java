@@ -57,6 +57,23 @@ public abstract class Factory {
   //this is the default fetch size for batch queries
   //20 matches the number of rows displayed on a servlet summary page
   protected static final int DEFAULT_FETCH_SIZE =20;
+  //this is the default fetch size for streaming queries, which are read
+  //straight through and so benefit from larger round trips
+  protected static final int DEFAULT_STREAMING_FETCH_SIZE = 100;
+
+  /**
+   * Callback used by doStreamingQuery.  handleRow is invoked once for each
+   * row of the result, with the cursor positioned on that row.  The ResultSet
+   * is only valid for the duration of the call and must not be retained.
+   */
+  public interface RowHandler {
+    /**
+     * Process the current row.
+     * @param rs the result set, positioned on the current row
+     * @return true to continue with the next row, false to stop early
+     */
+    public boolean handleRow(ResultSet rs) throws Exception;
+  }
 
   /**
    * Set up to do testing.  Initialize and connect DB connection pool.
@@ -226,8 +243,13 @@ public abstract class Factory {
       int newEnd = startDisplayRow+numRowsDisplayed;
       if(bsr.getUniversalTable().isTotalNumberOfRowsKnown())
         newEnd = Math.min(ut.getTotalNumRows(), newEnd);
-      Vector newReqs = instantiate(bsr.getResultSet(), newStart+1,
-        newEnd + 1);
+      Vector newReqs;
+      if(bsr.isKeyset())
+        //a seek can only continue from the last row already instantiated
+        newReqs = fetchKeysetRows(bsr, newEnd - numInstantiatedRows);
+      else
+        newReqs = instantiate(bsr.getResultSet(), newStart+1,
+          newEnd + 1);
       int numNewReqs = newReqs.size();
       DataWrapper[] additionalReqs = new DataWrapper[numNewReqs];
       for(int i = 0; i<numNewReqs; i++) {
@@ -316,7 +338,9 @@ public abstract class Factory {
 // subclasses can override this, but most factories which use BatchSearchResults
 //will not need to
   protected UniversalTable processQuery (Map request) {
-    BatchSearchResult bsr = processBatchQuery(request, "factory");
+    //the whole table is built here, so the count cannot be deferred
+    BatchSearchResult bsr = processBatchQuery(request, "factory", null, null,
+        0, null, false);
     try {
       completeAndClose(bsr);
     }
@@ -332,7 +356,11 @@ public abstract class Factory {
       //starts at 1, end not inclusive
       int start = ut.getRows().length + 1;
       int end = ut.getTotalNumRows() + 1;
-      Vector v = instantiate(bsr.getResultSet(), start, end);
+      Vector v;
+      if(bsr.isKeyset())
+        v = fetchKeysetRows(bsr, end - start);
+      else
+        v = instantiate(bsr.getResultSet(), start, end);
       int numNewRows = v.size();
       DataWrapper[] newRows = new DataWrapper[numNewRows];
       for(int i = 0; i<numNewRows; i++) {
@@ -376,12 +404,15 @@ public abstract class Factory {
   protected Connection getConnection () {
     Connection conn = null;
 
+    long start = System.currentTimeMillis();
     try {
       conn = DBConnectionPool.getConnection(dbURL, dbUser, dbPasswd);
     }
     catch (SQLException sqle) {
       sqle.printStackTrace();
     }
+    JdbcStatistics.connectionAcquired(conn, getClass().getName(),
+      System.currentTimeMillis() - start);
 
     return conn;
   }
@@ -394,6 +425,7 @@ public abstract class Factory {
    */
   protected void close_connection (Connection c) {
     // Release the connection back to the connection pool
+    JdbcStatistics.connectionReleased(c);
     try {
       c.close();
     }
@@ -412,6 +444,19 @@ public abstract class Factory {
   protected String getSortByColumn(String sortKey) {
     return "";
   }
+
+  /**
+   * Returns the column of the query built by makeQuery that uniquely
+   * identifies each row, such as "qr.rule_id".  If this is not null,
+   * BatchSearchResults are paged with bounded keyset ("seek") queries that
+   * release their connection immediately, using this column to break ties
+   * in the sort column.  Otherwise a scrollable cursor is kept open in the
+   * BatchSearchResult until it is closed.
+   * This is a stub and returns null.
+   */
+  protected String getUniqueKeyColumn() {
+    return null;
+  }
   /**
    * returns a String which can be used to query the DB for the
    * number of records matching the request
@@ -434,6 +479,18 @@ public abstract class Factory {
     return "";
   }
 
+  /**
+   * Returns every object matching the request, ordered by sortColumn (as
+   * returned by getSortByColumn, or null for the default order) in the
+   * given direction, if the factory can answer the request from memory.
+   * Otherwise returns null, and the search is run against the DB.
+   * This is a stub and returns null.
+   */
+  protected Vector findInMemory(Map request, String sortColumn,
+        int sortDirection) {
+    return null;
+  }
+
   /**
    * Returns a BatchSearchResult corresponding with
    * the request with its UniversalTable rows sorted by sortKey.
@@ -446,14 +503,15 @@ public abstract class Factory {
     String oldSortColumn = oldBatchSearchResult.getUniversalTable().getSortOnColumn();
     int oldSortDirection = oldBatchSearchResult.getUniversalTable().getSortDirection();
     String defaultSortKey = oldBatchSearchResult.getDefaultSortKey();
-    return processBatchQuery(q, title, sortKey, oldSortColumn, oldSortDirection, defaultSortKey);
+    return processBatchQuery(q, title, sortKey, oldSortColumn, oldSortDirection,
+        defaultSortKey, true);
   }
 
   /**
    * return a BatchSearchResult matching the request and title
    */
   protected final BatchSearchResult processBatchQuery (Map request, String title) {
-    return processBatchQuery(request, title, null, null, 0, null);
+    return processBatchQuery(request, title, null, null, 0, null, true);
   }
 
   /**
@@ -466,13 +524,28 @@ public abstract class Factory {
     return true;
   }
 
+  /**
+   * Returns false.
+   * The count query of a batch search runs on its own thread while the
+   * first page is fetched.  Normally the search then waits for the count.
+   * Subclasses whose counts are slow can override this method to return
+   * true, in which case the first page is returned as soon as it is ready
+   * and the total is filled into the UniversalTable when the count finishes.
+   */
+  protected boolean shouldDeferCount(Map request) {
+    return false;
+  }
+
   /**
    * return a BatchSearchResult matching the request, title, and sortKey given
    * that the old BatchSearchResult has oldSortColumn and oldSortDirection. If
-   * sortKey is null, use default sort order.
+   * sortKey is null, use default sort order.  The count query runs
+   * concurrently with the fetch of the first page; if mayDefer is true and
+   * shouldDeferCount allows it, the count is filled in when it finishes.
    */
   private BatchSearchResult processBatchQuery(Map request, String title, String sortKey,
-    String oldSortColumn, int oldSortDirection, String defaultSortKey) {
+    String oldSortColumn, int oldSortDirection, String defaultSortKey,
+    boolean mayDefer) {
 
     BatchSearchResult bsr = new BatchSearchResult(title);
 
@@ -480,41 +553,93 @@ public abstract class Factory {
     Vector v = new Vector();
     int completeNumRows = 0;
     boolean shouldCount = shouldCalculateCount(request);
+    boolean deferCount = false;
+    CountQuery counter = null;
     try {
-      if(shouldCount) {
-        String countStr = makeCountQuery(request);
-  //      System.out.println("count str " + countStr);
-        completeNumRows = doCountQuery(countStr);
-  //      System.out.println("count " + completeNumRows);
-        String maxRows = (String) request.get("maxRows");
-        if (maxRows != null && !maxRows.equals("")) {
-          int setMaxRows = Integer.parseInt(maxRows);
-          completeNumRows = Math.min(completeNumRows, setMaxRows);
-        }
+      int setMaxRows = -1;
+      String maxRows = (String) request.get("maxRows");
+      if (maxRows != null && !maxRows.equals("")) {
+        setMaxRows = Integer.parseInt(maxRows);
       }
 
-      String qstr = makeQuery(request);
+      String sortColumn = null;
       if(sortKey!=null && sortKey.length()>0) {
-        qstr = qstr + " order by " + getSortByColumn(sortKey);
+        sortColumn = getSortByColumn(sortKey);
         if(sortKey.equals(oldSortColumn) && oldSortDirection==1) {
-          qstr = qstr + " DESC";
           sortDirection = -1;
         }
       }
       else if(defaultSortKey!=null && defaultSortKey.length()>0) {
-        qstr = qstr + " order by " + defaultSortKey;
+        sortColumn = defaultSortKey;
+      }
+      if(sortColumn != null && sortColumn.length() == 0)
+        sortColumn = null;
+
+      //the whole result may be available without going to the DB, in which
+      //case every row is instantiated and the count is exact
+      Vector found = findInMemory(request, sortColumn, sortDirection);
+      if(found != null) {
+        if(setMaxRows >= 0 && found.size() > setMaxRows)
+          found.setSize(setMaxRows);
+        v = found;
+        completeNumRows = v.size();
+        shouldCount = true;
+      }
+      else {
+        if(shouldCount) {
+          String countStr;
+          if(setMaxRows >= 0)
+            //there is no need to count past the limit
+            countStr = makeCappedCountQuery(request, setMaxRows + 1);
+          else
+            countStr = makeCountQuery(request);
+    //      System.out.println("count str " + countStr);
+          counter = new CountQuery(countStr, setMaxRows);
+          counter.start();
+        }
+        int firstPageRows = DEFAULT_FETCH_SIZE;
+        if(shouldCount && setMaxRows >= 0)
+          firstPageRows = Math.min(firstPageRows, setMaxRows);
+
+        String keyColumn = getUniqueKeyColumn();
+        if(keyColumn != null) {
+          bsr.setKeyset(request, sortColumn, sortDirection, keyColumn);
+          v = fetchKeysetRows(bsr, firstPageRows);
+        }
+        else {
+          String qstr = makeQuery(request);
+          if(sortColumn != null) {
+            qstr = qstr + " order by " + sortColumn;
+            if(sortDirection == -1)
+              qstr = qstr + " DESC";
+          }
+//        System.out.println("qstr " + qstr);
+          doBatchQuery(qstr, bsr);
+          ResultSet rs = bsr.getResultSet();
+          v = instantiate(rs, 1, firstPageRows+1);
+        }
+
+        if(counter != null) {
+          if(v.size() < firstPageRows) {
+            //the first page already holds every matching row, so the count
+            //is not needed; stop it and free its connection
+            completeNumRows = v.size();
+            counter.cancel();
+          }
+          else if(mayDefer && shouldDeferCount(request))
+            deferCount = true;
+          else
+            completeNumRows = counter.waitForCount();
+    //      System.out.println("count " + completeNumRows);
+        }
       }
-//      System.out.println("qstr " + qstr);
-      doBatchQuery(qstr, bsr);
-      ResultSet rs = bsr.getResultSet();
-      if(shouldCount)
-        v = instantiate(rs, 1, Math.min(DEFAULT_FETCH_SIZE+1, completeNumRows+1));
-      else
-        v = instantiate(rs, 1, DEFAULT_FETCH_SIZE+1);
     }
     catch( Exception ex ) {
       System.err.println("XXXXXXXXX  Error in Factory::processBatchQuery");
       ex.printStackTrace();
+      //no table will take the count, so do not leave it holding a connection
+      if(counter != null && !deferCount)
+        counter.cancel();
     }
 
     DataWrapper[] result = new DataWrapper[v.size()];
@@ -524,9 +649,12 @@ public abstract class Factory {
 
     UniversalTable ut = new UniversalTable(result);
     ut.setTotalNumRows(completeNumRows);
-    if(!shouldCount) {
+    if(!shouldCount || deferCount) {
       ut.setNumberOfRowsIsKnown(false);
     }
+    if(deferCount) {
+      counter.deliverTo(ut);
+    }
     if(sortKey!=null) {
       ut.setAlreadySorted(sortKey, sortDirection);
     }
@@ -535,6 +663,155 @@ public abstract class Factory {
     return bsr;
   }
 
+  /**
+   * returns a count query of the form required by makeCountQuery that
+   * stops counting once it reaches cap rows
+   */
+  private String makeCappedCountQuery(Map request, int cap) {
+    return "select count(*) as cnt from (select * from (" + makeQuery(request) +
+        ") where rownum <= " + cap + ")";
+  }
+
+  /**
+   * Runs the count query of a batch search on its own thread (and so its
+   * own pooled connection), so that it overlaps the fetch of the first page.
+   * A count that turns out not to be needed can be cancelled, which stops
+   * the query if it is running and releases its connection.
+   */
+  private class CountQuery extends Thread {
+    private String query;
+    private int maxRows;
+    private int count = 0;
+    private Exception failure = null;
+    private boolean done = false;
+    // the table to be updated when the count finishes, if it was deferred
+    private UniversalTable table = null;
+    private boolean cancelled = false;
+    // the running count query, while there is one
+    private Statement statement = null;
+
+    /**
+     * @param query the count query
+     * @param maxRows the limit on the count, or -1 for none
+     */
+    public CountQuery(String query, int maxRows) {
+      super("Factory count query");
+      this.query = query;
+      this.maxRows = maxRows;
+      setDaemon(true);
+    }
+
+    public void run() {
+      int n = 0;
+      Exception ex = null;
+      Connection conn = null;
+      Statement st = null;
+      long start = System.currentTimeMillis();
+      try {
+        synchronized(this) {
+          if(cancelled)
+            return;
+        }
+        conn = getConnection();
+        if(conn == null)
+          throw new SQLException("No connection for the count query");
+        st = conn.createStatement();
+        synchronized(this) {
+          if(cancelled)
+            return;
+          statement = st;
+        }
+        ResultSet rs = st.executeQuery(query);
+        rs.next();
+        n = rs.getInt("cnt");
+        JdbcStatistics.queryDone(query, System.currentTimeMillis() - start, 1);
+        if(maxRows >= 0)
+          n = Math.min(n, maxRows);
+      }
+      catch(Exception e) {
+        if(!isCancelled() && e instanceof SQLException)
+          JdbcStatistics.queryFailed(query, System.currentTimeMillis() - start,
+            (SQLException) e, false);
+        ex = e;
+      }
+      finally {
+        synchronized(this) {
+          statement = null;
+        }
+        try {
+          if(st != null)
+            st.close();
+        }
+        catch(SQLException sqle) {
+        }
+        if(conn != null)
+          close_connection(conn);
+      }
+      synchronized(this) {
+        if(cancelled)
+          return;
+        count = n;
+        failure = ex;
+        done = true;
+        if(table != null)
+          publish();
+        notifyAll();
+      }
+    }
+
+    /**
+     * Wait for the count to finish.
+     * @return the count
+     * @throws Exception whatever the count query threw
+     */
+    public synchronized int waitForCount() throws Exception {
+      while(!done)
+        wait();
+      if(failure != null)
+        throw failure;
+      return count;
+    }
+
+    /**
+     * Stop the count:  skip it if it has not begun, or cancel the query if
+     * it is running.  The count is not delivered afterward.
+     */
+    public synchronized void cancel() {
+      cancelled = true;
+      if(statement != null) {
+        try {
+          statement.cancel();
+        }
+        catch(SQLException sqle) {
+        }
+      }
+      done = true;
+      notifyAll();
+    }
+
+    private synchronized boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Fill the count into ut when it finishes, or now if it already has.
+     */
+    public synchronized void deliverTo(UniversalTable ut) {
+      table = ut;
+      if(done)
+        publish();
+    }
+
+    private void publish() {
+      if(failure != null) {
+        System.err.println("XXXXXXXXX  Error in Factory::CountQuery");
+        failure.printStackTrace();
+        return;
+      }
+      table.setKnownTotalNumRows(count);
+    }
+  }
+
   /**
    * returns the numerical result of the query.
    * Required that query is of the form specified in
@@ -546,6 +823,95 @@ public abstract class Factory {
     return (rs.getInt("cnt"));
   }
 
+  /**
+   * Instantiates up to numRows objects following the last row already
+   * fetched for a keyset bsr.  The query is bounded to numRows rows and its
+   * connection is released before this returns; the sort and key values of
+   * the last row are remembered in the bsr for the next call.
+   */
+  private Vector fetchKeysetRows(BatchSearchResult bsr, int numRows)
+        throws SQLException {
+    if(numRows <= 0 || bsr.isKeysetExhausted())
+      return new Vector();
+    String sortLabel = columnLabel(bsr.getKeysetSortColumn());
+    String keyLabel = columnLabel(bsr.getKeysetKeyColumn());
+    String desc = (bsr.getKeysetSortDirection() == -1 ? " DESC" : "");
+
+    StringBuffer buf = new StringBuffer("select * from (select * from (");
+    buf.append(makeQuery(bsr.getKeysetRequest()));
+    buf.append(")");
+    if(bsr.hasKeysetPosition()) {
+      buf.append(" where ");
+      buf.append(makeSeekCondition(sortLabel, bsr.getLastSortValue(),
+          keyLabel, bsr.getLastKeyValue(), bsr.getKeysetSortDirection()));
+    }
+    buf.append(" order by ");
+    if(sortLabel != null) {
+      buf.append(sortLabel);
+      buf.append(desc);
+      buf.append(", ");
+    }
+    buf.append(keyLabel);
+    buf.append(desc);
+    buf.append(") where rownum <= ");
+    buf.append(numRows);
+
+    ResultSet rs = doQuery(buf.toString(), null);
+    int fetched = 0;
+    if(rs.last()) {
+      fetched = rs.getRow();
+      bsr.setKeysetPosition(
+          (sortLabel == null ? null : rs.getObject(sortLabel)),
+          rs.getObject(keyLabel));
+    }
+    if(fetched < numRows)
+      bsr.setKeysetExhausted(true);
+    return instantiate(rs, 1, fetched + 1);
+  }
+
+  /**
+   * Builds the condition selecting the rows that come after the given sort
+   * and key values, in the given direction.  Oracle sorts nulls last in
+   * ascending order and first in descending order.
+   */
+  private String makeSeekCondition(String sortLabel, Object sortValue,
+        String keyLabel, Object keyValue, int direction) {
+    String cmp = (direction == -1 ? " < " : " > ");
+    String keyCond = keyLabel + cmp + seekLiteral(keyValue);
+    if(sortLabel == null)
+      return keyCond;
+    if(sortValue == null) {
+      if(direction == -1)
+        return "(" + sortLabel + " is not null or (" + sortLabel +
+            " is null and " + keyCond + "))";
+      return "(" + sortLabel + " is null and " + keyCond + ")";
+    }
+    String lit = seekLiteral(sortValue);
+    StringBuffer buf = new StringBuffer("(");
+    buf.append(sortLabel + cmp + lit);
+    if(direction != -1)
+      buf.append(" or " + sortLabel + " is null");
+    buf.append(" or (" + sortLabel + " = " + lit + " and " + keyCond + "))");
+    return buf.toString();
+  }
+
+  // format a value read back from the result set for use in a seek condition
+  private String seekLiteral(Object o) {
+    if(o instanceof java.util.Date)
+      return hiFiFmt((java.util.Date) o);
+    if(o instanceof Number)
+      return o.toString();
+    return UtilString.stringize(o);
+  }
+
+  // the name under which a column of the inner query is visible to the
+  // enclosing query, e.g. "rule_id" for "qr.rule_id"
+  private String columnLabel(String column) {
+    if(column == null)
+      return null;
+    return column.substring(column.lastIndexOf('.') + 1).trim();
+  }
+
   /**
    * Completes the bsr according to the query.
    */
@@ -553,6 +919,7 @@ public abstract class Factory {
     ResultSet rs = null;
     Statement st = null;
     Connection conn = null;
+    long start = System.currentTimeMillis();
     try {
       conn = getConnection();
       conn.setAutoCommit(false);
@@ -562,10 +929,12 @@ public abstract class Factory {
       rs = st.executeQuery(query);
     }
     catch (SQLException e) {
+        JdbcStatistics.queryFailed(query, System.currentTimeMillis() - start, e, true);
         // close the Connection and Statement and try again.  The Pool should have
         // been recreated so this should be a brand new Connection and Statement.
         st.close();
         close_connection(conn);
+        start = System.currentTimeMillis();
         conn = getConnection();
         conn.setAutoCommit(false);
         st = conn.prepareStatement(query, ResultSet.TYPE_SCROLL_INSENSITIVE,
@@ -573,6 +942,8 @@ public abstract class Factory {
         st.setFetchSize(DEFAULT_FETCH_SIZE);
         rs = st.executeQuery(query);
     }
+    // the rows are fetched later, as the pages are read
+    JdbcStatistics.queryDone(query, System.currentTimeMillis() - start, -1);
     bsr.setConnection(conn);
     bsr.setStatement(st);
     bsr.setResultSet(rs);
@@ -584,6 +955,7 @@ public abstract class Factory {
 
     Connection conn = c;
     Statement st = null;
+    long start = System.currentTimeMillis();
     try {
       if (conn == null)
         conn = getConnection();
@@ -592,16 +964,26 @@ public abstract class Factory {
       String s = query.toUpperCase().trim();
       if (!s.startsWith("UPDATE") && !s.startsWith("INSERT") && !s.startsWith("DELETE"))
         rs = new PermanentResultSet(rs);
+      JdbcStatistics.queryDone(query, System.currentTimeMillis() - start, rowCount(rs));
     }
     catch (SQLException e) {
+      JdbcStatistics.queryFailed(query, System.currentTimeMillis() - start, e, c == null);
       if (c == null) {
         // close the Connection and Statement and try again.  The Pool should have
         // been recreated so this should be a brand new Connection and Statement.
         st.close();
         close_connection(conn);
+        start = System.currentTimeMillis();
         conn = getConnection();
         st = conn.prepareStatement(query);
-        rs = st.executeQuery(query);
+        try {
+          rs = st.executeQuery(query);
+        }
+        catch (SQLException e2) {
+          JdbcStatistics.queryFailed(query, System.currentTimeMillis() - start, e2, false);
+          throw e2;
+        }
+        JdbcStatistics.queryDone(query, System.currentTimeMillis() - start, -1);
       }
       else
       {
@@ -617,6 +999,86 @@ public abstract class Factory {
     return rs;
   }
 
+  // the number of rows copied into a PermanentResultSet, or -1
+  private static int rowCount(ResultSet rs) {
+    if (rs instanceof PermanentResultSet)
+      return ((PermanentResultSet) rs).getRowCount();
+    return -1;
+  }
+
+  /**
+   * Run a query over a forward-only cursor, handing each row to the handler
+   * as it arrives rather than copying the whole result into a
+   * PermanentResultSet first.  If c is null a connection is fetched from the
+   * pool and released when the query is finished; otherwise the caller's
+   * connection is used and left open.  The statement and result set are
+   * always closed before this method returns.
+   * @param query the SELECT statement to run
+   * @param c the connection to use, or null to use a pooled connection
+   * @param fetchSize the number of rows to fetch per round trip
+   * @param handler the callback that processes each row
+   * @return the number of rows handed to the handler
+   */
+  protected final int doStreamingQuery(String query, Connection c, int fetchSize,
+        RowHandler handler) throws Exception {
+    Connection conn = c;
+    Statement st = null;
+    ResultSet rs = null;
+    int rowCount = 0;
+    long start = System.currentTimeMillis();
+    try {
+      if (conn == null)
+        conn = getConnection();
+      try {
+        st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.CONCUR_READ_ONLY);
+        st.setFetchSize(fetchSize);
+        rs = st.executeQuery(query);
+      }
+      catch (SQLException e) {
+        JdbcStatistics.queryFailed(query, System.currentTimeMillis() - start, e, c == null);
+        if (c != null)
+          throw e;
+        start = System.currentTimeMillis();
+        // close the Connection and Statement and try again.  The Pool should have
+        // been recreated so this should be a brand new Connection and Statement.
+        if (st != null)
+          st.close();
+        close_connection(conn);
+        conn = getConnection();
+        st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.CONCUR_READ_ONLY);
+        st.setFetchSize(fetchSize);
+        rs = st.executeQuery(query);
+      }
+      while (rs.next()) {
+        rowCount++;
+        if (!handler.handleRow(rs))
+          break;
+      }
+      // the time includes the handler's work, since the rows arrive as it runs
+      JdbcStatistics.queryDone(query, System.currentTimeMillis() - start, rowCount);
+    }
+    finally {
+      if (rs != null)
+        rs.close();
+      if (st != null)
+        st.close();
+      if (c == null && conn != null)
+        close_connection(conn);
+    }
+    return rowCount;
+  }
+
+  /**
+   * Run a streaming query with the default streaming fetch size.
+   * @see #doStreamingQuery(String, Connection, int, RowHandler)
+   */
+  protected final int doStreamingQuery(String query, Connection c,
+        RowHandler handler) throws Exception {
+    return doStreamingQuery(query, c, DEFAULT_STREAMING_FETCH_SIZE, handler);
+  }
+
   /**
    * True iff what starts with a Y or a T
    */
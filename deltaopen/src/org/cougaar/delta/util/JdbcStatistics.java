@@ -0,0 +1,556 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Accounting for the database work done through Factory and BasicPlugin.
+ * It records how long callers wait for pooled connections, how long each
+ * kind of query takes and how many rows it returns, and which connections
+ * have been checked out for longer than a threshold, together with the
+ * stack of the code that took them.
+ * <br><br>
+ * Queries are grouped by template:  the SQL text with its string and
+ * numeric literals replaced by "?", so that lookups differing only in a key
+ * are counted together.
+ * <br><br>
+ * A summary is printed periodically if the system property
+ * org.cougaar.delta.jdbc.report.interval gives an interval in seconds.  The
+ * same figures are shown by JdbcStatisticsServlet.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class JdbcStatistics {
+  /**
+   * Upper limits, in milliseconds, of the latency histogram buckets.  A
+   * final bucket holds everything slower than the last limit.
+   */
+  public static final long[] BUCKET_LIMITS =
+    {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  // queries beyond this many templates are counted together
+  private static final int MAX_TEMPLATES = 500;
+  private static final int MAX_TEMPLATE_LENGTH = 400;
+  public static final String OTHER_QUERIES = "(other queries)";
+
+  private static final String REPORT_INTERVAL_PROPERTY =
+    "org.cougaar.delta.jdbc.report.interval";
+
+  // QueryStats keyed by template
+  private static Hashtable queries = new Hashtable();
+  // Checkouts keyed by Connection
+  private static Hashtable checkouts = new Hashtable();
+  private static Timing poolWait = new Timing("connection wait");
+  private static Timing holdTime = new Timing("connection hold");
+  private static long poolFailures = 0;
+  private static long leakThreshold = 60000;
+  private static long resetTime = System.currentTimeMillis();
+  private static Reporter reporter = null;
+
+  static {
+    String interval = System.getProperty(REPORT_INTERVAL_PROPERTY);
+    if (interval != null) {
+      try {
+        startReporting(Long.parseLong(interval.trim()) * 1000);
+      }
+      catch (NumberFormatException nfe) {
+        System.err.println("JdbcStatistics:  bad " + REPORT_INTERVAL_PROPERTY +
+          " \"" + interval + "\"");
+      }
+    }
+  }
+
+  private JdbcStatistics () {
+  }
+
+  /**
+   * Counts, total and maximum time, and a latency histogram for one kind of
+   * operation.
+   */
+  public static class Timing {
+    private String name;
+    protected long count = 0;
+    protected long totalTime = 0;
+    protected long maxTime = 0;
+    protected long[] buckets = new long[BUCKET_LIMITS.length + 1];
+
+    public Timing (String name) {
+      this.name = name;
+    }
+
+    synchronized void add (long ms) {
+      count++;
+      totalTime += ms;
+      if (ms > maxTime)
+        maxTime = ms;
+      int i = 0;
+      while (i < BUCKET_LIMITS.length && ms > BUCKET_LIMITS[i])
+        i++;
+      buckets[i]++;
+    }
+
+    public String getName () {
+      return name;
+    }
+
+    public synchronized long getCount () {
+      return count;
+    }
+
+    public synchronized long getTotalTime () {
+      return totalTime;
+    }
+
+    public synchronized long getMaxTime () {
+      return maxTime;
+    }
+
+    public synchronized long getMeanTime () {
+      return count == 0 ? 0 : totalTime / count;
+    }
+
+    /**
+     * Get the counts in each latency bucket
+     * @see JdbcStatistics#BUCKET_LIMITS
+     */
+    public synchronized long[] getBuckets () {
+      return (long[]) buckets.clone();
+    }
+
+    /**
+     * Estimate a percentile from the histogram.  The answer is the upper
+     * limit of the bucket in which the percentile falls, or the maximum
+     * for the last bucket.
+     * @param p the percentile, from 0 to 100
+     */
+    public synchronized long getPercentile (int p) {
+      long target = (count * p + 99) / 100;
+      long seen = 0;
+      for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+        seen += buckets[i];
+        if (seen >= target)
+          return Math.min(BUCKET_LIMITS[i], maxTime);
+      }
+      return maxTime;
+    }
+  }
+
+  /**
+   * Figures for one query template
+   */
+  public static class QueryStats extends Timing {
+    private long rows = 0;
+    private long failures = 0;
+    private long retries = 0;
+    private String lastError = null;
+
+    public QueryStats (String template) {
+      super(template);
+    }
+
+    synchronized void addRows (int n) {
+      if (n > 0)
+        rows += n;
+    }
+
+    synchronized void addFailure (SQLException e, boolean retried) {
+      failures++;
+      if (retried)
+        retries++;
+      lastError = e.toString();
+    }
+
+    public synchronized long getRows () {
+      return rows;
+    }
+
+    public synchronized long getFailures () {
+      return failures;
+    }
+
+    public synchronized long getRetries () {
+      return retries;
+    }
+
+    public synchronized String getLastError () {
+      return lastError;
+    }
+  }
+
+  /**
+   * A connection that has been checked out and not yet released
+   */
+  public static class Checkout {
+    private String owner;
+    private String thread;
+    private long since;
+    private Throwable stack;
+    private boolean reported = false;
+
+    Checkout (String owner) {
+      this.owner = owner;
+      thread = Thread.currentThread().getName();
+      since = System.currentTimeMillis();
+      stack = new Throwable("connection checked out by " + owner);
+    }
+
+    public String getOwner () {
+      return owner;
+    }
+
+    public String getThreadName () {
+      return thread;
+    }
+
+    public long getCheckoutTime () {
+      return since;
+    }
+
+    public long getHeldTime () {
+      return System.currentTimeMillis() - since;
+    }
+
+    /**
+     * Get the stack of the code that checked the connection out
+     */
+    public String getStackTrace () {
+      StringWriter sw = new StringWriter();
+      stack.printStackTrace(new PrintWriter(sw));
+      return sw.toString();
+    }
+  }
+
+  /**
+   * Record the outcome of a request to the connection pool
+   * @param c the connection obtained, or null if none could be had
+   * @param owner the name of the class or plugin that asked for it
+   * @param waited how long the request took, in milliseconds
+   */
+  public static void connectionAcquired (Connection c, String owner, long waited) {
+    poolWait.add(waited);
+    if (c == null) {
+      synchronized (JdbcStatistics.class) {
+        poolFailures++;
+      }
+    }
+    else {
+      checkouts.put(c, new Checkout(owner));
+    }
+  }
+
+  /**
+   * Record the release of a connection
+   * @param c the connection, which may be null
+   */
+  public static void connectionReleased (Connection c) {
+    if (c == null)
+      return;
+    Checkout co = (Checkout) checkouts.remove(c);
+    if (co != null)
+      holdTime.add(co.getHeldTime());
+  }
+
+  /**
+   * Record a query that succeeded
+   * @param sql the SQL text
+   * @param elapsed the time taken, in milliseconds
+   * @param rows the number of rows fetched, or -1 if not known
+   */
+  public static void queryDone (String sql, long elapsed, int rows) {
+    QueryStats qs = getQueryStats(sql);
+    qs.add(elapsed);
+    qs.addRows(rows);
+  }
+
+  /**
+   * Record a query that failed
+   * @param sql the SQL text
+   * @param elapsed the time taken, in milliseconds
+   * @param e the error
+   * @param retried true if the caller is about to try again
+   */
+  public static void queryFailed (String sql, long elapsed, SQLException e,
+      boolean retried)
+  {
+    QueryStats qs = getQueryStats(sql);
+    qs.add(elapsed);
+    qs.addFailure(e, retried);
+  }
+
+  private static QueryStats getQueryStats (String sql) {
+    String t = template(sql);
+    synchronized (queries) {
+      QueryStats qs = (QueryStats) queries.get(t);
+      if (qs == null) {
+        if (queries.size() >= MAX_TEMPLATES)
+          t = OTHER_QUERIES;
+        qs = (QueryStats) queries.get(t);
+        if (qs == null)
+          queries.put(t, qs = new QueryStats(t));
+      }
+      return qs;
+    }
+  }
+
+  /**
+   * Reduce a SQL statement to its template:  whitespace is collapsed, and
+   * string and numeric literals are replaced by "?".  A list of literals,
+   * as in an IN clause, becomes a single "?".
+   * @param sql the SQL text
+   * @return the template
+   */
+  public static String template (String sql) {
+    if (sql == null)
+      return "";
+    StringBuffer buf = new StringBuffer();
+    int n = sql.length();
+    int i = 0;
+    while (i < n && buf.length() < MAX_TEMPLATE_LENGTH) {
+      char ch = sql.charAt(i);
+      char prev = (buf.length() == 0 ? ' ' : buf.charAt(buf.length() - 1));
+      if (ch == '\'') {
+        // a string literal, in which '' stands for a quote
+        i++;
+        while (i < n) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < n && sql.charAt(i + 1) == '\'')
+              i++;
+            else
+              break;
+          }
+          i++;
+        }
+        i++;
+        appendParameter(buf);
+      }
+      else if (Character.isDigit(ch) && !Character.isLetterOrDigit(prev) &&
+          prev != '_' && prev != '.')
+      {
+        while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+          i++;
+        appendParameter(buf);
+      }
+      else if (Character.isWhitespace(ch)) {
+        if (prev != ' ')
+          buf.append(' ');
+        i++;
+      }
+      else {
+        buf.append(ch);
+        i++;
+      }
+    }
+    return buf.toString().trim();
+  }
+
+  // add a "?" for a literal, merging it into a preceding "?, "
+  private static void appendParameter (StringBuffer buf) {
+    String s = buf.toString();
+    if (s.endsWith("?, ") || s.endsWith("?,"))
+      buf.setLength(s.lastIndexOf('?') + 1);
+    else
+      buf.append('?');
+  }
+
+  /**
+   * Set how long a connection may be held before it is reported
+   * @param ms the threshold, in milliseconds
+   */
+  public static void setLeakThreshold (long ms) {
+    leakThreshold = ms;
+  }
+
+  public static long getLeakThreshold () {
+    return leakThreshold;
+  }
+
+  /**
+   * Get the figures for connection requests to the pool
+   */
+  public static Timing getPoolWait () {
+    return poolWait;
+  }
+
+  /**
+   * Get the figures for how long released connections were held
+   */
+  public static Timing getHoldTime () {
+    return holdTime;
+  }
+
+  public static synchronized long getPoolFailures () {
+    return poolFailures;
+  }
+
+  /**
+   * Get the number of connections checked out and not yet released
+   */
+  public static int getCheckedOutCount () {
+    return checkouts.size();
+  }
+
+  /**
+   * Get the time at which the figures were last reset
+   */
+  public static long getResetTime () {
+    return resetTime;
+  }
+
+  /**
+   * Get the figures for each query template, the most time-consuming first
+   * @return a Vector of QueryStats
+   */
+  public static Vector getQueryStats () {
+    Vector v;
+    synchronized (queries) {
+      v = new Vector(queries.values());
+    }
+    Collections.sort(v, new Comparator() {
+      public int compare (Object a, Object b) {
+        long ta = ((QueryStats) a).getTotalTime();
+        long tb = ((QueryStats) b).getTotalTime();
+        return ta > tb ? -1 : (ta < tb ? 1 : 0);
+      }
+    });
+    return v;
+  }
+
+  /**
+   * Get the connections that have been held longer than the leak threshold,
+   * the longest held first
+   * @return a Vector of Checkouts
+   */
+  public static Vector getLongCheckouts () {
+    Vector v = new Vector();
+    long now = System.currentTimeMillis();
+    Enumeration e = ((Hashtable) checkouts.clone()).elements();
+    while (e.hasMoreElements()) {
+      Checkout co = (Checkout) e.nextElement();
+      if (now - co.since > leakThreshold)
+        v.addElement(co);
+    }
+    Collections.sort(v, new Comparator() {
+      public int compare (Object a, Object b) {
+        long ta = ((Checkout) a).since;
+        long tb = ((Checkout) b).since;
+        return ta < tb ? -1 : (ta > tb ? 1 : 0);
+      }
+    });
+    return v;
+  }
+
+  /**
+   * Discard the accumulated figures.  Connections still checked out remain
+   * tracked.
+   */
+  public static void reset () {
+    synchronized (queries) {
+      queries.clear();
+    }
+    poolWait = new Timing("connection wait");
+    holdTime = new Timing("connection hold");
+    synchronized (JdbcStatistics.class) {
+      poolFailures = 0;
+    }
+    resetTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Write a summary of the figures:  connection use, the most
+   * time-consuming query templates, and any long-held connections.  The
+   * stack of a long-held connection is written only the first time it is
+   * reported.
+   * @param o where to write it
+   * @param maxQueries the number of query templates to list
+   */
+  public static void printSummary (PrintWriter o, int maxQueries) {
+    o.println("JDBC statistics since " + new java.util.Date(resetTime));
+    o.println("  connections:  " + poolWait.getCount() + " requests, " +
+      getPoolFailures() + " failed, wait mean " + poolWait.getMeanTime() +
+      " ms, 95% " + poolWait.getPercentile(95) + " ms, max " +
+      poolWait.getMaxTime() + " ms; held mean " + holdTime.getMeanTime() +
+      " ms, max " + holdTime.getMaxTime() + " ms; " + getCheckedOutCount() +
+      " checked out");
+    Vector v = getQueryStats();
+    for (int i = 0; i < v.size() && i < maxQueries; i++) {
+      QueryStats qs = (QueryStats) v.elementAt(i);
+      o.println("  " + qs.getCount() + " x " + qs.getName());
+      o.println("      total " + qs.getTotalTime() + " ms, mean " +
+        qs.getMeanTime() + " ms, 95% " + qs.getPercentile(95) + " ms, max " +
+        qs.getMaxTime() + " ms, " + qs.getRows() + " rows, " +
+        qs.getFailures() + " failures");
+    }
+    v = getLongCheckouts();
+    for (int i = 0; i < v.size(); i++) {
+      Checkout co = (Checkout) v.elementAt(i);
+      o.println("  connection held " + co.getHeldTime() + " ms by " +
+        co.getOwner() + " on thread " + co.getThreadName());
+      if (!co.reported) {
+        co.reported = true;
+        o.print(co.getStackTrace());
+      }
+    }
+    o.flush();
+  }
+
+  /**
+   * Print a summary to System.out at the given interval, on a thread of its
+   * own, until told otherwise.
+   * @param ms the interval, in milliseconds, or 0 to stop
+   */
+  public static synchronized void startReporting (long ms) {
+    if (reporter != null) {
+      reporter.interval = 0;
+      reporter.interrupt();
+      reporter = null;
+    }
+    if (ms > 0) {
+      reporter = new Reporter(ms);
+      reporter.start();
+    }
+  }
+
+  private static class Reporter extends Thread {
+    private volatile long interval;
+
+    public Reporter (long ms) {
+      super("JdbcStatistics reporter");
+      interval = ms;
+      setDaemon(true);
+    }
+
+    public void run () {
+      while (interval > 0) {
+        try {
+          sleep(interval);
+        }
+        catch (InterruptedException ie) {
+        }
+        if (interval > 0)
+          printSummary(new PrintWriter(System.out), 10);
+      }
+    }
+  }
+}
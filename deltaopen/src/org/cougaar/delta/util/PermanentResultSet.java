@@ -28,39 +28,61 @@ import java.io.*;
 import java.math.*;
 
 /**
- * Wrapper for ResultSet
+ * Wrapper for ResultSet.  The rows of the wrapped ResultSet are copied into
+ * column arrays so that the result can be used after the Statement and
+ * Connection have been released.  Integral numeric columns are kept in long
+ * arrays and floating point columns in double arrays, with a null bitmap, and
+ * text columns in String arrays; any column whose values do not fit one of
+ * these falls back to an array of the original objects.  getObject returns
+ * an object of the same class the driver originally produced.
  * @author ALPINE (alpine-software@bbn.com)
  */
 
 public class PermanentResultSet implements ResultSet {
 
   private int rowPointer = 0;
+  private int rowCount = 0;
   private int columns;
-  private Vector rows;
-  private Vector columnNames;
+  private Column[] cols;
+  private String[] columnNames;
+  private Hashtable columnIndex;
   private boolean wasNull = false;
 
   public PermanentResultSet(ResultSet rs) {
     try {
       ResultSetMetaData rsmd = rs.getMetaData();
       columns = rsmd.getColumnCount();
-      columnNames = new Vector(columns);
-      rows = new Vector();
+      columnNames = new String[columns];
+      columnIndex = new Hashtable(columns * 2 + 1);
+      cols = new Column[columns];
       for (int i=0; i<columns; i++) {
-        columnNames.addElement(rsmd.getColumnName(i+1));
+        String name = rsmd.getColumnName(i+1);
+        columnNames[i] = name;
+        // like indexOf, the first of several identically named columns wins
+        if (name != null && !columnIndex.containsKey(name))
+          columnIndex.put(name, new Integer(i));
+        cols[i] = new Column();
       }
       while (rs.next()) {
-        Vector row = new Vector(columns);
         for (int i=0; i<columns; i++)
-          row.addElement(rs.getObject(i+1));
-        rows.addElement(row);
+          cols[i].set(rowCount, rs.getObject(i+1));
+        rowCount++;
       }
+      for (int i=0; i<columns; i++)
+        cols[i].trim(rowCount);
     }
     catch (SQLException e) {
       e.printStackTrace();
     }
   }
 
+  /**
+   * Get the number of rows copied from the original result set
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
   public boolean wasNull() {
     return wasNull;
   }
@@ -86,7 +108,7 @@ public class PermanentResultSet implements ResultSet {
       return false;
     }
     else if (isAfterLast()) {
-      rowPointer = rows.size()+1;
+      rowPointer = rowCount+1;
       return false;
     }
     return true;
@@ -99,14 +121,14 @@ public class PermanentResultSet implements ResultSet {
       return false;
     }
     else if (isAfterLast()) {
-      rowPointer = rows.size()+1;
+      rowPointer = rowCount+1;
       return false;
     }
     return true;
   }
 
   public void afterLast() {
-    rowPointer = rows.size()+1;
+    rowPointer = rowCount+1;
   }
 
   public void beforeFirst() {
@@ -114,7 +136,7 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public boolean first() {
-    if (rows.size() > 0)
+    if (rowCount > 0)
       rowPointer = 1;
     else
       rowPointer = 0;
@@ -122,7 +144,7 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public boolean isAfterLast() {
-    return (rowPointer > rows.size());
+    return (rowPointer > rowCount);
   }
 
   public boolean isBeforeFirst() {
@@ -134,78 +156,70 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public boolean isLast() {
-    return (rowPointer == rows.size());
+    return (rowPointer == rowCount);
   }
 
   public boolean last() {
-    rowPointer = rows.size();
+    rowPointer = rowCount;
     return (rowPointer != 0);
   }
 
+  /**
+   * Find the zero-based index of the named column, or -1 if there is no such
+   * column.  Names are matched exactly first and then in upper case; each
+   * spelling that matches is remembered so that later lookups are a single
+   * hash probe.
+   */
   public int findColumn(String colName) {
-    return columnNames.indexOf(colName.toUpperCase());
+    Integer c = (Integer)columnIndex.get(colName);
+    if (c == null) {
+      c = (Integer)columnIndex.get(colName.toUpperCase());
+      if (c == null)
+        return -1;
+      columnIndex.put(colName, c);
+    }
+    return c.intValue();
   }
 
-  public BigDecimal getBigDecimal(int colIndex) throws SQLException {
+  // the one-based index of the named column
+  private int columnNumber(String colName) throws SQLException {
+    int c = findColumn(colName);
+    if (c < 0)
+      throw new SQLException("Invalid Column Name");
+    return c+1;
+  }
+
+  // the column at colIndex, with wasNull set for the current row
+  private Column column(int colIndex) throws SQLException {
     if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    if (obj == null)
-      wasNull = true;
-    return (BigDecimal)obj;
+    if (rowPointer < 1 || rowPointer > rowCount) throw new SQLException("No current row");
+    Column col = cols[colIndex-1];
+    wasNull = col.isNull(rowPointer-1);
+    return col;
+  }
+
+  public BigDecimal getBigDecimal(int colIndex) throws SQLException {
+    return (BigDecimal)column(colIndex).get(rowPointer-1);
   }
 
   public BigDecimal getBigDecimal(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        BigDecimal bd = getBigDecimal(c+1);
-        return bd;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getBigDecimal(columnNumber(colName));
   }
 
   public boolean getBoolean(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    if (wasNull)
       return false;
-    }
-    wasNull = false;
-    Boolean b = (Boolean)obj;
+    Boolean b = (Boolean)col.get(rowPointer-1);
     return b.booleanValue();
   }
 
   public boolean getBoolean(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        boolean b = getBoolean(c+1);
-        return b;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getBoolean(columnNumber(colName));
   }
 
   public java.sql.Date getDate(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
-      return (java.sql.Date)obj;
-    }
-    wasNull = false;
+    Object obj = column(colIndex).get(rowPointer-1);
     if (obj instanceof java.sql.Timestamp) {
       java.sql.Timestamp ts = (Timestamp)obj;
       java.sql.Date date = new java.sql.Date(ts.getTime());
@@ -215,76 +229,35 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public java.sql.Date getDate(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        java.sql.Date date = getDate(c+1);
-        return date;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getDate(columnNumber(colName));
   }
 
   public java.sql.Time getTime(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    if (obj == null)
-      wasNull = true;
-    return (java.sql.Time)obj;
+    return (java.sql.Time)column(colIndex).get(rowPointer-1);
   }
 
   public java.sql.Time getTime(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        java.sql.Time time = getTime(c+1);
-        return time;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getTime(columnNumber(colName));
   }
 
   public java.sql.Timestamp getTimestamp(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    if (obj == null)
-      wasNull = true;
-    return (java.sql.Timestamp)obj;
+    return (java.sql.Timestamp)column(colIndex).get(rowPointer-1);
   }
 
   public java.sql.Timestamp getTimestamp(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        java.sql.Timestamp ts = getTimestamp(c+1);
-        return ts;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getTimestamp(columnNumber(colName));
   }
 
   public double getDouble(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
       return 0.0;
-    }
-    wasNull = false;
+    if (col.kind == Column.LONG)
+      return col.longs[row];
+    if (col.kind == Column.DOUBLE)
+      return col.doubles[row];
+    Object obj = col.get(row);
     if (obj instanceof BigDecimal) {
       BigDecimal bd = (BigDecimal)obj;
       return bd.doubleValue();
@@ -294,28 +267,19 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public double getDouble(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        double d = getDouble(c+1);
-        return d;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getDouble(columnNumber(colName));
   }
 
   public float getFloat(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
       return 0.0f;
-    }
-    wasNull = false;
+    if (col.kind == Column.LONG)
+      return col.longs[row];
+    if (col.kind == Column.DOUBLE)
+      return (float)col.doubles[row];
+    Object obj = col.get(row);
     if (obj instanceof BigDecimal) {
       BigDecimal bd = (BigDecimal)obj;
       return bd.floatValue();
@@ -325,28 +289,19 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public float getFloat(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        float f = getFloat(c+1);
-        return f;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getFloat(columnNumber(colName));
   }
 
   public int getInt(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
       return 0;
-    }
-    wasNull = false;
+    if (col.kind == Column.LONG)
+      return (int)col.longs[row];
+    if (col.kind == Column.DOUBLE)
+      return (int)col.doubles[row];
+    Object obj = col.get(row);
     if (obj instanceof BigDecimal) {
       BigDecimal bd = (BigDecimal)obj;
       return bd.intValue();
@@ -356,28 +311,19 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public int getInt(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        int i = getInt(c+1);
-        return i;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getInt(columnNumber(colName));
   }
 
   public long getLong(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
       return 0;
-    }
-    wasNull = false;
+    if (col.kind == Column.LONG)
+      return col.longs[row];
+    if (col.kind == Column.DOUBLE)
+      return (long)col.doubles[row];
+    Object obj = col.get(row);
     if (obj instanceof BigDecimal) {
       BigDecimal bd = (BigDecimal)obj;
       return bd.longValue();
@@ -387,28 +333,19 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public long getLong(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        long l = getLong(c+1);
-        return l;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getLong(columnNumber(colName));
   }
 
   public short getShort(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
       return 0;
-    }
-    wasNull = false;
+    if (col.kind == Column.LONG)
+      return (short)col.longs[row];
+    if (col.kind == Column.DOUBLE)
+      return (short)col.doubles[row];
+    Object obj = col.get(row);
     if (obj instanceof BigDecimal) {
       BigDecimal bd = (BigDecimal)obj;
       return bd.shortValue();
@@ -418,67 +355,30 @@ public class PermanentResultSet implements ResultSet {
   }
 
   public short getShort(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        short s = getShort(c+1);
-        return s;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getShort(columnNumber(colName));
   }
 
   public Object getObject(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    if (obj == null)
-      wasNull = true;
-    return obj;
+    return column(colIndex).get(rowPointer-1);
   }
 
   public Object getObject(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        Object o = getObject(c+1);
-        return o;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getObject(columnNumber(colName));
   }
 
   public String getString(int colIndex) throws SQLException {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    if (obj == null) {
-      wasNull = true;
-      return (String)obj;
-    }
-    wasNull = false;
+    Column col = column(colIndex);
+    int row = rowPointer-1;
+    if (wasNull)
+      return null;
+    if (col.kind == Column.LONG)
+      return Long.toString(col.longs[row]);
+    Object obj = col.get(row);
     return obj.toString();
   }
 
   public String getString(String colName) throws SQLException {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        String s = getString(c+1);
-        return s;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getString(columnNumber(colName));
   }
 
   public int getRow() {
@@ -497,54 +397,21 @@ public class PermanentResultSet implements ResultSet {
   public InputStream getBinaryStream(String colName) throws SQLException {throw new SQLException("Method not supported");}
   public Blob getBlob(int colIndex) throws SQLException
   {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    byte[] ret = null;
-    if (obj == null)
-      wasNull = true;
-    return (Blob)obj;
+    return (Blob)column(colIndex).get(rowPointer-1);
   }
   public Blob getBlob(String colName) throws SQLException
   {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        Blob b = getBlob(c+1);
-        return b;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getBlob(columnNumber(colName));
   }
   public byte getByte(int i) throws SQLException {throw new SQLException("Method not supported");}
   public byte getByte(String colName) throws SQLException {throw new SQLException("Method not supported");}
   public byte[] getBytes(int colIndex) throws SQLException
   {
-    if (colIndex < 1 || colIndex > columns) throw new SQLException("Invalid Column Index");
-    Vector row = (Vector)rows.elementAt(rowPointer-1);
-    Object obj = row.elementAt(colIndex-1);
-    wasNull = false;
-    if (obj == null)
-      wasNull = true;
-    return (byte[])obj;
+    return (byte[])column(colIndex).get(rowPointer-1);
   }
   public byte[] getBytes(String colName) throws SQLException
   {
-    int c = findColumn(colName);
-    if (c >= 0) {
-      try {
-        byte[] b = getBytes(c+1);
-        return b;
-      }
-      catch (SQLException e) {
-        throw e;
-      }
-    }
-    throw new SQLException("Invalid Column Name");
+    return getBytes(columnNumber(colName));
   }
   public Reader getCharacterStream(int i) throws SQLException {throw new SQLException("Method not supported");}
   public Reader getCharacterStream(String colName) throws SQLException {throw new SQLException("Method not supported");}
@@ -621,6 +488,189 @@ public class PermanentResultSet implements ResultSet {
   public void updateTimestamp(int i, java.sql.Timestamp t) throws SQLException {throw new SQLException("Updates not permitted");}
   public void updateTimestamp(String s, java.sql.Timestamp t) throws SQLException {throw new SQLException("Updates not permitted");}
 
+  /**
+   * The values of one column.  The storage kind is chosen from the first
+   * non-null value; if a later value does not fit, the column is converted
+   * to an array of the original objects.
+   */
+  private static final class Column {
+    static final int NONE = 0;    // only nulls seen so far
+    static final int LONG = 1;    // Integer, Long, Short, or whole BigDecimal
+    static final int DOUBLE = 2;  // Double or Float
+    static final int STRING = 3;
+    static final int OBJECT = 4;
+
+    int kind = NONE;
+    // the class of the values as returned by the driver
+    Class type = null;
+    int capacity = 16;
+    long[] longs = null;
+    double[] doubles = null;
+    Object[] objects = null;
+    // one bit per row, set if the value is null
+    int[] nulls = new int[1];
+
+    boolean isNull(int row) {
+      return (nulls[row >> 5] & (1 << (row & 31))) != 0;
+    }
+
+    void set(int row, Object value) {
+      ensureCapacity(row + 1);
+      if (value == null) {
+        nulls[row >> 5] |= (1 << (row & 31));
+        return;
+      }
+      if (kind == NONE)
+        start(value);
+      if (!store(row, value)) {
+        convertToObjects(row);
+        objects[row] = value;
+      }
+    }
+
+    Object get(int row) {
+      if (isNull(row))
+        return null;
+      switch (kind) {
+        case LONG:
+          long l = longs[row];
+          if (type == BigDecimal.class)
+            return BigDecimal.valueOf(l);
+          if (type == Integer.class)
+            return new Integer((int)l);
+          if (type == Short.class)
+            return new Short((short)l);
+          return new Long(l);
+        case DOUBLE:
+          if (type == Float.class)
+            return new Float((float)doubles[row]);
+          return new Double(doubles[row]);
+        default:
+          return objects[row];
+      }
+    }
+
+    // trim the arrays to the final number of rows
+    void trim(int size) {
+      if (size >= capacity)
+        return;
+      capacity = size;
+      if (longs != null) {
+        long[] a = new long[size];
+        System.arraycopy(longs, 0, a, 0, size);
+        longs = a;
+      }
+      if (doubles != null) {
+        double[] a = new double[size];
+        System.arraycopy(doubles, 0, a, 0, size);
+        doubles = a;
+      }
+      if (objects != null) {
+        Object[] a = (kind == STRING ? new String[size] : new Object[size]);
+        System.arraycopy(objects, 0, a, 0, size);
+        objects = a;
+      }
+      int[] n = new int[(size + 31) >> 5];
+      System.arraycopy(nulls, 0, n, 0, n.length);
+      nulls = n;
+    }
+
+    private void start(Object value) {
+      type = value.getClass();
+      if (type == Integer.class || type == Long.class || type == Short.class ||
+          (type == BigDecimal.class && isWhole((BigDecimal)value))) {
+        kind = LONG;
+        longs = new long[capacity];
+      }
+      else if (type == Double.class || type == Float.class) {
+        kind = DOUBLE;
+        doubles = new double[capacity];
+      }
+      else if (type == String.class) {
+        kind = STRING;
+        objects = new String[capacity];
+      }
+      else {
+        kind = OBJECT;
+        objects = new Object[capacity];
+      }
+    }
+
+    // try to store the value in the current representation
+    private boolean store(int row, Object value) {
+      switch (kind) {
+        case LONG:
+          if (value.getClass() != type)
+            return false;
+          if (type == BigDecimal.class) {
+            BigDecimal bd = (BigDecimal)value;
+            if (!isWhole(bd))
+              return false;
+            longs[row] = bd.longValue();
+          }
+          else
+            longs[row] = ((Number)value).longValue();
+          return true;
+        case DOUBLE:
+          if (value.getClass() != type)
+            return false;
+          doubles[row] = ((Number)value).doubleValue();
+          return true;
+        case STRING:
+          if (!(value instanceof String))
+            return false;
+          objects[row] = value;
+          return true;
+        default:
+          objects[row] = value;
+          return true;
+      }
+    }
+
+    // switch to holding the original objects, keeping the first size rows
+    private void convertToObjects(int size) {
+      Object[] a = new Object[capacity];
+      for (int i = 0; i < size; i++)
+        a[i] = get(i);
+      objects = a;
+      longs = null;
+      doubles = null;
+      kind = OBJECT;
+    }
+
+    private void ensureCapacity(int size) {
+      if (size > (nulls.length << 5)) {
+        int[] n = new int[Math.max(nulls.length * 2, (size + 31) >> 5)];
+        System.arraycopy(nulls, 0, n, 0, nulls.length);
+        nulls = n;
+      }
+      if (size <= capacity)
+        return;
+      int newCapacity = Math.max(capacity * 2, size);
+      if (longs != null) {
+        long[] a = new long[newCapacity];
+        System.arraycopy(longs, 0, a, 0, capacity);
+        longs = a;
+      }
+      if (doubles != null) {
+        double[] a = new double[newCapacity];
+        System.arraycopy(doubles, 0, a, 0, capacity);
+        doubles = a;
+      }
+      if (objects != null) {
+        Object[] a = (kind == STRING ? new String[newCapacity] : new Object[newCapacity]);
+        System.arraycopy(objects, 0, a, 0, capacity);
+        objects = a;
+      }
+      capacity = newCapacity;
+    }
+
+    // true if the value has no fractional digits and fits in a long
+    private static boolean isWhole(BigDecimal bd) {
+      return bd.scale() == 0 && bd.unscaledValue().bitLength() < 64;
+    }
+  }
+
 
 
 
@@ -253,15 +253,24 @@ public class UniversalTable {
   /**
    * Sets whether the total number of rows for this is known.
    */
-  public void setNumberOfRowsIsKnown(boolean isKnown) {
+  public synchronized void setNumberOfRowsIsKnown(boolean isKnown) {
     numberOfRowsIsKnown = isKnown;
   }
+
+  /**
+   * Sets the total number of rows and marks it known, together, so that a
+   * count filled in by another thread is never seen half set.
+   */
+  public synchronized void setKnownTotalNumRows(int n) {
+    totalNumRows = n;
+    numberOfRowsIsKnown = true;
+  }
   /**
    * Returns true if the total number of rows is known.
    * Note that if the number of rows is not known, the value of
    * totalNumRows and getTotalNumRows() is not meaningful.
    */
-  public boolean isTotalNumberOfRowsKnown() {
+  public synchronized boolean isTotalNumberOfRowsKnown() {
     return numberOfRowsIsKnown;
   }
 
@@ -334,10 +343,10 @@ public class UniversalTable {
     displayNumRows = n;
   }
 
-  public void setTotalNumRows(int n) {
+  public synchronized void setTotalNumRows(int n) {
     this.totalNumRows = n;
   }
-  public int getTotalNumRows() {
+  public synchronized int getTotalNumRows() {
     return this.totalNumRows;
   }
 
@@ -991,12 +1000,19 @@ public class UniversalTable {
    *  @param out a PrintWriter to take the HTML output
    */
   private void generatePageIndicator (PrintWriter out) {
-    if(!numberOfRowsIsKnown) {
+    boolean known;
+    int total;
+    // the count may be filled in meanwhile by the thread that made it
+    synchronized (this) {
+      known = numberOfRowsIsKnown;
+      total = totalNumRows;
+    }
+    if(!known) {
       generateNoPageIndicator(out);
       return;
     }
 
-    int realLength = Math.max(rows.length, getTotalNumRows());
+    int realLength = Math.max(rows.length, total);
     if (rows.length == 0) return;
     // Page indicator
     int p = 1 + displayStartRow/displayNumRows;
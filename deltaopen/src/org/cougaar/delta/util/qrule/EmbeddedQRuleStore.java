@@ -0,0 +1,680 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.CRC32;
+import org.cougaar.delta.util.*;
+import org.cougaar.delta.util.variant.*;
+
+/**
+ * A QRuleStore kept in a local file, for running the rule engine without a
+ * database.  The file is an append-only log:  each sync writes a complete
+ * new version of the rule, each delete writes a tombstone, and the operators
+ * and operands are written as records of their own.  When the store is
+ * opened the file is mapped into memory and replayed to build an index of
+ * the latest version of each rule; a rule's test tree is not decoded until
+ * the rule is first asked for.
+ * <br><br>
+ * Each record holds its length, a record type, the payload, and a CRC32 of
+ * the type and payload.  Replay stops at the first record that is short or
+ * fails its checksum, so a write torn by a crash loses only that write.
+ * Superseded versions are never removed from the log; export the rules and
+ * import them into a new file to reclaim the space.
+ * <br><br>
+ * A store can be filled from the rule database with the "copy" command of
+ * main, and rules can be imported and exported in the QRuleToXml format by
+ * giving QRuleToXml a connection string of the form "file:&lt;log-file&gt;".
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class EmbeddedQRuleStore implements QRuleStore {
+  // file header:  magic number and format version
+  private static final int MAGIC = 0x51524c47;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+
+  // record types
+  private static final byte OPERATOR_RECORD = 1;
+  private static final byte OPERAND_RECORD = 2;
+  private static final byte RULE_RECORD = 3;
+  private static final byte DELETE_RECORD = 4;
+
+  // the length, type and checksum around each record's payload
+  private static final int RECORD_OVERHEAD = 9;
+
+  // the mapped region starts at this size and doubles as the log grows
+  private static final int INITIAL_MAPPING_SIZE = 64 * 1024;
+
+  // these are shared by every store, so each use locks the formatter
+  private static SimpleDateFormat historyDateFormatter =
+    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+  private static SimpleDateFormat literalDateFormatter =
+    new SimpleDateFormat("MM/dd/yyyy");
+
+  private File file = null;
+  private RandomAccessFile raf = null;
+  private FileChannel channel = null;
+  private MappedByteBuffer log = null;
+  // offset at which the next record will be written
+  private int end = HEADER_SIZE;
+
+  // operators and operands, keyed by database ID (Long)
+  private Hashtable operators = new Hashtable();
+  private Hashtable operands = new Hashtable();
+  // latest version of each rule, keyed by rule ID (Long)
+  private Hashtable ruleIndex = new Hashtable();
+  // rule IDs keyed by upper-case rule name
+  private Hashtable ruleIdsByName = new Hashtable();
+  // rules already decoded from the log, keyed by rule ID
+  private Hashtable decodedRules = new Hashtable();
+  // history entries for each rule, newest first, keyed by rule ID
+  private Hashtable histories = new Hashtable();
+
+  private long nextRuleId = 1;
+  private long nextTestId = 1;
+  private long nextOperatorId = 1;
+  private long nextOperandId = 1;
+
+  /**
+   *  Open the rule log in the given file, creating it if necessary, and
+   *  build the index of its rules.
+   *  @param path the name of the log file
+   *  @throws IOException if the file cannot be opened or is not a rule log
+   */
+  public EmbeddedQRuleStore (String path) throws IOException {
+    file = new File(path);
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+    int size = (int) Math.max(channel.size(), INITIAL_MAPPING_SIZE);
+    boolean fresh = (channel.size() == 0);
+    log = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    if (fresh) {
+      log.putInt(0, MAGIC);
+      log.putInt(4, FORMAT_VERSION);
+      log.force();
+    }
+    else if (log.getInt(0) != MAGIC || log.getInt(4) != FORMAT_VERSION) {
+      close();
+      throw new IOException(path + " is not a rule log");
+    }
+    replay();
+  }
+
+  // read every intact record and build the in-memory index
+  private void replay () throws IOException {
+    int pos = HEADER_SIZE;
+    int capacity = log.capacity();
+    while (pos + RECORD_OVERHEAD <= capacity) {
+      int length = log.getInt(pos);
+      if (length <= 0 || length > capacity - pos - RECORD_OVERHEAD)
+        break;
+      byte type = log.get(pos + 4);
+      byte[] payload = readPayload(pos, length);
+      if (checksum(type, payload) != log.getInt(pos + 5 + length)) {
+        System.err.println("EmbeddedQRuleStore:  ignoring damaged record at " +
+          pos + " in " + file + " and everything after it");
+        break;
+      }
+      apply(type, payload, pos);
+      pos += RECORD_OVERHEAD + length;
+    }
+    end = pos;
+    // clear out any torn record so it cannot be mistaken for data later
+    for (int i = end; i < capacity && i < end + RECORD_OVERHEAD; i++)
+      log.put(i, (byte) 0);
+  }
+
+  // install the contents of one log record into the index
+  private void apply (byte type, byte[] payload, int offset) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    if (type == OPERATOR_RECORD) {
+      QRuleOperator qro = QRuleCodec.readOperator(in);
+      operators.put(new Long(qro.getDatabaseId()), qro);
+      nextOperatorId = Math.max(nextOperatorId, qro.getDatabaseId() + 1);
+    }
+    else if (type == OPERAND_RECORD) {
+      QRuleAccessorOperand qrao = QRuleCodec.readAccessorOperand(in);
+      operands.put(new Long(qrao.getDatabaseId()), qrao);
+      nextOperandId = Math.max(nextOperandId, qrao.getDatabaseId() + 1);
+    }
+    else if (type == RULE_RECORD) {
+      long id = in.readLong();
+      IndexEntry entry = new IndexEntry();
+      entry.offset = offset;
+      entry.version = in.readLong();
+      long maxTestId = in.readLong();
+      entry.name = QRuleCodec.readString(in);
+      QRuleCodec.readString(in);
+      entry.active = in.readBoolean();
+      in.readLong();
+      long modified = in.readLong();
+      String description = QRuleCodec.readString(in);
+      index(id, entry);
+      addHistory(id, modified, description);
+      nextRuleId = Math.max(nextRuleId, id + 1);
+      nextTestId = Math.max(nextTestId, maxTestId + 1);
+    }
+    else if (type == DELETE_RECORD) {
+      unindex(in.readLong());
+    }
+  }
+
+  // make the given entry the latest version of a rule
+  private void index (long id, IndexEntry entry) {
+    Long key = new Long(id);
+    IndexEntry old = (IndexEntry) ruleIndex.get(key);
+    if (old != null && old.name != null)
+      ruleIdsByName.remove(old.name.toUpperCase());
+    ruleIndex.put(key, entry);
+    if (entry.name != null)
+      ruleIdsByName.put(entry.name.toUpperCase(), key);
+    decodedRules.remove(key);
+  }
+
+  // forget everything about a rule
+  private void unindex (long id) {
+    Long key = new Long(id);
+    IndexEntry old = (IndexEntry) ruleIndex.remove(key);
+    if (old != null && old.name != null)
+      ruleIdsByName.remove(old.name.toUpperCase());
+    decodedRules.remove(key);
+    histories.remove(key);
+  }
+
+  private void addHistory (long id, long modified, String description) {
+    Long key = new Long(id);
+    Vector v = (Vector) histories.get(key);
+    if (v == null)
+      histories.put(key, v = new Vector());
+    Hashtable entry = new Hashtable(3);
+    if (modified == -1)
+      entry.put("date", "");
+    else
+      synchronized (historyDateFormatter) {
+        entry.put("date", historyDateFormatter.format(new Date(modified)));
+      }
+    entry.put("user", "");
+    entry.put("description", description == null ? "" : description);
+    v.insertElementAt(entry, 0);
+  }
+
+  public synchronized Enumeration getOperators () {
+    return ((Hashtable) operators.clone()).elements();
+  }
+
+  public synchronized Enumeration getAccessorOperands () {
+    return ((Hashtable) operands.clone()).elements();
+  }
+
+  /**
+   *  Add an operator to the store, or replace the one with the same database
+   *  ID.  An operator without a database ID is given one.
+   *  @param qro the operator
+   *  @throws IOException if the record cannot be written
+   */
+  public synchronized void putOperator (QRuleOperator qro) throws IOException {
+    boolean newId = qro.getDatabaseId() == DBObject.NULL_DATABASE_ID;
+    if (newId)
+      qro.setDatabaseId(nextOperatorId);
+    boolean written = false;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      QRuleCodec.writeOperator(out, qro);
+      out.flush();
+      append(OPERATOR_RECORD, bytes.toByteArray());
+      written = true;
+    }
+    finally {
+      // an operator that was not stored keeps no ID
+      if (newId && !written)
+        qro.setDatabaseId(DBObject.NULL_DATABASE_ID);
+    }
+    operators.put(new Long(qro.getDatabaseId()), qro);
+    nextOperatorId = Math.max(nextOperatorId, qro.getDatabaseId() + 1);
+  }
+
+  /**
+   *  Add an accessor operand to the store, or replace the one with the same
+   *  database ID.  An operand without a database ID is given one.
+   *  @param qrao the operand
+   *  @throws IOException if the record cannot be written
+   */
+  public synchronized void putAccessorOperand (QRuleAccessorOperand qrao)
+      throws IOException
+  {
+    boolean newId = qrao.getDatabaseId() == DBObject.NULL_DATABASE_ID;
+    if (newId)
+      qrao.setDatabaseId(nextOperandId);
+    boolean written = false;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      QRuleCodec.writeAccessorOperand(out, qrao);
+      out.flush();
+      append(OPERAND_RECORD, bytes.toByteArray());
+      written = true;
+    }
+    finally {
+      // an operand that was not stored keeps no ID
+      if (newId && !written)
+        qrao.setDatabaseId(DBObject.NULL_DATABASE_ID);
+    }
+    operands.put(new Long(qrao.getDatabaseId()), qrao);
+    nextOperandId = Math.max(nextOperandId, qrao.getDatabaseId() + 1);
+  }
+
+  public synchronized Vector getRules (boolean includeInactive) {
+    Vector v = new Vector();
+    Enumeration e = ruleIndex.keys();
+    while (e.hasMoreElements()) {
+      Long key = (Long) e.nextElement();
+      IndexEntry entry = (IndexEntry) ruleIndex.get(key);
+      if (includeInactive || entry.active) {
+        QRule r = getRule(key, entry);
+        if (r != null)
+          v.addElement(r);
+      }
+    }
+    return v;
+  }
+
+  public synchronized QRule getRuleByName (String name) {
+    if (name == null)
+      return null;
+    Long key = (Long) ruleIdsByName.get(name.toUpperCase());
+    if (key == null)
+      return null;
+    return getRule(key, (IndexEntry) ruleIndex.get(key));
+  }
+
+  // fetch a rule from the decoded set, decoding it from the log if need be
+  private QRule getRule (Long key, IndexEntry entry) {
+    QRule r = (QRule) decodedRules.get(key);
+    if (r == null) {
+      try {
+        int length = log.getInt(entry.offset);
+        r = decodeRule(readPayload(entry.offset, length));
+        decodedRules.put(key, r);
+      }
+      catch (IOException oh_no) {
+        System.err.println("XXXXXXXXX  Error in EmbeddedQRuleStore::getRule");
+        oh_no.printStackTrace();
+      }
+    }
+    return r;
+  }
+
+  public synchronized void sync (QRule r, String description) throws Exception {
+    // the rule takes its new ID and version only once its record is written
+    long id = r.getDatabaseId();
+    long version = r.getVersion();
+    if (id == DBObject.NULL_DATABASE_ID) {
+      id = nextRuleId;
+      version = 1;
+    }
+    else {
+      IndexEntry old = (IndexEntry) ruleIndex.get(new Long(id));
+      if (old != null)
+        version = old.version + 1;
+      else if (version < 1)
+        version = 1;
+    }
+    long firstTestId = nextTestId;
+    Vector newTests = new Vector();
+    if (r.getTest() != null)
+      assignTestIds(r.getTest(), newTests);
+
+    int offset;
+    boolean written = false;
+    try {
+      offset = append(RULE_RECORD, encodeRule(r, id, version, description));
+      written = true;
+    }
+    finally {
+      if (!written) {
+        // nothing was stored, so take back the test IDs just handed out
+        for (Enumeration e = newTests.elements(); e.hasMoreElements(); )
+          ((QRuleTest) e.nextElement()).setDatabaseId(DBObject.NULL_DATABASE_ID);
+        nextTestId = firstTestId;
+      }
+    }
+    r.setDatabaseId(id);
+    r.setVersion(version);
+
+    IndexEntry entry = new IndexEntry();
+    entry.offset = offset;
+    entry.version = r.getVersion();
+    entry.name = r.getName();
+    entry.active = r.isActive();
+    index(id, entry);
+    decodedRules.put(new Long(id), r);
+    addHistory(id, QRuleCodec.dateValue(r.getModificationDate()), description);
+    nextRuleId = Math.max(nextRuleId, id + 1);
+  }
+
+  // give a database ID to every test that doesn't have one yet, collecting
+  // those tests in newTests
+  private void assignTestIds (QRuleTest qt, Vector newTests) {
+    if (qt.getDatabaseId() == DBObject.NULL_DATABASE_ID) {
+      qt.setDatabaseId(nextTestId++);
+      newTests.addElement(qt);
+    }
+    else
+      nextTestId = Math.max(nextTestId, qt.getDatabaseId() + 1);
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null)
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        assignTestIds((QRuleTest) e.nextElement(), newTests);
+  }
+
+  public synchronized void delete (QRule r) throws Exception {
+    if (ruleIndex.get(new Long(r.getDatabaseId())) == null)
+      return;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(r.getDatabaseId());
+    out.flush();
+    append(DELETE_RECORD, bytes.toByteArray());
+    unindex(r.getDatabaseId());
+  }
+
+  public synchronized Vector getHistory (QRule r) {
+    Vector v = (Vector) histories.get(new Long(r.getDatabaseId()));
+    if (v == null)
+      return new Vector();
+    return (Vector) v.clone();
+  }
+
+  public synchronized Vector hasRuleReference (String designator, String value) {
+    Vector ret = new Vector();
+    if (designator == null || value == null)
+      return ret;
+    Enumeration e = getRules(true).elements();
+    while (e.hasMoreElements()) {
+      QRule r = (QRule) e.nextElement();
+      Enumeration tests = comparisons(r).elements();
+      while (tests.hasMoreElements()) {
+        QRuleComparison c = (QRuleComparison) tests.nextElement();
+        QRuleOperand left = c.getOperand1();
+        QRuleOperand right = c.getOperand2();
+        if (left == null || left.isLiteral() || right == null || !right.isLiteral())
+          continue;
+        QRuleAccessorOperand acc = (QRuleAccessorOperand) left;
+        if ((designator.equalsIgnoreCase(acc.getInternalName()) ||
+            designator.equalsIgnoreCase(acc.getUiType())) &&
+            value.equalsIgnoreCase(literalText((QRuleLiteralOperand) right)))
+        {
+          ret.addElement(r.getName());
+          break;
+        }
+      }
+    }
+    return ret;
+  }
+
+  public synchronized Vector lookupByRegionName (Vector regionNames) {
+    Vector ret = new Vector();
+    if (regionNames.size() == 0)
+      return ret;
+    Enumeration e = getRules(true).elements();
+    while (e.hasMoreElements()) {
+      QRule r = (QRule) e.nextElement();
+      Enumeration tests = comparisons(r).elements();
+      while (tests.hasMoreElements()) {
+        QRuleOperand right = ((QRuleComparison) tests.nextElement()).getOperand2();
+        if (right != null && right.isLiteral() &&
+            regionNames.contains(literalText((QRuleLiteralOperand) right)))
+        {
+          ret.addElement(r.getName());
+          break;
+        }
+      }
+    }
+    return ret;
+  }
+
+  // collect all of the comparisons in a rule's test tree
+  private Vector comparisons (QRule r) {
+    Vector v = new Vector();
+    if (r.getTest() != null)
+      collectComparisons(r.getTest(), v);
+    return v;
+  }
+
+  private void collectComparisons (QRuleTest qt, Vector v) {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null) {
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        collectComparisons((QRuleTest) e.nextElement(), v);
+    }
+    else if (qt.getComparison() != null) {
+      v.addElement(qt.getComparison());
+    }
+  }
+
+  // the text of a literal as it would be stored in the rule database
+  private String literalText (QRuleLiteralOperand lo) {
+    Object v = lo.getValue();
+    if (v == null)
+      return null;
+    else if (v instanceof Vector) {
+      StringBuffer buf = new StringBuffer();
+      Enumeration enu = ((Vector) v).elements();
+      while (enu.hasMoreElements()) {
+        Object elt = enu.nextElement();
+        if (buf.length() > 0)
+          buf.append(" ");
+        if (elt instanceof String)
+          buf.append("\"" + elt + "\"");
+        else
+          buf.append(elt);
+      }
+      return buf.toString();
+    }
+    else if (v instanceof Date) {
+      synchronized (literalDateFormatter) {
+        return literalDateFormatter.format((Date) v);
+      }
+    }
+    return v.toString();
+  }
+
+  public synchronized void close () {
+    try {
+      if (log != null)
+        log.force();
+      if (channel != null)
+        channel.close();
+      if (raf != null)
+        raf.close();
+    }
+    catch (IOException oh_no) {
+      System.err.println("XXXXXXXXX  Error in EmbeddedQRuleStore::close");
+      oh_no.printStackTrace();
+    }
+    log = null;
+    channel = null;
+    raf = null;
+  }
+
+  /**
+   *  Report the number of rules and the size of the log.
+   *  @return a one-line summary of the store
+   */
+  public synchronized String toString () {
+    return "EmbeddedQRuleStore " + file + ":  " + ruleIndex.size() + " rules, " +
+      operators.size() + " operators, " + operands.size() + " operands, " +
+      end + " bytes of log";
+  }
+
+  // ---------------------------------------------------------------------
+  // the log itself
+
+  // write a record at the end of the log and force it to disk; returns the
+  // offset of the new record
+  private int append (byte type, byte[] payload) throws IOException {
+    if (log == null)
+      throw new IOException("EmbeddedQRuleStore " + file + " is closed");
+    int size = RECORD_OVERHEAD + payload.length;
+    ensureCapacity(end + size + RECORD_OVERHEAD);
+    int offset = end;
+    log.position(offset + 4);
+    log.put(type);
+    log.put(payload);
+    log.putInt(checksum(type, payload));
+    // the zero length that ends the log, then the length of this record
+    log.putInt(offset + size, 0);
+    log.putInt(offset, payload.length);
+    log.force();
+    end = offset + size;
+    return offset;
+  }
+
+  // remap the log with room for at least the given number of bytes
+  private void ensureCapacity (int needed) throws IOException {
+    int capacity = log.capacity();
+    if (needed <= capacity)
+      return;
+    while (capacity < needed)
+      capacity *= 2;
+    log.force();
+    log = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+  }
+
+  private byte[] readPayload (int offset, int length) {
+    byte[] payload = new byte[length];
+    ByteBuffer view = log.duplicate();
+    view.position(offset + 5);
+    view.get(payload);
+    return payload;
+  }
+
+  private static int checksum (byte type, byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+
+  // ---------------------------------------------------------------------
+  // rule encoding
+
+  private byte[] encodeRule (QRule r, long id, long version, String description)
+      throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(id);
+    out.writeLong(version);
+    out.writeLong(nextTestId - 1);
+    QRuleCodec.writeString(out, r.getName());
+    QRuleCodec.writeString(out, r.getAction());
+    out.writeBoolean(r.isActive());
+    out.writeLong(QRuleCodec.dateValue(r.getCreationDate()));
+    out.writeLong(QRuleCodec.dateValue(r.getModificationDate()));
+    QRuleCodec.writeString(out, description);
+    QRuleCodec.writeTestTree(out, r);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private QRule decodeRule (byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    long id = in.readLong();
+    long version = in.readLong();
+    in.readLong();
+    QRule r = new QRule(QRuleCodec.readString(in), QRuleCodec.readString(in));
+    r.setDatabaseId(id);
+    r.setVersion(version);
+    r.setActive(in.readBoolean());
+    r.setCreationDate(QRuleCodec.dateObject(in.readLong()));
+    r.setModificationDate(QRuleCodec.dateObject(in.readLong()));
+    QRuleCodec.readString(in);
+    QRuleCodec.readTestTree(in, r, operators, operands);
+    return r;
+  }
+
+  // where the latest version of a rule lives in the log, and the few facts
+  // about it needed without decoding it
+  private static class IndexEntry {
+    public int offset;
+    public long version;
+    public String name;
+    public boolean active;
+  }
+
+  /**
+   *  Provide command-line support for filling a rule log from the rule
+   *  database and for reporting on its contents.
+   */
+  public static void main (String[] argv) {
+    if (argv.length == 3 && argv[1].equalsIgnoreCase("copy")) {
+      EmbeddedQRuleStore store = null;
+      try {
+        store = new EmbeddedQRuleStore(argv[0]);
+        QRuleFactory factory = QRuleFactory.getInstance();
+        factory.setDbConnectionString(argv[2]);
+        for (Enumeration e = factory.getOperators(); e.hasMoreElements(); )
+          store.putOperator((QRuleOperator) e.nextElement());
+        for (Enumeration e = factory.getAccessorOperands(); e.hasMoreElements(); )
+          store.putAccessorOperand((QRuleAccessorOperand) e.nextElement());
+        QueryTable qTable = factory.getQueryTable();
+        qTable.put("showInactive", "Y");
+        qTable.put("showTest", "Y");
+        DataWrapper[] dw = factory.query(qTable).getRows();
+        for (int i = 0; i < dw.length; i++)
+          store.sync((QRule) dw[i].unwrap(), "Rule copied from database");
+        System.out.println(store);
+      }
+      catch (Exception oh_no) {
+        System.out.println("Unable to copy rules--" + oh_no);
+        oh_no.printStackTrace();
+      }
+      finally {
+        if (store != null)
+          store.close();
+      }
+    }
+    else if (argv.length == 2 && argv[1].equalsIgnoreCase("stats")) {
+      try {
+        EmbeddedQRuleStore store = new EmbeddedQRuleStore(argv[0]);
+        System.out.println(store);
+        store.close();
+      }
+      catch (IOException oh_no) {
+        System.out.println("Unable to open " + argv[0] + "--" + oh_no);
+      }
+    }
+    else {
+      System.out.println("Usage:");
+      System.out.println("  java EmbeddedQRuleStore <log-file> copy <db_connection_string>");
+      System.out.println("  java EmbeddedQRuleStore <log-file> stats");
+      System.out.println("Use QRuleToXml with file:<log-file> as the connection string to import and export rules.");
+    }
+  }
+}
@@ -49,7 +49,10 @@ import org.cougaar.delta.util.*;
  * @author ALPINE (alpine-software@bbn.com)
  * @version $Id: QRule.java,v 1.1 2002-04-30 17:33:28 cerys Exp $
  */
-public class QRule extends DBObject {
+public class QRule extends DBObject implements Externalizable {
+  // The version of the format written by writeExternal
+  private static final int WIRE_VERSION = 1;
+
   // An English-translation engine for QRules
   private static QRuleToEnglish englishConverter = new QRuleToEnglish();
 
@@ -86,6 +89,37 @@ public class QRule extends DBObject {
     action = anAction;
   }
 
+  /**
+   * Create an empty rule, to be filled in by readExternal.
+   */
+  public QRule() {
+  }
+
+  /**
+   * Write this rule in a compact form.  The operators and accessor operands
+   * used by the tests are written once each and referred to by database ID,
+   * and literals are written in typed form.
+   * @param out the stream to write to
+   * @exception IOException
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(WIRE_VERSION);
+    QRuleCodec.writeRule(out, this);
+  }
+
+  /**
+   * Read a rule written by writeExternal
+   * @param in the stream to read from
+   * @exception IOException if the rule was written in an unknown format
+   */
+  public void readExternal(ObjectInput in) throws IOException {
+    int v = in.readInt();
+    if (v != WIRE_VERSION)
+      throw new InvalidClassException(getClass().getName(),
+        "unknown rule format version " + v);
+    QRuleCodec.readRule(in, this);
+  }
+
   /**
    * A test stub
    */
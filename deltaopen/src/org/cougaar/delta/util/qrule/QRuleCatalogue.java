@@ -0,0 +1,348 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.util.*;
+
+/**
+ * An in-memory copy of every rule in the rule database, indexed so that
+ * the rule searches made by RuleEditServlet can be answered without a
+ * query.  Rule names are indexed by prefix, through a view sorted by name,
+ * and by substring, through the three-letter sequences they contain; rules
+ * are also indexed by action, by active flag and by the accessors their
+ * tests refer to.  Results are returned in the order of a view sorted on
+ * the requested column, the same order the database would give them.
+ * <br><br>
+ * The catalogue is filled by QRuleFactory and kept current as rules are
+ * saved and deleted through the factory.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+class QRuleCatalogue {
+  // the sort columns with a view, as named by QRuleFactory.getSortByColumn;
+  // the default order is by rule ID
+  static final String NAME_COLUMN = "upper_rule_name";
+  static final String ACTION_COLUMN = "qr.action";
+  static final String ACTIVE_COLUMN = "qr.is_active";
+  private static final String ID_COLUMN = "qr.rule_id";
+
+  // the length of the name fragments in the substring index
+  private static final int GRAM = 3;
+
+  // QRules keyed by rule ID (Long)
+  private Hashtable rules = new Hashtable();
+  // upper-case names keyed by rule ID
+  private Hashtable upperNames = new Hashtable();
+
+  // Each index maps a key to a set of rule IDs, itself a Hashtable mapping
+  // each ID to itself.
+  private Hashtable idsByName = new Hashtable();
+  private Hashtable idsByGram = new Hashtable();
+  private Hashtable idsByAction = new Hashtable();
+  private Hashtable idsByAccessor = new Hashtable();
+  private Hashtable activeIds = new Hashtable();
+  // the index keys under which each rule is filed, keyed by rule ID
+  private Hashtable keysById = new Hashtable();
+
+  // views (arrays of QRules) keyed by sort column, made when first needed
+  // and discarded whenever a rule changes
+  private Hashtable views = new Hashtable();
+
+  /**
+   *  Add a rule, or replace the catalogue's copy of it.
+   *  @param r the rule
+   */
+  public synchronized void put (QRule r) {
+    Long id = new Long(r.getDatabaseId());
+    remove(r.getDatabaseId());
+    rules.put(id, r);
+    Vector keys = new Vector();
+    keysById.put(id, keys);
+
+    String name = (r.getName() == null ? "" : r.getName().toUpperCase());
+    upperNames.put(id, name);
+    file(idsByName, name, id, keys);
+    for (int i = 0; i + GRAM <= name.length(); i++)
+      file(idsByGram, name.substring(i, i + GRAM), id, keys);
+    if (r.getAction() != null)
+      file(idsByAction, r.getAction(), id, keys);
+    if (r.isActive())
+      activeIds.put(id, id);
+    if (r.getTest() != null)
+      fileAccessors(r.getTest(), id, keys);
+    views.clear();
+  }
+
+  /**
+   *  Remove a rule.
+   *  @param ruleId the rule's database ID
+   */
+  public synchronized void remove (long ruleId) {
+    Long id = new Long(ruleId);
+    if (rules.remove(id) == null)
+      return;
+    upperNames.remove(id);
+    activeIds.remove(id);
+    Vector keys = (Vector) keysById.remove(id);
+    for (int i = 0; i < keys.size(); i += 2)
+      unfile((Hashtable) keys.elementAt(i), keys.elementAt(i + 1), id);
+    views.clear();
+  }
+
+  /**
+   *  Find out whether the catalogue can put results in a given order.
+   *  @param sortColumn the sort column, or null for the default order
+   *  @return true if and only if there is a view sorted on the column
+   */
+  public static boolean canSortOn (String sortColumn) {
+    return sortColumn == null || sortColumn.equals(NAME_COLUMN) ||
+      sortColumn.equals(ACTION_COLUMN) || sortColumn.equals(ACTIVE_COLUMN);
+  }
+
+  /**
+   *  Find the rules meeting all of the given criteria.  Null criteria are
+   *  ignored.
+   *  @param exactName a rule name, compared without regard to case
+   *  @param namePattern a pattern for the rule name, compared without
+   *         regard to case, in which '*' or '%' matches any sequence of
+   *         characters and '?' or '_' matches any single character
+   *  @param action the rule's action
+   *  @param accessor the internal name of an accessor referred to by the
+   *         rule's tests, compared without regard to case
+   *  @param showInactive if false, only active rules are returned
+   *  @param sortColumn the column on which to sort, or null for the
+   *         default order
+   *  @param sortDirection 1 for ascending order, -1 for descending
+   *  @return a Vector of the matching QRules
+   */
+  public synchronized Vector find (String exactName, String namePattern,
+      String action, String accessor, boolean showInactive, String sortColumn,
+      int sortDirection)
+  {
+    // the ID sets that constrain the result
+    Vector sets = new Vector();
+    if (exactName != null)
+      sets.addElement(lookup(idsByName, exactName.toUpperCase()));
+    if (action != null)
+      sets.addElement(lookup(idsByAction, action));
+    if (accessor != null)
+      sets.addElement(lookup(idsByAccessor, accessor.toUpperCase()));
+    if (!showInactive)
+      sets.addElement(activeIds);
+    String pattern = null;
+    if (namePattern != null) {
+      pattern = namePattern.toUpperCase().replace('%', '*').replace('_', '?');
+      addNameSets(pattern, sets);
+    }
+
+    // check the members of the smallest set against the others
+    Hashtable smallest = rules;
+    for (int i = 0; i < sets.size(); i++) {
+      Hashtable t = (Hashtable) sets.elementAt(i);
+      if (t.size() < smallest.size())
+        smallest = t;
+    }
+    Hashtable matches = new Hashtable();
+    Enumeration e = smallest.keys();
+    while (e.hasMoreElements()) {
+      Object id = e.nextElement();
+      boolean ok = true;
+      for (int i = 0; ok && i < sets.size(); i++)
+        ok = ((Hashtable) sets.elementAt(i)).containsKey(id);
+      if (ok && pattern != null)
+        ok = QRuleFactory.likeMatch(pattern, 0, (String) upperNames.get(id), 0);
+      if (ok)
+        matches.put(id, id);
+    }
+
+    // read the matches off in order
+    Vector ret = new Vector(matches.size());
+    if (matches.isEmpty())
+      return ret;
+    QRule[] view = getView(sortColumn);
+    if (sortDirection == -1) {
+      for (int i = view.length - 1; i >= 0; i--)
+        if (matches.containsKey(new Long(view[i].getDatabaseId())))
+          ret.addElement(view[i]);
+    }
+    else {
+      for (int i = 0; i < view.length; i++)
+        if (matches.containsKey(new Long(view[i].getDatabaseId())))
+          ret.addElement(view[i]);
+    }
+    return ret;
+  }
+
+  // Add to the list the sets of IDs that a name matching the pattern must
+  // be in:  the names with the pattern's literal prefix, if it has one, and
+  // the names containing each fragment of the literal runs in the pattern.
+  private void addNameSets (String pattern, Vector sets) {
+    int wild = firstWildcard(pattern, 0);
+    if (wild < 0)
+      wild = pattern.length();
+    if (wild > 0) {
+      String prefix = pattern.substring(0, wild);
+      Hashtable withPrefix = new Hashtable();
+      QRule[] view = getView(NAME_COLUMN);
+      int i = lowerBound(view, prefix);
+      while (i < view.length) {
+        Long id = new Long(view[i].getDatabaseId());
+        if (!((String) upperNames.get(id)).startsWith(prefix))
+          break;
+        withPrefix.put(id, id);
+        i++;
+      }
+      sets.addElement(withPrefix);
+    }
+    int start = 0;
+    while (start < pattern.length()) {
+      int end = firstWildcard(pattern, start);
+      if (end < 0)
+        end = pattern.length();
+      for (int i = start; i + GRAM <= end; i++)
+        sets.addElement(lookup(idsByGram, pattern.substring(i, i + GRAM)));
+      start = end + 1;
+    }
+  }
+
+  private static int firstWildcard (String pattern, int from) {
+    for (int i = from; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' || c == '?')
+        return i;
+    }
+    return -1;
+  }
+
+  // the position of the first rule in a view sorted by name whose name is
+  // not less than the given one
+  private int lowerBound (QRule[] view, String name) {
+    int lo = 0;
+    int hi = view.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      String s = (String) upperNames.get(new Long(view[mid].getDatabaseId()));
+      if (s.compareTo(name) < 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  // get the rules sorted on a column, in ascending order, with ties broken
+  // by rule ID
+  private QRule[] getView (String sortColumn) {
+    final String column = (sortColumn == null ? ID_COLUMN : sortColumn);
+    QRule[] view = (QRule[]) views.get(column);
+    if (view != null)
+      return view;
+    view = new QRule[rules.size()];
+    int n = 0;
+    for (Enumeration e = rules.elements(); e.hasMoreElements(); )
+      view[n++] = (QRule) e.nextElement();
+    Arrays.sort(view, new Comparator() {
+      public int compare (Object a, Object b) {
+        QRule ra = (QRule) a;
+        QRule rb = (QRule) b;
+        int c = compareValues(sortValue(ra, column), sortValue(rb, column));
+        if (c != 0)
+          return c;
+        long ia = ra.getDatabaseId();
+        long ib = rb.getDatabaseId();
+        return (ia < ib ? -1 : (ia == ib ? 0 : 1));
+      }
+    });
+    views.put(column, view);
+    return view;
+  }
+
+  // the value of a rule in a sort column, as it appears in the database
+  private String sortValue (QRule r, String column) {
+    if (column.equals(NAME_COLUMN))
+      return (String) upperNames.get(new Long(r.getDatabaseId()));
+    if (column.equals(ACTION_COLUMN))
+      return r.getAction();
+    if (column.equals(ACTIVE_COLUMN))
+      return (r.isActive() ? "Y" : "N");
+    return null;
+  }
+
+  // compare as the database does in ascending order, with nulls last
+  private static int compareValues (String a, String b) {
+    if (a == null)
+      return (b == null ? 0 : 1);
+    if (b == null)
+      return -1;
+    return a.compareTo(b);
+  }
+
+  // file a rule under the accessors referred to by a test tree
+  private void fileAccessors (QRuleTest qt, Long id, Vector keys) {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null) {
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        fileAccessors((QRuleTest) e.nextElement(), id, keys);
+      return;
+    }
+    QRuleComparison c = qt.getComparison();
+    if (c == null)
+      return;
+    fileAccessor(c.getOperand1(), id, keys);
+    fileAccessor(c.getOperand2(), id, keys);
+  }
+
+  private void fileAccessor (QRuleOperand opnd, Long id, Vector keys) {
+    if (opnd == null || opnd.isLiteral())
+      return;
+    String name = ((QRuleAccessorOperand) opnd).getInternalName();
+    if (name != null)
+      file(idsByAccessor, name.toUpperCase(), id, keys);
+  }
+
+  // add a rule to an index, remembering the index and key for its removal
+  private static void file (Hashtable index, Object key, Long id, Vector keys) {
+    Hashtable ids = (Hashtable) index.get(key);
+    if (ids == null) {
+      ids = new Hashtable();
+      index.put(key, ids);
+    }
+    if (ids.put(id, id) == null) {
+      keys.addElement(index);
+      keys.addElement(key);
+    }
+  }
+
+  private static void unfile (Hashtable index, Object key, Long id) {
+    Hashtable ids = (Hashtable) index.get(key);
+    if (ids == null)
+      return;
+    ids.remove(id);
+    if (ids.isEmpty())
+      index.remove(key);
+  }
+
+  private static Hashtable lookup (Hashtable index, Object key) {
+    Hashtable ids = (Hashtable) index.get(key);
+    return (ids == null ? new Hashtable() : ids);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+package org.cougaar.delta.util.qrule;
+
+import java.util.EventObject;
+
+/**
+ * Describes a committed change to a rule:  its creation, a new version, or
+ * its deletion.  The source of the event is the QRuleFactory through which
+ * the change was made.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class QRuleChangeEvent extends EventObject {
+  public static final int RULE_ADDED = 1;
+  public static final int RULE_CHANGED = 2;
+  public static final int RULE_DELETED = 3;
+
+  private int type;
+  private long ruleId;
+  private String ruleName;
+  private long oldVersion;
+  private long newVersion;
+  private transient QRule rule;
+
+  /**
+   * Create a change event
+   * @param source the factory through which the change was made
+   * @param type RULE_ADDED, RULE_CHANGED or RULE_DELETED
+   * @param rule the rule as saved, or as it was before it was deleted
+   * @param oldVersion the version replaced, or 0 for a new rule
+   * @param newVersion the version saved, or 0 for a deleted rule
+   */
+  public QRuleChangeEvent (Object source, int type, QRule rule,
+      long oldVersion, long newVersion)
+  {
+    super(source);
+    this.type = type;
+    this.rule = rule;
+    ruleId = rule.getDatabaseId();
+    ruleName = rule.getName();
+    this.oldVersion = oldVersion;
+    this.newVersion = newVersion;
+  }
+
+  /**
+   * @return RULE_ADDED, RULE_CHANGED or RULE_DELETED
+   */
+  public int getType () {
+    return type;
+  }
+
+  public boolean isDeletion () {
+    return type == RULE_DELETED;
+  }
+
+  /**
+   * @return the database ID of the rule
+   */
+  public long getRuleId () {
+    return ruleId;
+  }
+
+  public String getRuleName () {
+    return ruleName;
+  }
+
+  /**
+   * @return the version replaced by this change, or 0 if the rule is new
+   */
+  public long getOldVersion () {
+    return oldVersion;
+  }
+
+  /**
+   * @return the version saved by this change, or 0 if the rule was deleted
+   */
+  public long getNewVersion () {
+    return newVersion;
+  }
+
+  /**
+   * Get the rule as saved.  For a deletion, this is the rule as it was
+   * before it was deleted.
+   */
+  public QRule getRule () {
+    return rule;
+  }
+
+  public String toString () {
+    String what = type == RULE_ADDED ? "added" :
+      (type == RULE_CHANGED ? "changed" : "deleted");
+    return "Rule " + ruleName + " (" + ruleId + ") " + what + ", version " +
+      oldVersion + " -> " + newVersion;
+  }
+}
@@ -0,0 +1,340 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+import org.cougaar.delta.util.DBObject;
+
+/**
+ * Binary encoding of operators, operands and rule test trees, shared by the
+ * binary rule formats in this package.  Operators and accessor operands
+ * inside a test tree are written as their database IDs and resolved
+ * against tables supplied by the reader, so a tree can only be read back
+ * where the same operator and operand IDs are known.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+class QRuleCodec {
+
+  private QRuleCodec () {
+  }
+
+  static void writeOperator (DataOutput out, QRuleOperator qro)
+      throws IOException
+  {
+    out.writeLong(qro.getDatabaseId());
+    writeString(out, qro.getJessName());
+    writeString(out, qro.getUiName());
+    writeString(out, qro.getOperand1Type());
+    writeString(out, qro.getOperand2Type());
+  }
+
+  static QRuleOperator readOperator (DataInput in) throws IOException {
+    long id = in.readLong();
+    QRuleOperator qro = new QRuleOperator(readString(in), readString(in),
+      readString(in), readString(in));
+    qro.setDatabaseId(id);
+    return qro;
+  }
+
+  static void writeAccessorOperand (DataOutput out, QRuleAccessorOperand qrao)
+      throws IOException
+  {
+    out.writeLong(qrao.getDatabaseId());
+    writeString(out, qrao.getInternalName());
+    writeString(out, qrao.getUiCategory());
+    writeString(out, qrao.getUiName());
+    writeString(out, qrao.getUiType());
+    writeString(out, qrao.getJessType());
+    writeString(out, qrao.getJessAccessor());
+  }
+
+  static QRuleAccessorOperand readAccessorOperand (DataInput in)
+      throws IOException
+  {
+    long id = in.readLong();
+    QRuleAccessorOperand qrao = new QRuleAccessorOperand(readString(in),
+      readString(in), readString(in), readString(in), readString(in),
+      readString(in));
+    qrao.setDatabaseId(id);
+    return qrao;
+  }
+
+  /**
+   *  Write a whole rule, with the operators and accessor operands that its
+   *  tests use, so that it can be read back without the factory's tables.
+   *  Each operator and operand is written once, however many comparisons
+   *  refer to it.
+   */
+  static void writeRule (DataOutput out, QRule r) throws IOException {
+    out.writeLong(r.getDatabaseId());
+    out.writeLong(r.getVersion());
+    writeString(out, r.getName());
+    writeString(out, r.getAction());
+    out.writeBoolean(r.isActive());
+    out.writeLong(dateValue(r.getCreationDate()));
+    out.writeLong(dateValue(r.getModificationDate()));
+
+    Hashtable operators = new Hashtable();
+    Hashtable operands = new Hashtable();
+    if (r.getTest() != null)
+      collectMetadata(r.getTest(), operators, operands);
+    out.writeInt(operators.size());
+    for (Enumeration e = operators.elements(); e.hasMoreElements(); )
+      writeOperator(out, (QRuleOperator) e.nextElement());
+    out.writeInt(operands.size());
+    for (Enumeration e = operands.elements(); e.hasMoreElements(); )
+      writeAccessorOperand(out, (QRuleAccessorOperand) e.nextElement());
+
+    writeTestTree(out, r);
+  }
+
+  /**
+   *  Read a rule written by writeRule into the given (empty) rule.
+   */
+  static void readRule (DataInput in, QRule r) throws IOException {
+    r.setDatabaseId(in.readLong());
+    r.setVersion(in.readLong());
+    r.setName(readString(in));
+    r.setAction(readString(in));
+    r.setActive(in.readBoolean());
+    r.setCreationDate(dateObject(in.readLong()));
+    r.setModificationDate(dateObject(in.readLong()));
+
+    Hashtable operators = new Hashtable();
+    for (int n = in.readInt(); n > 0; n--) {
+      QRuleOperator qro = readOperator(in);
+      operators.put(new Long(qro.getDatabaseId()), qro);
+    }
+    Hashtable operands = new Hashtable();
+    for (int n = in.readInt(); n > 0; n--) {
+      QRuleAccessorOperand qrao = readAccessorOperand(in);
+      operands.put(new Long(qrao.getDatabaseId()), qrao);
+    }
+
+    // unlike readTestTree, leave a rule without tests as it was
+    if (in.readBoolean())
+      readTest(in, r, null, operators, operands);
+  }
+
+  // gather the operators and accessor operands used in a test tree, keyed
+  // by database ID
+  private static void collectMetadata (QRuleTest qt, Hashtable operators,
+      Hashtable operands)
+  {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null) {
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        collectMetadata((QRuleTest) e.nextElement(), operators, operands);
+      return;
+    }
+    QRuleComparison atom = qt.getComparison();
+    if (atom == null)
+      return;
+    QRuleOperator op = atom.getOperator();
+    if (op != null)
+      operators.put(new Long(op.getDatabaseId()), op);
+    collectOperand(atom.getOperand1(), operands);
+    collectOperand(atom.getOperand2(), operands);
+  }
+
+  private static void collectOperand (QRuleOperand op, Hashtable operands) {
+    if (op != null && !op.isLiteral()) {
+      QRuleAccessorOperand qrao = (QRuleAccessorOperand) op;
+      operands.put(new Long(qrao.getDatabaseId()), qrao);
+    }
+  }
+
+  /**
+   *  Write the test tree of a rule, which may be empty.
+   */
+  static void writeTestTree (DataOutput out, QRule r) throws IOException {
+    QRuleLogicalTest root = r.getTest();
+    out.writeBoolean(root != null);
+    if (root != null)
+      writeTest(out, root);
+  }
+
+  /**
+   *  Read a test tree written by writeTestTree and install it in the given
+   *  rule.  A rule without tests gets an empty "AND", as it would from the
+   *  database.
+   *  @param operators QRuleOperators keyed by database ID (Long)
+   *  @param operands QRuleAccessorOperands keyed by database ID (Long)
+   */
+  static void readTestTree (DataInput in, QRule r, Hashtable operators,
+      Hashtable operands) throws IOException
+  {
+    if (in.readBoolean())
+      readTest(in, r, null, operators, operands);
+    else
+      new QRuleLogicalTest(r, null, QRuleTest.LOGICAL_AND);
+  }
+
+  private static void writeTest (DataOutput out, QRuleTest qt)
+      throws IOException
+  {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    QRuleComparison atom = qt.getComparison();
+    if (logic != null) {
+      out.writeByte('L');
+      out.writeLong(qt.getDatabaseId());
+      writeString(out, logic.getLogicalOp());
+      writeString(out, logic.getName());
+      Vector kids = new Vector();
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        kids.addElement(e.nextElement());
+      out.writeInt(kids.size());
+      for (int i = 0; i < kids.size(); i++)
+        writeTest(out, (QRuleTest) kids.elementAt(i));
+    }
+    else {
+      QRuleOperator op = atom.getOperator();
+      out.writeByte('C');
+      out.writeLong(qt.getDatabaseId());
+      writeOperand(out, atom.getOperand1());
+      // a missing operator is read back as none, since no operator has
+      // the null ID
+      out.writeLong(op == null ? DBObject.NULL_DATABASE_ID : op.getDatabaseId());
+      writeOperand(out, atom.getOperand2());
+    }
+  }
+
+  private static void readTest (DataInput in, QRule r, QRuleLogicalTest parent,
+      Hashtable operators, Hashtable operands) throws IOException
+  {
+    byte kind = in.readByte();
+    long id = in.readLong();
+    if (kind == 'L') {
+      QRuleLogicalTest qlt = new QRuleLogicalTest(r, parent, readString(in));
+      qlt.setName(readString(in));
+      qlt.setDatabaseId(id);
+      int n = in.readInt();
+      for (int i = 0; i < n; i++)
+        readTest(in, r, qlt, operators, operands);
+    }
+    else {
+      QRuleOperand left = readOperand(in, operands);
+      QRuleOperator op = (QRuleOperator) operators.get(new Long(in.readLong()));
+      QRuleOperand right = readOperand(in, operands);
+      new QRuleComparison(r, parent, left, op, right).setDatabaseId(id);
+    }
+  }
+
+  // literals are written with their type, as in the rule database, but
+  // with dates and lists kept in binary form; a missing operand and a
+  // literal without a value each have a marker of their own
+  private static void writeOperand (DataOutput out, QRuleOperand op)
+      throws IOException
+  {
+    if (op == null) {
+      out.writeByte('-');
+      return;
+    }
+    if (!op.isLiteral()) {
+      out.writeByte('A');
+      out.writeLong(((QRuleAccessorOperand) op).getDatabaseId());
+      return;
+    }
+    QRuleLiteralOperand lo = (QRuleLiteralOperand) op;
+    Object v = lo.getValue();
+    if (v == null) {
+      out.writeByte('N');
+      return;
+    }
+    out.writeByte('L');
+    writeString(out, lo.getType());
+    if (v instanceof Date) {
+      out.writeLong(((Date) v).getTime());
+    }
+    else if (v instanceof Vector) {
+      Vector list = (Vector) v;
+      out.writeInt(list.size());
+      for (int i = 0; i < list.size(); i++)
+        writeString(out, String.valueOf(list.elementAt(i)));
+    }
+    else {
+      out.writeUTF(v.toString());
+    }
+  }
+
+  private static QRuleOperand readOperand (DataInput in, Hashtable operands)
+      throws IOException
+  {
+    byte kind = in.readByte();
+    if (kind == '-')
+      return null;
+    if (kind == 'A')
+      return (QRuleOperand) operands.get(new Long(in.readLong()));
+    if (kind == 'N')
+      return new QRuleLiteralOperand(null);
+    String type = readString(in);
+    // a literal without a type was written without a value
+    if (type == null)
+      return new QRuleLiteralOperand(null);
+    if (type.equals("Date"))
+      return new QRuleLiteralOperand(new Date(in.readLong()));
+    if (type.equals("Vector")) {
+      Vector list = new Vector();
+      int n = in.readInt();
+      for (int i = 0; i < n; i++)
+        list.addElement(readString(in));
+      return new QRuleLiteralOperand(list);
+    }
+    String value = in.readUTF();
+    if (type.equals("Boolean"))
+      return new QRuleLiteralOperand(new Boolean(value));
+    else if (type.equals("Integer"))
+      return new QRuleLiteralOperand(new Integer(value));
+    else if (type.equals("Long"))
+      return new QRuleLiteralOperand(new Long(value));
+    else if (type.equals("Float"))
+      return new QRuleLiteralOperand(new Float(value));
+    else if (type.equals("Double"))
+      return new QRuleLiteralOperand(new Double(value));
+    else if (type.equals("BigDecimal"))
+      return new QRuleLiteralOperand(new BigDecimal(value));
+    return new QRuleLiteralOperand(value);
+  }
+
+  static void writeString (DataOutput out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null)
+      out.writeUTF(s);
+  }
+
+  static String readString (DataInput in) throws IOException {
+    if (in.readBoolean())
+      return in.readUTF();
+    return null;
+  }
+
+  static long dateValue (Date d) {
+    return d == null ? -1 : d.getTime();
+  }
+
+  static Date dateObject (long t) {
+    return t == -1 ? null : new Date(t);
+  }
+}
@@ -41,15 +41,54 @@ import org.cougaar.delta.plugin.*;
  */
 public class QRuleFactory extends Factory {
 
-  private static Hashtable operators = null;
-  private static Hashtable operatorsByName = null;
-  private static Hashtable operands = null;
-  private static Hashtable operandsByName = null;
+  // guards the warm-up phases
+  private static final Object metadataLock = new Object();
+  // The warm-up phases.  The operator and operand phases each produce a pair
+  // of tables, keyed by database ID and by name; the rule phase produces the
+  // active rules.  Each phase runs at most once for a given rule source.
+  private static WarmUpPhase operatorPhase = null;
+  private static WarmUpPhase operandPhase = null;
+  private static WarmUpPhase rulePhase = null;
+  // the rule phase last handed out by getWarmUpRules, kept for its timing
+  private static WarmUpPhase lastRulePhase = null;
+  // the number of rule changes committed through the factory, and the
+  // number when the rule phase began; if they differ, its rules are stale
+  private static long ruleChangeCount = 0;
+  private static long rulePhaseChangeCount = 0;
+  private static final int BY_ID = 0;
+  private static final int BY_NAME = 1;
+
   private static Cache rules_cache = null;
   private static SimpleDateFormat dateFormatter = new SimpleDateFormat("MM/dd/yyyy");
 
   private static QRuleFactory _instance = null;
 
+  // when set, rules are kept here instead of in the rule database
+  private static QRuleStore ruleStore = null;
+
+  // when set, history entries are written behind through this journal
+  private static QRuleHistoryJournal historyJournal = null;
+  private static final String HISTORY_JOURNAL_PROPERTY =
+    "org.cougaar.delta.qrule.history.journal";
+
+  // the QRuleChangeListeners to be told of each committed change
+  private static Vector ruleChangeListeners = new Vector();
+
+  // Rule names and references, filled from the rule database on first use
+  // and kept current by sync and delete.  The lock is held while the index
+  // is filled, so no change is applied to a partly filled index.
+  private static QRuleReferenceIndex referenceIndex = null;
+  private static final Object referenceLock = new Object();
+
+  // When enabled, rule searches are answered from a catalogue of every
+  // rule, filled on the first search and kept current by sync and delete.
+  // The lock is held while the catalogue is filled, as for the index.
+  private static boolean catalogueEnabled = false;
+  private static QRuleCatalogue ruleCatalogue = null;
+  private static final Object catalogueLock = new Object();
+  private static final String CATALOGUE_PROPERTY =
+    "org.cougaar.delta.qrule.catalogue";
+
   private static final String qbase = "select " +
     "qr.rule_id, qr.version, qr.rule_name, qr.action, qr.creation_date, " +     //  1 -  5
     "qr.is_active, qr.test_rule, upper(qr.rule_name) as upper_rule_name, " +    //  6 -  8
@@ -67,7 +106,7 @@ public class QRuleFactory extends Factory {
    * Fetch the singleton QRuleFactory instance.
    * @return the shared QRuleFactory
    */
-  public static QRuleFactory getInstance() {
+  public static synchronized QRuleFactory getInstance() {
     if (_instance == null) {
       _instance = new QRuleFactory();
     }
@@ -83,74 +122,510 @@ public class QRuleFactory extends Factory {
       rules_cache = new Cache();
       rules_cache.setQueryPrefix("SELECT VERSION, RULE_ID from TEMP_QUAL_RULE where RULE_ID = ");
     }
+    String journalName = System.getProperty(HISTORY_JOURNAL_PROPERTY);
+    if (journalName != null && historyJournal == null)
+      setHistoryJournal(new File(journalName));
+    if (Boolean.getBoolean(CATALOGUE_PROPERTY))
+      catalogueEnabled = true;
   }
 
+  /**
+   *  Answer rule searches (batchQuery, sortBatchQuery and query) from an
+   *  in-memory catalogue of all the rules in the database, or go back to
+   *  querying the database for each search.  The catalogue is filled when
+   *  it is first used, and kept current as rules are saved and deleted
+   *  through this factory; changes made to the database by other means are
+   *  not seen until the catalogue is enabled again.  The catalogue can also
+   *  be enabled by setting the system property
+   *  org.cougaar.delta.qrule.catalogue to "true".
+   *  @param enabled true to use the catalogue
+   */
+  public void setCatalogueEnabled (boolean enabled) {
+    synchronized (catalogueLock) {
+      catalogueEnabled = enabled;
+      ruleCatalogue = null;
+    }
+  }
 
   /**
-   * Load up the cached operators and operands if necessary
+   *  Write rule history entries behind, through a journal kept in the given
+   *  file, instead of inside each save; or, if the argument is null, go back
+   *  to writing them inside the save.  Entries left in the journal by an
+   *  earlier run are written once the journal is opened.  The journal can
+   *  also be named with the system property
+   *  org.cougaar.delta.qrule.history.journal.
+   *  @param f the journal file, or null
    */
-  private void initialize() {
+  public synchronized void setHistoryJournal (File f) {
+    QRuleHistoryJournal old = historyJournal;
+    historyJournal = null;
+    if (old != null)
+      old.close();
+    if (f == null)
+      return;
+    try {
+      historyJournal = new QRuleHistoryJournal(f, this);
+    }
+    catch (IOException ioe) {
+      System.err.println("XXXXXXXXX  Error in QRuleFactory::setHistoryJournal");
+      ioe.printStackTrace();
+    }
+  }
+
+  /**
+   *  Ask to be told of every rule saved or deleted through this factory,
+   *  once the change has been committed.  Changes made by other processes
+   *  are not reported.
+   *  @param l the listener
+   */
+  public void addRuleChangeListener (QRuleChangeListener l) {
+    if (!ruleChangeListeners.contains(l))
+      ruleChangeListeners.addElement(l);
+  }
 
-    if( operators == null ) {
-      String opts = "SELECT OPERATOR_ID, JESS_NAME, UI_NAME, OP1_TYPE, OP2_TYPE " +
-        "FROM TEMP_QUAL_RULE_OPERATOR";
+  public void removeRuleChangeListener (QRuleChangeListener l) {
+    ruleChangeListeners.removeElement(l);
+  }
 
-      operators = new Hashtable();
-      operatorsByName = new Hashtable();
+  // Tell each listener about a committed change.  A listener that fails
+  // does not keep the others from hearing of it.
+  private void fireRuleChange (int type, QRule r, long oldVersion) {
+    long newVersion = (type == QRuleChangeEvent.RULE_DELETED ? 0 : r.getVersion());
+    synchronized (metadataLock) {
+      ruleChangeCount++;
+    }
+    QRuleChangeEvent e = new QRuleChangeEvent(this, type, r, oldVersion, newVersion);
+    Object[] listeners = ruleChangeListeners.toArray();
+    for (int i = 0; i < listeners.length; i++) {
       try {
-        ResultSet rs = doQuery(opts, null);
-        while (rs.next()) {
-          Character c;
-          long dbId = rs.getLong(1);
-          Long key = new Long(dbId);
-          String operName = rs.getString(3);
-          if(operName.equals("!=")){
-            c = new Character('\u2260');  //Unicode value for the "not equal to" sign
-            operName = c.toString();
-          }else if(operName.equals("<=")){
-            c = new Character('\u2264');  //Unicode value for the "less than or equal to" sign
-            operName = c.toString();
-          }else if(operName.equals(">=")){
-            c = new Character('\u2265');  //Unicode value for the "greater than or equal to" sign
-            operName = c.toString();
+        ((QRuleChangeListener) listeners[i]).ruleChanged(e);
+      }
+      catch (Exception ex) {
+        System.err.println("XXXXXXXXX  Error in QRuleFactory::fireRuleChange");
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   *  Write any history entries waiting in the journal to the database.
+   *  @return true if none are left waiting
+   */
+  public boolean flushHistory () {
+    QRuleHistoryJournal journal = historyJournal;
+    return journal == null || journal.flush();
+  }
+
+
+  /**
+   *  Keep rules in the given store instead of the rule database, or go back
+   *  to the database if the argument is null.  The cached operators and
+   *  operands are discarded and reloaded from the new source.  While a store
+   *  is in use, searches (including batchQuery and sortBatchQuery) are
+   *  answered from a rule catalogue filled from the store, whether or not
+   *  the catalogue is enabled, and never reach the database.
+   *  @param s the rule store, or null
+   */
+  public synchronized void setRuleStore (QRuleStore s) {
+    synchronized (metadataLock) {
+      ruleStore = s;
+      operatorPhase = null;
+      operandPhase = null;
+      rulePhase = null;
+      lastRulePhase = null;
+    }
+    synchronized (referenceLock) {
+      referenceIndex = null;
+    }
+    synchronized (catalogueLock) {
+      ruleCatalogue = null;
+    }
+  }
+
+  /**
+   *  Find the store in which rules are being kept.
+   *  @return the rule store, or null if rules are kept in the database
+   */
+  public QRuleStore getRuleStore () {
+    return ruleStore;
+  }
+
+  /**
+   *  Begin loading the operators, the accessor operands and the active rules,
+   *  each on a thread of its own, and return at once.  Methods that need one
+   *  of these pieces wait only for that piece.  Calling warmUp again, or
+   *  after the pieces have been loaded on demand, does no harm.
+   */
+  public void warmUp() {
+    synchronized (metadataLock) {
+      startMetadataPhases();
+      if (rulePhase == null) {
+        rulePhase = new WarmUpPhase("rules") {
+          protected Object load() {
+            Vector v = new Vector();
+            Enumeration e = getAllRules(null);
+            while (e.hasMoreElements())
+              v.addElement(e.nextElement());
+            return v;
+          }
+        };
+        rulePhaseChangeCount = ruleChangeCount;
+        rulePhase.start();
+      }
+    }
+  }
+
+  /**
+   *  Get the active rules loaded by warmUp, waiting for them if necessary.
+   *  The warm-up is started if it has not been already.  The rules of a
+   *  warm-up are handed out once; a later call starts a new one.  If a rule
+   *  has been changed through the factory since the warm-up began, the
+   *  rules are loaded again, so a caller that adds its RuleChangeListener
+   *  before this call misses no change.
+   *  @return the active rules
+   */
+  public Vector getWarmUpRules() {
+    WarmUpPhase p;
+    long changes;
+    synchronized (metadataLock) {
+      warmUp();
+      p = rulePhase;
+      changes = rulePhaseChangeCount;
+    }
+    Vector v = (Vector) p.waitFor();
+    boolean stale;
+    synchronized (metadataLock) {
+      if (rulePhase == p) {
+        rulePhase = null;
+        lastRulePhase = p;
+      }
+      stale = (ruleChangeCount != changes);
+    }
+    if (stale) {
+      v = new Vector();
+      Enumeration e = getAllRules(null);
+      while (e.hasMoreElements())
+        v.addElement(e.nextElement());
+    }
+    if (v == null)
+      return new Vector();
+    return v;
+  }
+
+  /**
+   *  Report how long each finished warm-up phase took.  Phases whose results
+   *  came from elsewhere, e.g. from a rule snapshot, report zero.
+   *  @return elapsed milliseconds (Long) keyed by phase name
+   */
+  public Hashtable getWarmUpTimings() {
+    Hashtable t = new Hashtable();
+    WarmUpPhase[] phases;
+    synchronized (metadataLock) {
+      phases = new WarmUpPhase[] {operatorPhase, operandPhase,
+        (rulePhase != null ? rulePhase : lastRulePhase)};
+    }
+    for (int i = 0; i < phases.length; i++)
+      if (phases[i] != null && phases[i].isDone())
+        t.put(phases[i].getPhaseName(), new Long(phases[i].getElapsed()));
+    return t;
+  }
+
+  // start loading the operators and operands, unless that is under way
+  private void startMetadataPhases() {
+    synchronized (metadataLock) {
+      if (operatorPhase == null) {
+        operatorPhase = new WarmUpPhase("operators") {
+          protected Object load() {
+            return loadOperators();
           }
-          QRuleOperator qro =  new QRuleOperator(
-            rs.getString(2), operName, rs.getString(4), rs.getString(5));
-          qro.setDatabaseId(dbId);
-          operators.put(key, qro);
-          operatorsByName.put(qro.getJessName(), qro);
+        };
+        operatorPhase.start();
+      }
+      if (operandPhase == null) {
+        operandPhase = new WarmUpPhase("operands") {
+          protected Object load() {
+            return loadOperands();
+          }
+        };
+        operandPhase.start();
+      }
+    }
+  }
+
+  // the operator tables, waiting for them to be loaded if need be
+  private Hashtable[] getOperatorTables() {
+    WarmUpPhase p;
+    synchronized (metadataLock) {
+      startMetadataPhases();
+      p = operatorPhase;
+    }
+    Hashtable[] t = (Hashtable[]) p.waitFor();
+    if (t == null)
+      return new Hashtable[] {new Hashtable(), new Hashtable()};
+    return t;
+  }
+
+  // the accessor operand tables, waiting for them to be loaded if need be
+  private Hashtable[] getOperandTables() {
+    WarmUpPhase p;
+    synchronized (metadataLock) {
+      startMetadataPhases();
+      p = operandPhase;
+    }
+    Hashtable[] t = (Hashtable[]) p.waitFor();
+    if (t == null)
+      return new Hashtable[] {new Hashtable(), new Hashtable()};
+    return t;
+  }
+
+  /**
+   * Load up the cached operators and operands if necessary
+   */
+  private void initialize() {
+    getOperatorTables();
+    getOperandTables();
+  }
+
+  // read the operators from the rule store or the database
+  private Hashtable[] loadOperators() {
+    Hashtable ops = new Hashtable();
+    Hashtable opsByName = new Hashtable();
+    QRuleStore store = ruleStore;
+    if (store != null) {
+      for (Enumeration e = store.getOperators(); e.hasMoreElements(); ) {
+        QRuleOperator qro = (QRuleOperator) e.nextElement();
+        ops.put(new Long(qro.getDatabaseId()), qro);
+        opsByName.put(qro.getJessName(), qro);
+      }
+      return new Hashtable[] {ops, opsByName};
+    }
+
+    String opts = "SELECT OPERATOR_ID, JESS_NAME, UI_NAME, OP1_TYPE, OP2_TYPE " +
+      "FROM TEMP_QUAL_RULE_OPERATOR";
+    try {
+      ResultSet rs = doQuery(opts, null);
+      while (rs.next()) {
+        Character c;
+        long dbId = rs.getLong(1);
+        Long key = new Long(dbId);
+        String operName = rs.getString(3);
+        if(operName.equals("!=")){
+          c = new Character('\u2260');  //Unicode value for the "not equal to" sign
+          operName = c.toString();
+        }else if(operName.equals("<=")){
+          c = new Character('\u2264');  //Unicode value for the "less than or equal to" sign
+          operName = c.toString();
+        }else if(operName.equals(">=")){
+          c = new Character('\u2265');  //Unicode value for the "greater than or equal to" sign
+          operName = c.toString();
         }
+        QRuleOperator qro =  new QRuleOperator(
+          rs.getString(2), operName, rs.getString(4), rs.getString(5));
+        qro.setDatabaseId(dbId);
+        ops.put(key, qro);
+        opsByName.put(qro.getJessName(), qro);
       }
-      catch (Exception e) {
-        System.err.println("XXXXXXXXX  Error in QRuleFactory::initialize");
-        e.printStackTrace();
+    }
+    catch (Exception e) {
+      System.err.println("XXXXXXXXX  Error in QRuleFactory::initialize");
+      e.printStackTrace();
+    }
+    return new Hashtable[] {ops, opsByName};
+  }
+
+  // read the accessor operands from the rule store or the database
+  private Hashtable[] loadOperands() {
+    Hashtable opns = new Hashtable();
+    Hashtable opnsByName = new Hashtable();
+    QRuleStore store = ruleStore;
+    if (store != null) {
+      for (Enumeration e = store.getAccessorOperands(); e.hasMoreElements(); ) {
+        QRuleAccessorOperand qrao = (QRuleAccessorOperand) e.nextElement();
+        opns.put(new Long(qrao.getDatabaseId()), qrao);
+        opnsByName.put(qrao.getInternalName(), qrao);
       }
+      return new Hashtable[] {opns, opnsByName};
+    }
+
+    String q = "SELECT ACCESSOR_ID, INTERNAL_NAME, UI_CATEGORY, UI_NAME, " +
+      "UI_TYPE, JESS_TYPE, JESS_ACCESSOR FROM TEMP_QRULE_ACCESSOR_OPERAND";
+    try {
+      ResultSet rs = doQuery(q, null);
+      while (rs.next()) {
+        long dbId = rs.getLong(1);
+        Long key = new Long(dbId);
+        QRuleAccessorOperand qrao = new QRuleAccessorOperand(rs.getString(2),
+          rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+          rs.getString(7));
+        qrao.setDatabaseId(dbId);
+        opns.put(key, qrao);
+        opnsByName.put(qrao.getInternalName(), qrao);
+      }
+    }
+    catch (Exception e) {
+      System.err.println("XXXXXXXXX  Error in QRuleFactory::initialize");
+      e.printStackTrace();
+    }
+    return new Hashtable[] {opns, opnsByName};
+  }
+
+  // install operators and operands read from somewhere other than the
+  // database, such as a rule snapshot, unless they are already loaded or
+  // being loaded
+  void adoptMetadata(Hashtable ops, Hashtable opns) {
+    Hashtable opsByName = new Hashtable();
+    for (Enumeration e = ops.elements(); e.hasMoreElements(); ) {
+      QRuleOperator qro = (QRuleOperator) e.nextElement();
+      opsByName.put(qro.getJessName(), qro);
+    }
+    Hashtable opnsByName = new Hashtable();
+    for (Enumeration e = opns.elements(); e.hasMoreElements(); ) {
+      QRuleAccessorOperand qrao = (QRuleAccessorOperand) e.nextElement();
+      opnsByName.put(qrao.getInternalName(), qrao);
+    }
+    synchronized (metadataLock) {
+      if (ruleStore != null)
+        return;
+      if (operatorPhase == null)
+        operatorPhase = new WarmUpPhase("operators",
+          new Hashtable[] {ops, opsByName});
+      if (operandPhase == null)
+        operandPhase = new WarmUpPhase("operands",
+          new Hashtable[] {opns, opnsByName});
+    }
+  }
+
+  /**
+   *  One piece of the factory's warm-up, loaded on a thread of its own.
+   *  Callers needing the piece wait for it with waitFor, which also makes
+   *  everything the loading thread did visible to them.
+   */
+  private class WarmUpPhase extends Thread {
+    private String phaseName;
+    private boolean done = false;
+    private Object result = null;
+    private long elapsed = 0;
+
+    public WarmUpPhase(String name) {
+      super("QRuleFactory warm-up: " + name);
+      phaseName = name;
+      setDaemon(true);
+    }
+
+    // a phase whose result is already at hand; it is never started
+    public WarmUpPhase(String name, Object r) {
+      this(name);
+      result = r;
+      done = true;
     }
-    if( operands == null ) {
-      String opns = "SELECT ACCESSOR_ID, INTERNAL_NAME, UI_CATEGORY, UI_NAME, " +
-        "UI_TYPE, JESS_TYPE, JESS_ACCESSOR FROM TEMP_QRULE_ACCESSOR_OPERAND";
 
-      operands = new Hashtable();
-      operandsByName = new Hashtable();
+    // produce the result of this phase
+    protected Object load() throws Exception {
+      return null;
+    }
+
+    public void run() {
+      long start = System.currentTimeMillis();
+      Object r = null;
       try {
-        ResultSet rs = doQuery(opns, null);
-        while (rs.next()) {
-          long dbId = rs.getLong(1);
-          Long key = new Long(dbId);
-          QRuleAccessorOperand qrao = new QRuleAccessorOperand(rs.getString(2),
-            rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
-            rs.getString(7));
-          qrao.setDatabaseId(dbId);
-          operands.put(key, qrao);
-          operandsByName.put(qrao.getInternalName(), qrao);
-        }
+        r = load();
       }
       catch (Exception e) {
-        System.err.println("XXXXXXXXX  Error in QRuleFactory::initialize");
+        System.err.println("XXXXXXXXX  Error in QRuleFactory::warmUp (" +
+          phaseName + ")");
         e.printStackTrace();
       }
+      finally {
+        synchronized (this) {
+          result = r;
+          elapsed = System.currentTimeMillis() - start;
+          done = true;
+          notifyAll();
+        }
+      }
+    }
+
+    public synchronized Object waitFor() {
+      while (!done) {
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+        }
+      }
+      return result;
     }
 
+    public synchronized boolean isDone() {
+      return done;
+    }
+
+    public synchronized long getElapsed() {
+      return elapsed;
+    }
+
+    public String getPhaseName() {
+      return phaseName;
+    }
+  }
+
+  // put a rule obtained elsewhere, such as from a rule snapshot, into the
+  // rule cache; the usual version check applies when it is next fetched
+  void cacheRule(QRule r) {
+    if (ruleStore == null)
+      rules_cache.store(new Long(r.getDatabaseId()), r);
+  }
+
+  /**
+   *  Save the given rules, with the operators and operands, as a rule
+   *  snapshot.
+   *  @param f the snapshot file
+   *  @param rules the QRules to be saved
+   *  @throws IOException if the snapshot cannot be written
+   *  @see QRuleSnapshot
+   */
+  public void writeSnapshot(File f, Vector rules) throws IOException {
+    QRuleSnapshot.write(f, this, rules);
+  }
+
+  /**
+   *  Read a rule snapshot written by writeSnapshot.
+   *  @param f the snapshot file
+   *  @return the snapshot
+   *  @throws IOException if the snapshot cannot be read
+   *  @see QRuleSnapshot
+   */
+  public QRuleSnapshot readSnapshot(File f) throws IOException {
+    return QRuleSnapshot.read(f, this);
+  }
+
+  /**
+   *  Get the current version of every active rule, without loading the
+   *  rules themselves.
+   *  @param conn a database connection, or null to use one from the pool
+   *  @return rule versions (Long) keyed by rule ID (Long)
+   *  @throws Exception if the query fails
+   */
+  public Hashtable getActiveRuleVersions(Connection conn) throws Exception {
+    final Hashtable versions = new Hashtable();
+    if (ruleStore != null) {
+      initialize();
+      Enumeration e = ruleStore.getRules(false).elements();
+      while (e.hasMoreElements()) {
+        QRule r = (QRule) e.nextElement();
+        versions.put(new Long(r.getDatabaseId()), new Long(r.getVersion()));
+      }
+      return versions;
+    }
+    doStreamingQuery(
+      "select rule_id, version from temp_qual_rule where is_active = 'Y'", conn,
+      new RowHandler() {
+      public boolean handleRow(ResultSet rs) throws Exception {
+        versions.put(new Long(rs.getLong(1)), new Long(rs.getLong(2)));
+        return true;
+      }
+    });
+    return versions;
   }
 
   /**
@@ -159,8 +634,7 @@ public class QRuleFactory extends Factory {
    *  @return The corresponding operator object.
    */
   public QRuleOperator getOperator (Object operatorType) {
-    initialize();
-    return((QRuleOperator)operators.get(operatorType));
+    return((QRuleOperator)getOperatorTables()[BY_ID].get(operatorType));
   }
 
   /**
@@ -169,8 +643,7 @@ public class QRuleFactory extends Factory {
    *  @return The corresponding operator object.
    */
   public QRuleOperator getOperatorByName (String name) {
-    initialize();
-    return (QRuleOperator) operatorsByName.get(name);
+    return (QRuleOperator) getOperatorTables()[BY_NAME].get(name);
   }
 
   /**
@@ -179,8 +652,7 @@ public class QRuleFactory extends Factory {
    *  @return The corresponding accessor operand object.
    */
   public QRuleAccessorOperand getAccessorOperand (Object operandType) {
-    initialize();
-    return((QRuleAccessorOperand)operands.get(operandType));
+    return((QRuleAccessorOperand)getOperandTables()[BY_ID].get(operandType));
   }
 
   /**
@@ -189,8 +661,7 @@ public class QRuleFactory extends Factory {
    *  @return The corresponding accessor operand object.
    */
   public QRuleAccessorOperand getAccessorOperandByName (String name) {
-    initialize();
-    return (QRuleAccessorOperand) operandsByName.get(name);
+    return (QRuleAccessorOperand) getOperandTables()[BY_NAME].get(name);
   }
 
   /**
@@ -198,8 +669,7 @@ public class QRuleFactory extends Factory {
    * @return The operator objects.
    */
   public Enumeration getOperators(){
-    initialize();
-    return(operators.elements());
+    return(getOperatorTables()[BY_ID].elements());
   }
 
   /**
@@ -208,8 +678,7 @@ public class QRuleFactory extends Factory {
    * @return The corresponding accessor operand object.
    */
   public Enumeration getAccessorOperands() {
-    initialize();
-    return(operands.elements());
+    return(getOperandTables()[BY_ID].elements());
   }
 
 
@@ -220,6 +689,8 @@ public class QRuleFactory extends Factory {
    */
   public synchronized Vector lookupByRegionName(Vector regionNames, Connection conn) throws SQLException
   {
+    if (ruleStore != null)
+      return ruleStore.lookupByRegionName(regionNames);
     Vector ret = new Vector();
     try {
       if (regionNames.size() > 0) {
@@ -243,38 +714,43 @@ public class QRuleFactory extends Factory {
   }
 
   // construct a set of rules based on an SQL query String
-  private Vector getRuleInfo (String q, Connection conn) {
+  private Vector getRuleInfo (String q, final Connection conn) {
     initialize();
 
     // store the rules in a Vector
-    Vector rules = new Vector();
+    final Vector rules = new Vector();
     // keep track of the ones that need to have their tests installed
-    Vector incompleteRules = new Vector();
-    // holder for rules being constructed
-    QRule rule;
+    final Vector incompleteRules = new Vector();
 
     try {
-      ResultSet rs = doQuery(q, conn);
-      // loop through the result set and grab rule information
-      while (rs.next()) {
-        long dbId = rs.getLong(1);
-        long version = rs.getLong(2);
-        Long ruleId = new Long(dbId);
-        if ((rule = (QRule) rules_cache.check(ruleId, conn)) != null) {
-          rules.addElement(rule);
-        } else {
-          rule = new QRule(rs.getString(3), rs.getString(4));
-          rule.setVersion(version);
-          rule.setDatabaseId(dbId);
-          rule.setCreationDate(rs.getDate(5));
-          String flag = rs.getString(6);
-          rule.setActive(flag != null && flag.equalsIgnoreCase("Y"));
-          rule.setModificationDate(rs.getDate(9));
-          rules.addElement(rule);
-          incompleteRules.addElement(rule);
-          rules_cache.store(ruleId, rule);
+      // loop through the rows as they arrive and grab rule information
+      doStreamingQuery(q, conn, new RowHandler() {
+        public boolean handleRow(ResultSet rs) throws Exception {
+          QRule rule;
+          long dbId = rs.getLong(1);
+          long version = rs.getLong(2);
+          Long ruleId = new Long(dbId);
+          // the row carries the current version, so check the cached copy
+          // against it rather than take another connection while the
+          // cursor is open
+          rule = (QRule) rules_cache.getWithoutCheck(ruleId);
+          if (rule != null && rule.getVersion() == version) {
+            rules.addElement(rule);
+          } else {
+            rule = new QRule(rs.getString(3), rs.getString(4));
+            rule.setVersion(version);
+            rule.setDatabaseId(dbId);
+            rule.setCreationDate(rs.getDate(5));
+            String flag = rs.getString(6);
+            rule.setActive(flag != null && flag.equalsIgnoreCase("Y"));
+            rule.setModificationDate(rs.getDate(9));
+            rules.addElement(rule);
+            incompleteRules.addElement(rule);
+            rules_cache.store(ruleId, rule);
+          }
+          return true;
         }
-      }
+      });
       // now grab the tests for incomplete rules
       for (Enumeration e = incompleteRules.elements(); e.hasMoreElements(); )
         getRuleTests((QRule) e.nextElement(), conn);
@@ -288,58 +764,61 @@ public class QRuleFactory extends Factory {
   }
 
   // assemble and install the test hierarchy for a given QRule
-  private void getRuleTests (QRule q, Connection conn) {
+  private void getRuleTests (final QRule q, Connection conn) {
     // keep a table of tests for quick reference
-    Hashtable tests = new Hashtable();
+    final Hashtable tests = new Hashtable();
     // also for quick reference, keep the root test handy
-    QRuleTest root = null;
+    final QRuleTest[] root = new QRuleTest[1];
     try {
-      ResultSet rs = doQuery(
-        testQueryBase + " where rule_id = " + q.getDatabaseId(), conn);
-      while (rs.next()) {
-        QRuleTest qt = null;
-        QRuleLogicalTest parent = null;
-        long dbId = rs.getLong(1);
-        long parentId = rs.getLong(2);
-        Long key = new Long(dbId);
-        Long parentKey = new Long(parentId);
-        String type = rs.getString(3);
-        if (type == null || type.length() == 0) {
-          // not a logical operator--do the normal thing
-          QRuleOperator op = getOperator(new Long(rs.getLong(4)));
-          QRuleOperand left = processOperand(rs.getString(5), rs.getString(6),
-            rs.getObject(7), new Long(rs.getLong(8)));
-          QRuleOperand right = processOperand(rs.getString(9), rs.getString(10),
-            rs.getObject(11), new Long(rs.getLong(12)));
-          qt = new QRuleComparison(left, op, right);
-        }
-        else {
-          // this is a logical operation--check for an existing stand-in
-          // (see case III below)
-          QRuleLogicalTest qlt = (QRuleLogicalTest) tests.get(key);
-          if (qlt == null)
-            tests.put(key, qlt = new QRuleLogicalTest(type));
-          else
-            qlt.setLogicalOp(type);
-          qlt.setName(rs.getString(13));
-          qt = qlt;
-        }
-        qt.setRule(q);
-        qt.setDatabaseId(dbId);
-        // case I:  no parent--this is the root test
-        if (parentId == DBObject.NULL_DATABASE_ID)
-          root = qt;
-        // case II:  parent is already in the table--add this one as a child
-        else if ((parent = (QRuleLogicalTest) tests.get(parentKey)) != null)
-          qt.setParent(parent);
-        // case III:  parent not yet found--create a stand-in
-        else {
-          parent = new QRuleLogicalTest(null);
-          qt.setParent(parent);
-          tests.put(parentKey, parent);
+      doStreamingQuery(
+        testQueryBase + " where rule_id = " + q.getDatabaseId(), conn,
+        new RowHandler() {
+        public boolean handleRow(ResultSet rs) throws Exception {
+          QRuleTest qt = null;
+          QRuleLogicalTest parent = null;
+          long dbId = rs.getLong(1);
+          long parentId = rs.getLong(2);
+          Long key = new Long(dbId);
+          Long parentKey = new Long(parentId);
+          String type = rs.getString(3);
+          if (type == null || type.length() == 0) {
+            // not a logical operator--do the normal thing
+            QRuleOperator op = getOperator(new Long(rs.getLong(4)));
+            QRuleOperand left = processOperand(rs.getString(5), rs.getString(6),
+              rs.getObject(7), new Long(rs.getLong(8)));
+            QRuleOperand right = processOperand(rs.getString(9), rs.getString(10),
+              rs.getObject(11), new Long(rs.getLong(12)));
+            qt = new QRuleComparison(left, op, right);
+          }
+          else {
+            // this is a logical operation--check for an existing stand-in
+            // (see case III below)
+            QRuleLogicalTest qlt = (QRuleLogicalTest) tests.get(key);
+            if (qlt == null)
+              tests.put(key, qlt = new QRuleLogicalTest(type));
+            else
+              qlt.setLogicalOp(type);
+            qlt.setName(rs.getString(13));
+            qt = qlt;
+          }
+          qt.setRule(q);
+          qt.setDatabaseId(dbId);
+          // case I:  no parent--this is the root test
+          if (parentId == DBObject.NULL_DATABASE_ID)
+            root[0] = qt;
+          // case II:  parent is already in the table--add this one as a child
+          else if ((parent = (QRuleLogicalTest) tests.get(parentKey)) != null)
+            qt.setParent(parent);
+          // case III:  parent not yet found--create a stand-in
+          else {
+            parent = new QRuleLogicalTest(null);
+            qt.setParent(parent);
+            tests.put(parentKey, parent);
+          }
+          return true;
         }
-      }
-      q.setTest(root);
+      });
+      q.setTest(root[0]);
     }
     catch (Exception oh_no) {
       // if a problem occurs, install an empty "AND" operator as the root
@@ -381,6 +860,11 @@ public class QRuleFactory extends Factory {
     return ret;
   }
 
+  // rule_id is unique, so rule searches can be paged with keyset queries
+  protected String getUniqueKeyColumn() {
+    return "qr.rule_id";
+  }
+
   // get an enumeration of rules from an SQL query
   protected Enumeration getRules (String q, Connection conn) {
     return getRuleInfo(q, conn).elements();
@@ -391,17 +875,30 @@ public class QRuleFactory extends Factory {
    * @return the whole shebang
    */
   public Enumeration getAllRules (Connection conn) {
+    if (ruleStore != null)
+      return getStoredRules();
     String q = qbase + " where qr.is_active = 'Y'";
     return getRules(q, conn);
   }
   public Enumeration getAllRules () {
+    if (ruleStore != null)
+      return getStoredRules();
     Connection conn = this.getConnection();
     String q = qbase + " where qr.is_active = 'Y'";
     return getRules(q, conn);
   }
 
+  // the active rules from the rule store
+  private Enumeration getStoredRules () {
+    initialize();
+    return ruleStore.getRules(false).elements();
+  }
 
   public QRule getNamedRuleFromCache(String name) {
+    if (ruleStore != null) {
+      initialize();
+      return ruleStore.getRuleByName(name);
+    }
     Enumeration e = rules_cache.elements();
     while (e.hasMoreElements()) {
       QRule rule = (QRule)e.nextElement();
@@ -441,7 +938,9 @@ public class QRuleFactory extends Factory {
         op = new QRuleLiteralOperand(new Float((String) value));
       }
       else if (type.equals("Date")) {
-        op = new QRuleLiteralOperand(dateFormatter.parse((String) value));
+        synchronized (dateFormatter) {
+          op = new QRuleLiteralOperand(dateFormatter.parse((String) value));
+        }
       }
       else if (type.equals("Vector")) {
         String listType = null;
@@ -453,7 +952,7 @@ public class QRuleFactory extends Factory {
       }
     }
     else {
-      op = (QRuleOperand) operands.get(opAccID);
+      op = (QRuleOperand) getOperandTables()[BY_ID].get(opAccID);
     }
     return op;
   }
@@ -524,7 +1023,7 @@ public class QRuleFactory extends Factory {
 
   // Convert the argument to a string, enclosing it in quotation marks,
   // if it's already a string
-  private String quoteStrings (Object o) {
+  private static String quoteStrings (Object o) {
     if (o instanceof String)
       return "\"" + o + "\"";
     return o.toString();
@@ -543,7 +1042,19 @@ public class QRuleFactory extends Factory {
   protected String stringize (Object v) {
     if (v == null)
       return "null";
-    else if (v instanceof Vector) {
+    else
+      return super.stringize(literalText(v));
+  }
+
+  /**
+   *  Give the text under which a literal value is stored in the database,
+   *  before it is quoted for SQL:  Vectors as described for stringize, Dates
+   *  in the dateFormatter form, and anything else as its toString().
+   *  @param v The non-null value to be converted
+   *  @return the stored text of the value
+   */
+  static String literalText (Object v) {
+    if (v instanceof Vector) {
       StringBuffer buf = new StringBuffer();
       Enumeration enu = ((Vector) v).elements();
       if (enu.hasMoreElements()) {
@@ -553,13 +1064,15 @@ public class QRuleFactory extends Factory {
           buf.append(quoteStrings(enu.nextElement()));
         }
       }
-      return super.stringize(buf);
+      return buf.toString();
     }
     else if (v instanceof java.util.Date) {
-      return super.stringize(dateFormatter.format((java.util.Date) v));
+      synchronized (dateFormatter) {
+        return dateFormatter.format((java.util.Date) v);
+      }
     }
     else {
-      return super.stringize(v);
+      return v.toString();
     }
   }
 
@@ -570,6 +1083,10 @@ public class QRuleFactory extends Factory {
    *  a String value identifying the scrutinized entity
    *  <br><br>
    *  The current implementation does not support lists.
+   *  <br><br>
+   *  The answer comes from an index of the rule tests, which is read from
+   *  the database on first use and kept current as rules are saved and
+   *  deleted through this factory.
    *
    *  @param designator the internal name of the accessor that would make
    *         reference to the type of entity under investigation
@@ -580,6 +1097,14 @@ public class QRuleFactory extends Factory {
     Vector ret = new Vector();
     if (designator == null || value == null)
       return ret;
+    if (ruleStore != null) {
+      initialize();
+      return ruleStore.hasRuleReference(designator, value);
+    }
+
+    QRuleReferenceIndex index = getReferenceIndex();
+    if (index != null)
+      return index.getReferringRules(designator, value);
 
     String desigStr = stringize(designator.toUpperCase()).toString();
 
@@ -610,6 +1135,8 @@ public class QRuleFactory extends Factory {
 
   /**
    *  Check the database for the existence of a QRule with the given name.
+   *  Like hasRuleReference, this is answered from the rule index when it
+   *  is available, and the comparison ignores case.
    *  @param name the name sought
    *  @return true if and only if the named rule can be found in the database
    */
@@ -617,6 +1144,13 @@ public class QRuleFactory extends Factory {
     boolean ret = false;
     if (name == null)
       return ret;
+    if (ruleStore != null) {
+      initialize();
+      return ruleStore.getRuleByName(name) != null;
+    }
+    QRuleReferenceIndex index = getReferenceIndex();
+    if (index != null)
+      return index.containsName(name);
     String q_str = "select unique rule_name from temp_qual_rule " +
       "where upper(rule_name) = " + stringize(name.toUpperCase());
     try {
@@ -630,6 +1164,110 @@ public class QRuleFactory extends Factory {
     return ret;
   }
 
+  // Get the index of rule names and references, filling it from the rule
+  // database if necessary.  If it cannot be filled, return null, and the
+  // callers query the database as before.
+  private QRuleReferenceIndex getReferenceIndex () {
+    synchronized (referenceLock) {
+      if (referenceIndex != null)
+        return referenceIndex;
+      final QRuleReferenceIndex index = new QRuleReferenceIndex();
+      try {
+        doStreamingQuery("select rule_id, rule_name from temp_qual_rule", null,
+          new RowHandler() {
+          public boolean handleRow(ResultSet rs) throws Exception {
+            index.putName(rs.getLong(1), rs.getString(2));
+            return true;
+          }
+        });
+        doStreamingQuery(
+          "select t.rule_id, a.internal_name, a.ui_type, t.operand_2_literal_value" +
+          " from temp_qual_rule_test t, temp_qrule_accessor_operand a" +
+          " where t.operand_1_accessor_id = a.accessor_id" +
+          " and t.operand_2_literal_value is not null", null,
+          new RowHandler() {
+          public boolean handleRow(ResultSet rs) throws Exception {
+            index.putReference(rs.getLong(1), rs.getString(2), rs.getString(3),
+              rs.getString(4));
+            return true;
+          }
+        });
+      }
+      catch (Exception oh_no) {
+        System.err.println("XXXXXXXXX  Error in QRuleFactory::getReferenceIndex");
+        oh_no.printStackTrace();
+        return null;
+      }
+      referenceIndex = index;
+      return index;
+    }
+  }
+
+  // bring the index and the catalogue, if they have been filled, up to
+  // date with a committed change
+  private void updateIndexes (QRule r, boolean deleted) {
+    synchronized (referenceLock) {
+      if (referenceIndex != null) {
+        if (deleted)
+          referenceIndex.remove(r.getDatabaseId());
+        else
+          referenceIndex.put(r);
+      }
+    }
+    synchronized (catalogueLock) {
+      if (ruleCatalogue != null) {
+        if (deleted)
+          ruleCatalogue.remove(r.getDatabaseId());
+        else
+          ruleCatalogue.put(r);
+      }
+    }
+  }
+
+  // Get the rule catalogue, filling it from the rule store or the database
+  // if necessary.  With a rule store the catalogue is always used.  Return
+  // null if the catalogue is not enabled or cannot be filled.
+  private QRuleCatalogue getCatalogue () {
+    synchronized (catalogueLock) {
+      if (ruleCatalogue != null)
+        return ruleCatalogue;
+      QRuleCatalogue catalogue = new QRuleCatalogue();
+      QRuleStore store = ruleStore;
+      if (store != null) {
+        initialize();
+        for (Enumeration e = store.getRules(true).elements(); e.hasMoreElements(); )
+          catalogue.put((QRule) e.nextElement());
+        ruleCatalogue = catalogue;
+        return catalogue;
+      }
+      if (!catalogueEnabled)
+        return null;
+      Connection conn = getConnection();
+      try {
+        Vector v = getRuleInfo(qbase, conn);
+        // getRuleInfo reports its errors and returns what it could read, so
+        // make sure nothing is missing
+        if (v.size() != doCountQuery("select count(*) as cnt from temp_qual_rule")) {
+          System.err.println(
+            "XXXXXXXXX  Error in QRuleFactory::getCatalogue - incomplete rule set");
+          return null;
+        }
+        for (Enumeration e = v.elements(); e.hasMoreElements(); )
+          catalogue.put((QRule) e.nextElement());
+      }
+      catch (Exception oh_no) {
+        System.err.println("XXXXXXXXX  Error in QRuleFactory::getCatalogue");
+        oh_no.printStackTrace();
+        return null;
+      }
+      finally {
+        close_connection(conn);
+      }
+      ruleCatalogue = catalogue;
+      return catalogue;
+    }
+  }
+
   /**
    *  Return a list of the query parameters recognized as valid for finding
    *  rules in the database.
@@ -637,8 +1275,8 @@ public class QRuleFactory extends Factory {
    */
   public Object[] getParameterList () {
     return new String[] {"ruleName", "exactRuleName", "contract", "customer",
-      "itemID", "action", "maxRows", "showGlobal", "showLta", "showItem",
-      "showTest", "showInactive"};
+      "itemID", "action", "accessor", "maxRows", "showGlobal", "showLta",
+      "showItem", "showTest", "showInactive"};
   }
 
   /**
@@ -654,6 +1292,8 @@ public class QRuleFactory extends Factory {
    *      not clear that this is a useful search criterion</li>
    *    <li>itemId -- a substring of the NSN for NSN-specific rules</li>
    *    <li>action -- the rule's action (e.g., "Exclude", "Must-use", etc.)</li>
+   *    <li>accessor -- the internal name of an accessor used in the rule's
+   *      tests</li>
    *    <li>showGlobal -- if non-null, matching global rules are included among
    *      those returned by the query</li>
    *    <li>showLta -- if non-null, matching LTA-specific rules are returned</li>
@@ -678,6 +1318,7 @@ public class QRuleFactory extends Factory {
     String ruleName = (String) request.get("ruleName");
     String exactRuleName = (String) request.get("exactRuleName");
     String action = (String) request.get("action");
+    String accessor = (String) request.get("accessor");
     boolean showTest = (request.get("showTest") != null);
     boolean showInactive = (request.get("showInactive") != null);
 
@@ -698,6 +1339,15 @@ public class QRuleFactory extends Factory {
       buf.append("qr.action = '" + action + "'");
     }
 
+    if (accessor != null && !accessor.equals("")) {
+      if (buf.length() > 0) buf.append(" and ");
+      buf.append("exists (select t.rule_id from temp_qual_rule_test t, " +
+        "temp_qrule_accessor_operand a where t.rule_id = qr.rule_id and " +
+        "(t.operand_1_accessor_id = a.accessor_id or " +
+        "t.operand_2_accessor_id = a.accessor_id) and upper(a.internal_name) = " +
+        stringize(accessor.toUpperCase()) + ")");
+    }
+
     if (!showInactive) {
       if (buf.length() > 0) buf.append(" and ");
       buf.append("qr.is_active = 'Y'");
@@ -718,6 +1368,58 @@ public class QRuleFactory extends Factory {
     return ret;
   }
 
+  /**
+   *  Answer a batch search from the rule catalogue, applying the same
+   *  criteria as whereString.  With a rule store every search is answered
+   *  this way, in the default order if the catalogue has no view in the
+   *  requested one; otherwise the catalogue is used if it is enabled and has
+   *  such a view.  processQuery comes here too, through processBatchQuery.
+   *  @return the matching rules, or null to search the database
+   */
+  protected Vector findInMemory (Map request, String sortColumn,
+      int sortDirection)
+  {
+    boolean fromStore = (ruleStore != null);
+    if (!QRuleCatalogue.canSortOn(sortColumn)) {
+      if (!fromStore)
+        return null;
+      sortColumn = null;
+    }
+    QRuleCatalogue catalogue = getCatalogue();
+    if (catalogue == null)
+      return (fromStore ? new Vector() : null);
+    // QRule.isTestRule is always false, so "showTest" makes no difference
+    return catalogue.find(
+      emptyToNull((String) request.get("exactRuleName")),
+      emptyToNull((String) request.get("ruleName")),
+      emptyToNull((String) request.get("action")),
+      emptyToNull((String) request.get("accessor")),
+      request.get("showInactive") != null, sortColumn, sortDirection);
+  }
+
+  private static String emptyToNull (String s) {
+    return (s == null || s.equals("") ? null : s);
+  }
+
+  // match a name against a search string in which '*' and '?' are wild,
+  // as convertSearchString makes them for an SQL "like"
+  static boolean likeMatch (String pattern, int p, String s, int i) {
+    while (p < pattern.length()) {
+      char c = pattern.charAt(p);
+      if (c == '*') {
+        for (int j = i; j <= s.length(); j++)
+          if (likeMatch(pattern, p + 1, s, j))
+            return true;
+        return false;
+      }
+      if (i >= s.length() || (c != '?' && c != s.charAt(i)))
+        return false;
+      p++;
+      i++;
+    }
+    return i == s.length();
+  }
+
   protected Vector instantiate(ResultSet rs, int startRow, int endRow)
           throws SQLException{
 
@@ -763,6 +1465,8 @@ public class QRuleFactory extends Factory {
   }
 
   public Vector getHistory(QRule rule) {
+    if (ruleStore != null)
+      return ruleStore.getHistory(rule);
     try {
       return getHistory(rule, null);
     } catch (Exception e) {
@@ -772,6 +1476,20 @@ public class QRuleFactory extends Factory {
   }
 
   private Vector getHistory(QRule rule, Connection c) {
+    QRuleHistoryJournal journal = historyJournal;
+    if (journal == null)
+      return readHistory(rule, c);
+    // entries still in the journal are newer than any in the table; the
+    // journal's lock keeps a batch from moving between the two meanwhile
+    synchronized (journal) {
+      Vector data = readHistory(rule, c);
+      if (data != null)
+        data.addAll(0, journal.getPending(rule.getDatabaseId()));
+      return data;
+    }
+  }
+
+  private Vector readHistory(QRule rule, Connection c) {
     //
     // Will return a vector with the modification history data for this rule
     //
@@ -822,10 +1540,30 @@ public class QRuleFactory extends Factory {
    */
   public synchronized void sync(QRule r, String description)
   {
+    if (ruleStore != null) {
+      try {
+        boolean isNew = r.getDatabaseId() == DBObject.NULL_DATABASE_ID;
+        long oldVersion = isNew ? 0 : r.getVersion();
+        r.setModificationDate(new java.util.Date());
+        ruleStore.sync(r, description);
+        updateIndexes(r, false);
+        fireRuleChange(isNew ? QRuleChangeEvent.RULE_ADDED :
+          QRuleChangeEvent.RULE_CHANGED, r, oldVersion);
+      }
+      catch (Exception e) {
+        System.err.println("Error syncing Rule " + r.getName());
+        e.printStackTrace();
+      }
+      return;
+    }
     Connection conn = getConnection();
     Statement st = null;
     String q;
     boolean newRule = false;
+    long oldVersion = 0;
+    QRuleHistoryJournal journal = historyJournal;
+    long historySeq = -1;
+    boolean committed = false;
     try {
       conn.setAutoCommit(false);
       st = conn.createStatement();
@@ -845,7 +1583,8 @@ public class QRuleFactory extends Factory {
       {
         ResultSet rs = st.executeQuery("SELECT VERSION from TEMP_QUAL_RULE where rule_id = "+r.getDatabaseId());
         rs.next();
-        r.setVersion(rs.getLong(1) + 1);
+        oldVersion = rs.getLong(1);
+        r.setVersion(oldVersion + 1);
         //
         // Clear out the old stuff
         //
@@ -877,16 +1616,12 @@ public class QRuleFactory extends Factory {
       st.executeUpdate(q);
 
       //
-      // Store the HISTORY entry
+      // Store the HISTORY entry, unless the journal is to write it later
       //
-      cols.clear();
-      vals.clear();
-      cols.addElement("RULE_ID"); vals.addElement(new Long(r.getDatabaseId()));
-      cols.addElement("MODIFICATION_DATE"); vals.addElement(hiFiFmt(r.getModificationDate()));
-      if (description != null) {
-        cols.addElement("DESCRIPTION"); vals.addElement(stringize(description)); }
-      q = makeInsertStatement("TEMP_QUAL_RULE_HISTORY", cols, vals);
-      st.executeUpdate(q);
+      if (journal != null)
+        historySeq = journalHistory(journal, r, description);
+      if (historySeq == -1)
+        st.executeUpdate(makeHistoryInsert(r.getDatabaseId(), r.getModificationDate(), description));
 
       //
       // Store each test; do a depth-first search of the expression tree
@@ -896,10 +1631,24 @@ public class QRuleFactory extends Factory {
 
       // looks OK....
       conn.commit();
+      committed = true;
+      if (historySeq != -1)
+        journal.release(historySeq);
       st.close();
       rules_cache.store(new Long(r.getDatabaseId()), r);
+      updateIndexes(r, false);
+      fireRuleChange(newRule ? QRuleChangeEvent.RULE_ADDED :
+        QRuleChangeEvent.RULE_CHANGED, r, oldVersion);
     } catch (Exception e)
     {
+      if (committed) {
+        // the rule is saved; only the bookkeeping after the commit failed
+        System.err.println("XXXXXXXXX  Error in QRuleFactory::sync after saving Rule " + r.getName());
+        e.printStackTrace();
+        return;
+      }
+      if (historySeq != -1)
+        journal.withdraw(historySeq);
       try {
         conn.rollback();
         st.close();
@@ -915,6 +1664,71 @@ public class QRuleFactory extends Factory {
     }
   }
 
+  // Queue the history entry for a rule that is being saved, to be released
+  // once the save commits.  Returns the entry's sequence number, or -1 if
+  // the journal cannot take it and the save must write the entry itself.
+  private long journalHistory (QRuleHistoryJournal journal, QRule r,
+      String description)
+  {
+    try {
+      return journal.append(r.getDatabaseId(), r.getModificationDate(), description);
+    }
+    catch (IOException ioe) {
+      System.err.println("XXXXXXXXX  Error in QRuleFactory::journalHistory");
+      ioe.printStackTrace();
+      return -1;
+    }
+  }
+
+  /**
+   *  Build the insert statement for a rule history entry.
+   */
+  String makeHistoryInsert (long ruleId, java.util.Date modified, String description) {
+    Vector cols = new Vector();
+    Vector vals = new Vector();
+    cols.addElement("RULE_ID"); vals.addElement(new Long(ruleId));
+    cols.addElement("MODIFICATION_DATE"); vals.addElement(hiFiFmt(modified));
+    if (description != null) {
+      cols.addElement("DESCRIPTION"); vals.addElement(stringize(description)); }
+    return makeInsertStatement("TEMP_QUAL_RULE_HISTORY", cols, vals);
+  }
+
+  /**
+   *  Check whether a history entry from the journal still needs to be
+   *  written:  the rule must still exist, its save must have been committed
+   *  (so the rule is at least as new as the entry), and the entry must not
+   *  be there already.
+   */
+  boolean needsHistory (Connection conn, long ruleId, java.util.Date modified)
+      throws SQLException
+  {
+    Statement st = conn.createStatement();
+    try {
+      ResultSet rs = st.executeQuery(
+        "SELECT COUNT(*) FROM TEMP_QUAL_RULE WHERE RULE_ID = " + ruleId +
+        " AND MODIFICATION_DATE >= " + hiFiFmt(modified));
+      rs.next();
+      if (rs.getInt(1) == 0)
+        return false;
+      rs = st.executeQuery(
+        "SELECT COUNT(*) FROM TEMP_QUAL_RULE_HISTORY WHERE RULE_ID = " + ruleId +
+        " AND MODIFICATION_DATE = " + hiFiFmt(modified));
+      rs.next();
+      return rs.getInt(1) == 0;
+    }
+    finally {
+      st.close();
+    }
+  }
+
+  Connection getHistoryConnection () {
+    return getConnection();
+  }
+
+  void releaseHistoryConnection (Connection conn) {
+    close_connection(conn);
+  }
+
   // Do a DFS traversal of the tests subordinate to the one provided and
   // insert them into the database.  This method calls itself recursively to
   // traverse the entire expression subtree
@@ -998,11 +1812,36 @@ public class QRuleFactory extends Factory {
    *  delete a rule from the database
    *  @param q the rule to be deleted
    */
-  public void delete (QRule q) {
+  public synchronized void delete (QRule q) {
+    if (ruleStore != null) {
+      try {
+        ruleStore.delete(q);
+        updateIndexes(q, true);
+        fireRuleChange(QRuleChangeEvent.RULE_DELETED, q, q.getVersion());
+      }
+      catch (Exception oh_no) {
+        System.out.println("QRuleFactory::delete:  STORE ERROR--" + oh_no);
+      }
+      return;
+    }
+
     // first remove it from the local cache
     rules_cache.remove(new Long(q.getDatabaseId()));
 
-    // next, delete the rule and its tests
+    // next, delete the rule and its tests.  No journal batch is written
+    // meanwhile, so none can add history for the rule behind the deletion.
+    QRuleHistoryJournal journal = historyJournal;
+    if (journal == null)
+      deleteRule(q, null);
+    else
+      synchronized (journal.getFlushLock()) {
+        deleteRule(q, journal);
+      }
+  }
+
+  // delete a rule from the database, and once that has been committed,
+  // drop whatever history the journal still holds for it
+  private void deleteRule (QRule q, QRuleHistoryJournal journal) {
     Connection conn = getConnection();
     Statement st = null;
     try {
@@ -1014,7 +1853,11 @@ public class QRuleFactory extends Factory {
       // nix the rule itself
       st.executeUpdate("delete from temp_qual_rule where rule_id = " + q.getDatabaseId());
       conn.commit();
+      if (journal != null)
+        journal.discard(q.getDatabaseId());
       st.close();
+      updateIndexes(q, true);
+      fireRuleChange(QRuleChangeEvent.RULE_DELETED, q, q.getVersion());
     }
     catch (Exception oh_no) {
       System.out.println("QRuleFactory::delete:  SQL ERROR--" + oh_no);
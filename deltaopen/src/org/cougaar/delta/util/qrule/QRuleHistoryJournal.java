@@ -0,0 +1,513 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.io.*;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A write-behind queue for rule history entries.  QRuleFactory.sync adds an
+ * entry here before it commits the rule, and a background thread writes the
+ * queued entries to TEMP_QUAL_RULE_HISTORY in JDBC batches, so saving a rule
+ * does not wait for the audit insert.
+ * <br><br>
+ * Each entry is forced to a local append-only journal file before it is
+ * queued, and a marker is appended after each batch is committed.  An entry
+ * is held back until the save that added it has committed, and is dropped if
+ * the save is rolled back.  Entries found in the journal without a marker are
+ * queued again when the journal is next opened.  Every entry is checked
+ * against the rule and history tables before it is written, so an entry for
+ * a save that was rolled back or a rule that was deleted is never written,
+ * and one that was committed just before a crash is not written twice.
+ * <br><br>
+ * The queue is bounded.  If the database falls far enough behind, append
+ * waits for room rather than letting the queue grow without limit.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+class QRuleHistoryJournal {
+  // record types
+  private static final byte ENTRY = 1;
+  private static final byte FLUSHED = 2;
+  // record length, type and checksum
+  private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+
+  private static final int DEFAULT_CAPACITY = 1000;
+  private static final int BATCH_SIZE = 100;
+  // how long the flusher waits for a batch to fill, and for the database to
+  // come back after a failed batch
+  private static final long LINGER = 200;
+  private static final long RETRY_INTERVAL = 5000;
+  // the journal is emptied when nothing is pending and it has grown past this
+  private static final long COMPACT_SIZE = 64 * 1024;
+
+  private static SimpleDateFormat historyDateFormatter =
+    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+
+  private File file;
+  private RandomAccessFile journal;
+  private QRuleFactory factory;
+  private int capacity;
+  // queued entries, oldest first
+  private Vector pending = new Vector();
+  private long nextSeq = 1;
+  private boolean closed = false;
+  private Flusher flusher;
+  // held by whoever is writing a batch, so batches go out one at a time
+  private Object flushLock = new Object();
+
+  // a queued history entry
+  private static class Entry {
+    long seq;
+    long ruleId;
+    long modified;
+    String description;
+    // added by a save that has not committed yet
+    boolean held = false;
+  }
+
+  /**
+   *  Open a journal, queueing any entries left unwritten by an earlier run,
+   *  and start the thread that writes them.
+   *  @param f the journal file, which is created if necessary
+   *  @param factory the factory through which the history table is reached
+   *  @throws IOException if the journal cannot be opened
+   */
+  public QRuleHistoryJournal (File f, QRuleFactory factory) throws IOException {
+    this(f, factory, DEFAULT_CAPACITY);
+  }
+
+  public QRuleHistoryJournal (File f, QRuleFactory factory, int capacity)
+      throws IOException
+  {
+    file = f;
+    this.factory = factory;
+    this.capacity = capacity;
+    journal = new RandomAccessFile(f, "rw");
+    recover();
+    flusher = new Flusher();
+    flusher.start();
+  }
+
+  /**
+   *  Queue a history entry for a save that has yet to commit.  The entry is
+   *  on disk when this method returns, but is not written to the database
+   *  until it is released; entries queued after it wait for it too.
+   *  @param ruleId the database ID of the rule
+   *  @param modified the rule's modification date
+   *  @param description a note for the history, or null
+   *  @return the entry's sequence number, for release or withdraw
+   *  @throws IOException if the entry cannot be written to the journal
+   */
+  public synchronized long append (long ruleId, java.util.Date modified,
+      String description) throws IOException
+  {
+    while (pending.size() >= capacity && !closed) {
+      notifyAll();
+      try {
+        wait(RETRY_INTERVAL);
+      }
+      catch (InterruptedException ie) {
+      }
+    }
+    if (closed)
+      throw new IOException("History journal " + file + " is closed");
+    Entry e = new Entry();
+    e.seq = nextSeq++;
+    e.ruleId = ruleId;
+    e.modified = QRuleCodec.dateValue(modified);
+    e.description = description;
+    e.held = true;
+    writeRecord(ENTRY, e);
+    pending.addElement(e);
+    return e.seq;
+  }
+
+  /**
+   *  Let an entry be written, now that its save has committed.
+   *  @param seq the number returned by append
+   */
+  public synchronized void release (long seq) {
+    Entry e = find(seq);
+    if (e != null)
+      e.held = false;
+    notifyAll();
+  }
+
+  /**
+   *  Drop an entry whose save was rolled back.  Should the process stop
+   *  first, the entry is recovered from the journal but fails the check
+   *  against the rule table.
+   *  @param seq the number returned by append
+   */
+  public synchronized void withdraw (long seq) {
+    Entry e = find(seq);
+    if (e != null)
+      pending.removeElement(e);
+    notifyAll();
+  }
+
+  // the queued entry with the given sequence number, or null.  Must be
+  // called with this object's lock held.
+  private Entry find (long seq) {
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      Entry e = (Entry) pending.elementAt(i);
+      if (e.seq == seq)
+        return e;
+    }
+    return null;
+  }
+
+  // whether the oldest entry may be written.  Must be called with this
+  // object's lock held.
+  private boolean isWritable () {
+    return !pending.isEmpty() && !((Entry) pending.firstElement()).held;
+  }
+
+  /**
+   *  Get the queued entries for a rule, newest first, in the form returned
+   *  by QRuleFactory.getHistory.  Callers that merge these with rows from the
+   *  history table should hold this object's lock across both reads, since a
+   *  batch is committed and taken off the queue under the same lock.
+   *  @param ruleId the database ID of the rule
+   *  @return a (possibly empty) Vector of Hashtables
+   */
+  public synchronized Vector getPending (long ruleId) {
+    Vector v = new Vector();
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      Entry e = (Entry) pending.elementAt(i);
+      if (e.ruleId != ruleId)
+        continue;
+      Hashtable entry = new Hashtable(3);
+      if (e.modified == -1)
+        entry.put("date", "");
+      else
+        entry.put("date", historyDateFormatter.format(new java.util.Date(e.modified)));
+      entry.put("user", "");
+      entry.put("description", e.description == null ? "" : e.description);
+      v.addElement(entry);
+    }
+    return v;
+  }
+
+  /**
+   *  Drop the queued entries for a rule that has been deleted.  If a batch
+   *  is being written, this waits for it to finish.
+   *  @param ruleId the database ID of the rule
+   */
+  public void discard (long ruleId) {
+    synchronized (flushLock) {
+      synchronized (this) {
+        for (int i = pending.size() - 1; i >= 0; i--)
+          if (((Entry) pending.elementAt(i)).ruleId == ruleId)
+            pending.removeElementAt(i);
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   *  Get the lock held while a batch is written.  Holding it keeps the
+   *  history table free of writes from this journal meanwhile.
+   */
+  Object getFlushLock () {
+    return flushLock;
+  }
+
+  /**
+   *  Find out how many entries are waiting to be written.
+   */
+  public synchronized int getPendingCount () {
+    return pending.size();
+  }
+
+  /**
+   *  Write the queued entries to the history table, up to the first one
+   *  whose save has not committed yet.
+   *  @return true if all of those were written, false if a batch failed
+   */
+  public boolean flush () {
+    synchronized (flushLock) {
+      while (true) {
+        Vector batch = new Vector();
+        synchronized (this) {
+          if (!isWritable()) {
+            compact();
+            return true;
+          }
+          // a batch stops at a held entry, so that its marker never covers
+          // an entry that has not been written
+          for (int i = 0; i < pending.size() && i < BATCH_SIZE; i++) {
+            Entry e = (Entry) pending.elementAt(i);
+            if (e.held)
+              break;
+            batch.addElement(e);
+          }
+        }
+        try {
+          if (!writeBatch(batch))
+            return false;
+        }
+        catch (RuntimeException re) {
+          System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal::flush");
+          re.printStackTrace();
+          return false;
+        }
+      }
+    }
+  }
+
+  /**
+   *  Write what can be written, stop the flusher and close the journal.
+   *  Entries that could not be written stay in the journal for the next run.
+   */
+  public void close () {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    }
+    catch (InterruptedException ie) {
+    }
+    flush();
+    synchronized (this) {
+      try {
+        journal.close();
+      }
+      catch (IOException ioe) {
+        System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal::close");
+        ioe.printStackTrace();
+      }
+    }
+  }
+
+  public String toString () {
+    return "QRuleHistoryJournal " + file + ": " + getPendingCount() + " pending";
+  }
+
+  // Insert one batch and commit it, then take it off the queue and mark it
+  // in the journal.  Entries are skipped if the rule is gone or was never
+  // saved as the entry says, or if the row is already there.
+  private boolean writeBatch (Vector batch) {
+    Connection conn = factory.getHistoryConnection();
+    if (conn == null) {
+      // the pool has already reported why
+      System.err.println("QRuleHistoryJournal: no connection for the history table; will retry");
+      return false;
+    }
+    Statement st = null;
+    try {
+      conn.setAutoCommit(false);
+      st = conn.createStatement();
+      int n = 0;
+      for (int i = 0; i < batch.size(); i++) {
+        Entry e = (Entry) batch.elementAt(i);
+        java.util.Date d = QRuleCodec.dateObject(e.modified);
+        if (!factory.needsHistory(conn, e.ruleId, d))
+          continue;
+        st.addBatch(factory.makeHistoryInsert(e.ruleId, d, e.description));
+        n++;
+      }
+      if (n > 0)
+        st.executeBatch();
+      synchronized (this) {
+        conn.commit();
+        // discard may have removed some of these already
+        pending.removeAll(batch);
+        Entry last = (Entry) batch.lastElement();
+        try {
+          writeRecord(FLUSHED, last);
+        }
+        catch (IOException ioe) {
+          // the batch is in the database; on recovery it will be found there
+          System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal::writeBatch");
+          ioe.printStackTrace();
+        }
+        notifyAll();
+      }
+      return true;
+    }
+    catch (Exception ex) {
+      System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal::writeBatch");
+      ex.printStackTrace();
+      try {
+        conn.rollback();
+      }
+      catch (Exception ex2) {
+        System.err.println("Error rolling back rule history batch");
+      }
+      return false;
+    }
+    finally {
+      try {
+        if (st != null)
+          st.close();
+      }
+      catch (SQLException sqle) {
+      }
+      factory.releaseHistoryConnection(conn);
+    }
+  }
+
+  // Append a record and force it to disk.  Must be called with this
+  // object's lock held.
+  private void writeRecord (byte type, Entry e) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(type);
+    out.writeLong(e.seq);
+    if (type == ENTRY) {
+      out.writeLong(e.ruleId);
+      out.writeLong(e.modified);
+      QRuleCodec.writeString(out, e.description);
+    }
+    out.close();
+    byte[] payload = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+
+    bytes = new ByteArrayOutputStream(payload.length + RECORD_OVERHEAD);
+    out = new DataOutputStream(bytes);
+    out.writeInt(payload.length - 1);
+    out.write(payload);
+    out.writeInt((int) crc.getValue());
+    out.close();
+
+    journal.seek(journal.length());
+    journal.write(bytes.toByteArray());
+    journal.getFD().sync();
+  }
+
+  // Read the journal back, stopping at the first incomplete or damaged
+  // record, which is cut off.  Entries after the last marker are queued.
+  private void recover () throws IOException {
+    long length = journal.length();
+    long pos = 0;
+    long flushedSeq = 0;
+    Vector entries = new Vector();
+    journal.seek(0);
+    while (length - pos >= RECORD_OVERHEAD) {
+      int n = journal.readInt();
+      if (n < 0 || n > length - pos - RECORD_OVERHEAD)
+        break;
+      byte[] payload = new byte[n + 1];
+      journal.readFully(payload);
+      int sum = journal.readInt();
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      if (sum != (int) crc.getValue())
+        break;
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+      byte type = in.readByte();
+      long seq = in.readLong();
+      if (type == ENTRY) {
+        Entry e = new Entry();
+        e.seq = seq;
+        e.ruleId = in.readLong();
+        e.modified = in.readLong();
+        e.description = QRuleCodec.readString(in);
+        entries.addElement(e);
+      }
+      else if (type == FLUSHED) {
+        flushedSeq = Math.max(flushedSeq, seq);
+      }
+      nextSeq = Math.max(nextSeq, seq + 1);
+      pos = journal.getFilePointer();
+    }
+    if (pos < length) {
+      System.err.println("QRuleHistoryJournal: discarding " + (length - pos) +
+        " damaged bytes at the end of " + file);
+      journal.setLength(pos);
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      Entry e = (Entry) entries.elementAt(i);
+      if (e.seq > flushedSeq)
+        pending.addElement(e);
+    }
+    if (!pending.isEmpty())
+      System.out.println("QRuleHistoryJournal: recovered " + pending.size() +
+        " unwritten history entries from " + file);
+  }
+
+  // Empty the journal once everything in it has been written.  Must be
+  // called with this object's lock held.
+  private void compact () {
+    try {
+      if (pending.isEmpty() && !closed && journal.length() > COMPACT_SIZE) {
+        journal.setLength(0);
+        journal.getFD().sync();
+      }
+    }
+    catch (IOException ioe) {
+      System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal::compact");
+      ioe.printStackTrace();
+    }
+  }
+
+  // the background writer
+  private class Flusher extends Thread {
+    public Flusher () {
+      super("QRuleHistoryJournal flusher: " + file.getName());
+      setDaemon(true);
+    }
+
+    public void run () {
+      while (true) {
+        synchronized (QRuleHistoryJournal.this) {
+          try {
+            if (!isWritable() && !closed)
+              QRuleHistoryJournal.this.wait();
+            // give a busy editor a moment to fill the batch
+            if (pending.size() < BATCH_SIZE && !closed)
+              QRuleHistoryJournal.this.wait(LINGER);
+          }
+          catch (InterruptedException ie) {
+          }
+          if (closed)
+            return;
+        }
+        boolean flushed;
+        try {
+          flushed = flush();
+        }
+        catch (RuntimeException re) {
+          // keep retrying rather than leave appenders waiting on a dead thread
+          System.err.println("XXXXXXXXX  Error in QRuleHistoryJournal.Flusher::run");
+          re.printStackTrace();
+          flushed = false;
+        }
+        if (!flushed) {
+          try {
+            sleep(RETRY_INTERVAL);
+          }
+          catch (InterruptedException ie) {
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * The active rules divided by region, so that a candidate need only be
+ * tested against the rules that can apply to it.  A rule belongs to the
+ * partition of a region when its test requires an "inRegion" comparison
+ * against that region's "GeographyName:RegionName" pair, directly or as a
+ * term of an AND (or of every term of an OR).  All other rules belong to
+ * the global partition, which applies to every candidate.
+ * <br><br>
+ * Each partition keeps the Jess commands for its rules, built the first
+ * time the partition is used and rebuilt only when its rules change, and
+ * counts the candidates routed to it and the time spent loading its rules.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class QRulePartitions {
+  /**
+   *  The name of the partition holding the rules that apply everywhere.
+   */
+  public static final String GLOBAL = "(global)";
+
+  private static final String IN_REGION = "inRegion";
+
+  // the Partitions keyed by name
+  private Hashtable partitions = new Hashtable();
+  // the names of the partitions holding each rule, keyed by rule ID (Long)
+  private Hashtable partitionsById = new Hashtable();
+
+  /**
+   *  The rules of one region, or of the global partition.
+   */
+  public static class Partition {
+    private String name;
+    // QRules keyed by rule ID
+    private Hashtable rules = new Hashtable();
+    // the Jess commands for the rules, or null if they must be rebuilt
+    private Vector commands = null;
+    private long compilations = 0;
+    private long candidates = 0;
+    private long loadTime = 0;
+
+    private Partition (String name) {
+      this.name = name;
+    }
+
+    public String getName () {
+      return name;
+    }
+
+    public synchronized int getRuleCount () {
+      return rules.size();
+    }
+
+    /**
+     *  Report how many times the commands for this partition have been
+     *  built.
+     */
+    public synchronized long getCompilations () {
+      return compilations;
+    }
+
+    /**
+     *  Report how many candidates have been tested against this partition.
+     */
+    public synchronized long getCandidateCount () {
+      return candidates;
+    }
+
+    /**
+     *  Report the time spent loading this partition's rules into the rule
+     *  engine, in milliseconds.
+     */
+    public synchronized long getLoadTime () {
+      return loadTime;
+    }
+
+    /**
+     *  Get the Jess commands for the rules in this partition, building them
+     *  if the rules have changed since they were last built.
+     *  @return a Vector of Strings
+     */
+    public synchronized Vector getCommands () {
+      if (commands == null) {
+        Vector v = new Vector();
+        for (Enumeration e = rules.elements(); e.hasMoreElements(); )
+          v.addAll(((QRule) e.nextElement()).toJESS());
+        commands = v;
+        compilations++;
+      }
+      return commands;
+    }
+
+    /**
+     *  Record that a candidate has been tested against this partition.
+     *  @param elapsed the time spent loading the partition's rules, in
+     *         milliseconds
+     */
+    public synchronized void recordCandidate (long elapsed) {
+      candidates++;
+      loadTime += elapsed;
+    }
+
+    private synchronized void put (QRule r) {
+      rules.put(new Long(r.getDatabaseId()), r);
+      commands = null;
+    }
+
+    private synchronized void remove (Long id) {
+      if (rules.remove(id) != null)
+        commands = null;
+    }
+  }
+
+  /**
+   *  Replace all of the rules.
+   *  @param rules the active QRules
+   */
+  public synchronized void setRules (Vector rules) {
+    partitions.clear();
+    partitionsById.clear();
+    for (int i = 0; i < rules.size(); i++)
+      put((QRule) rules.elementAt(i));
+  }
+
+  /**
+   *  Add a rule, or replace the previous version of it.
+   *  @param r the rule
+   */
+  public synchronized void put (QRule r) {
+    remove(r.getDatabaseId());
+    Vector names = getRegions(r);
+    if (names.isEmpty())
+      names.addElement(GLOBAL);
+    Long id = new Long(r.getDatabaseId());
+    for (int i = 0; i < names.size(); i++) {
+      String name = (String) names.elementAt(i);
+      Partition p = (Partition) partitions.get(name);
+      if (p == null)
+        partitions.put(name, p = new Partition(name));
+      p.put(r);
+    }
+    partitionsById.put(id, names);
+  }
+
+  /**
+   *  Remove a rule.
+   *  @param ruleId the rule's database ID
+   */
+  public synchronized void remove (long ruleId) {
+    Long id = new Long(ruleId);
+    Vector names = (Vector) partitionsById.remove(id);
+    if (names == null)
+      return;
+    for (int i = 0; i < names.size(); i++) {
+      String name = (String) names.elementAt(i);
+      Partition p = (Partition) partitions.get(name);
+      p.remove(id);
+      if (p.getRuleCount() == 0 && !name.equals(GLOBAL))
+        partitions.remove(name);
+    }
+  }
+
+  /**
+   *  Find the partitions whose rules apply to a candidate:  the global
+   *  partition and those of the candidate's regions.  If the candidate's
+   *  regions are not known, every partition applies.
+   *  @param regions the candidate's "GeographyName:RegionName" pairs, or
+   *         null if they are unknown
+   *  @return a Vector of Partitions
+   */
+  public synchronized Vector getPartitions (Vector regions) {
+    if (regions == null)
+      return new Vector(partitions.values());
+    Vector v = new Vector();
+    Object p = partitions.get(GLOBAL);
+    if (p != null)
+      v.addElement(p);
+    for (int i = 0; i < regions.size(); i++) {
+      p = partitions.get(regions.elementAt(i));
+      if (p != null && !v.contains(p))
+        v.addElement(p);
+    }
+    return v;
+  }
+
+  /**
+   *  Get every partition, for reporting, ordered by name.
+   *  @return a Vector of Partitions
+   */
+  public synchronized Vector getAllPartitions () {
+    Vector v = new Vector(partitions.values());
+    Collections.sort(v, new Comparator() {
+      public int compare (Object a, Object b) {
+        return ((Partition) a).getName().compareTo(((Partition) b).getName());
+      }
+    });
+    return v;
+  }
+
+  /**
+   *  Print the size and timings of each partition.
+   *  @param out the stream on which to print
+   */
+  public void printSummary (PrintStream out) {
+    Vector v = getAllPartitions();
+    out.println("Rule partitions:");
+    for (int i = 0; i < v.size(); i++) {
+      Partition p = (Partition) v.elementAt(i);
+      long n = p.getCandidateCount();
+      out.println("  " + p.getName() + ":  " + p.getRuleCount() + " rules, " +
+        p.getCompilations() + " compilations, " + n + " candidates, " +
+        p.getLoadTime() + " ms loading" +
+        (n > 0 ? " (" + (p.getLoadTime() / n) + " ms each)" : ""));
+    }
+  }
+
+  /**
+   *  Find the regions to which a rule is confined.
+   *  @param r the rule
+   *  @return the "GeographyName:RegionName" pairs of the regions, or an
+   *          empty Vector if the rule is not confined to any region
+   */
+  public static Vector getRegions (QRule r) {
+    Vector v = new Vector();
+    if (r.getTest() != null)
+      collectRegions(r.getTest(), v);
+    return v;
+  }
+
+  // Add to the Vector the regions to which a test confines its rule, and
+  // report whether it does.  A conjunction is confined by any of its terms;
+  // a disjunction, only if all of its terms are.
+  private static boolean collectRegions (QRuleTest qt, Vector v) {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null) {
+      String op = logic.getLogicalOp();
+      if (QRuleTest.LOGICAL_AND.equals(op)) {
+        for (Enumeration e = logic.getOperands(); e.hasMoreElements(); ) {
+          Vector terms = new Vector();
+          if (collectRegions((QRuleTest) e.nextElement(), terms)) {
+            v.addAll(terms);
+            return true;
+          }
+        }
+      }
+      else if (QRuleTest.LOGICAL_OR.equals(op)) {
+        Vector terms = new Vector();
+        Enumeration e = logic.getOperands();
+        if (!e.hasMoreElements())
+          return false;
+        while (e.hasMoreElements())
+          if (!collectRegions((QRuleTest) e.nextElement(), terms))
+            return false;
+        for (int i = 0; i < terms.size(); i++)
+          if (!v.contains(terms.elementAt(i)))
+            v.addElement(terms.elementAt(i));
+        return true;
+      }
+      return false;
+    }
+
+    QRuleComparison c = qt.getComparison();
+    if (c == null || c.getOperator() == null ||
+        !IN_REGION.equals(c.getOperator().getJessName()))
+      return false;
+    QRuleOperand right = c.getOperand2();
+    if (right == null || !right.isLiteral())
+      return false;
+    Object value = ((QRuleLiteralOperand) right).getValue();
+    if (value instanceof String) {
+      v.addElement(value);
+      return true;
+    }
+    if (value instanceof Vector && !((Vector) value).isEmpty()) {
+      Enumeration e = ((Vector) value).elements();
+      while (e.hasMoreElements()) {
+        Object elt = e.nextElement();
+        if (!(elt instanceof String))
+          return false;
+        if (!v.contains(elt))
+          v.addElement(elt);
+      }
+      return true;
+    }
+    return false;
+  }
+}
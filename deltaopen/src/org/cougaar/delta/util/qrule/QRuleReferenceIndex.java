@@ -0,0 +1,209 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.util.*;
+
+/**
+ * An in-memory index of the rules in the rule database, by name and by the
+ * entities their tests refer to.  A reference is a comparison whose left
+ * side is an accessor and whose right side is a literal; it is indexed
+ * under both the accessor's internal name and its UI type, each paired with
+ * the literal's text, all in upper case.  This answers the same questions
+ * as QRuleFactory.hasRuleReference and QRuleFactory.exists with hash probes
+ * instead of queries.
+ * <br><br>
+ * The index is filled from the database once and then kept current by
+ * QRuleFactory as rules are saved and deleted.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+class QRuleReferenceIndex {
+  // rule names keyed by rule ID (Long)
+  private Hashtable names = new Hashtable();
+  // Vectors of rule IDs keyed by upper-case rule name
+  private Hashtable idsByName = new Hashtable();
+  // Vectors of rule IDs keyed by reference
+  private Hashtable idsByReference = new Hashtable();
+  // Vectors of the references made by each rule, keyed by rule ID
+  private Hashtable referencesById = new Hashtable();
+
+  /**
+   *  Record the name of a rule.
+   *  @param ruleId the rule's database ID
+   *  @param name the rule's name
+   */
+  public synchronized void putName (long ruleId, String name) {
+    Long id = new Long(ruleId);
+    removeName(id);
+    if (name == null)
+      return;
+    names.put(id, name);
+    add(idsByName, name.toUpperCase(), id);
+  }
+
+  /**
+   *  Record a reference made by one of a rule's tests, as read from the
+   *  rule database.
+   *  @param ruleId the rule's database ID
+   *  @param internalName the accessor's internal name
+   *  @param uiType the accessor's UI type
+   *  @param value the literal's text
+   */
+  public synchronized void putReference (long ruleId, String internalName,
+      String uiType, String value)
+  {
+    if (value == null)
+      return;
+    Long id = new Long(ruleId);
+    String v = value.toUpperCase();
+    if (internalName != null)
+      addReference(id, key(internalName.toUpperCase(), v));
+    if (uiType != null)
+      addReference(id, key(uiType.toUpperCase(), v));
+  }
+
+  /**
+   *  Index a rule that has just been saved, replacing whatever was
+   *  previously recorded for it.
+   *  @param r the rule
+   */
+  public synchronized void put (QRule r) {
+    long ruleId = r.getDatabaseId();
+    remove(ruleId);
+    putName(ruleId, r.getName());
+    if (r.getTest() == null)
+      return;
+    Vector v = new Vector();
+    collectComparisons(r.getTest(), v);
+    for (Enumeration e = v.elements(); e.hasMoreElements(); ) {
+      QRuleComparison c = (QRuleComparison) e.nextElement();
+      QRuleOperand left = c.getOperand1();
+      QRuleOperand right = c.getOperand2();
+      if (left == null || left.isLiteral() || right == null || !right.isLiteral())
+        continue;
+      Object value = ((QRuleLiteralOperand) right).getValue();
+      if (value == null)
+        continue;
+      // index the literal under the same text the rule database stores
+      QRuleAccessorOperand acc = (QRuleAccessorOperand) left;
+      putReference(ruleId, acc.getInternalName(), acc.getUiType(),
+        QRuleFactory.literalText(value));
+    }
+  }
+
+  /**
+   *  Forget a rule that has been deleted.
+   *  @param ruleId the rule's database ID
+   */
+  public synchronized void remove (long ruleId) {
+    Long id = new Long(ruleId);
+    removeName(id);
+    Vector refs = (Vector) referencesById.remove(id);
+    if (refs == null)
+      return;
+    for (Enumeration e = refs.elements(); e.hasMoreElements(); )
+      delete(idsByReference, e.nextElement(), id);
+  }
+
+  /**
+   *  Find the rules with a test referring to an entity.
+   *  @param designator the accessor's internal name or UI type
+   *  @param value the literal's text
+   *  @return the names of the referring rules, without duplicates
+   */
+  public synchronized Vector getReferringRules (String designator, String value) {
+    Vector ret = new Vector();
+    Vector ids = (Vector) idsByReference.get(
+      key(designator.toUpperCase(), value.toUpperCase()));
+    if (ids == null)
+      return ret;
+    for (Enumeration e = ids.elements(); e.hasMoreElements(); ) {
+      Object name = names.get(e.nextElement());
+      if (name != null && !ret.contains(name))
+        ret.addElement(name);
+    }
+    return ret;
+  }
+
+  /**
+   *  Check for a rule with a given name, ignoring case.
+   *  @param name the name sought
+   *  @return true if and only if such a rule is known
+   */
+  public synchronized boolean containsName (String name) {
+    return idsByName.containsKey(name.toUpperCase());
+  }
+
+  private void removeName (Long id) {
+    String old = (String) names.remove(id);
+    if (old != null)
+      delete(idsByName, old.toUpperCase(), id);
+  }
+
+  private void addReference (Long id, String k) {
+    Vector refs = (Vector) referencesById.get(id);
+    if (refs == null) {
+      refs = new Vector();
+      referencesById.put(id, refs);
+    }
+    if (refs.contains(k))
+      return;
+    refs.addElement(k);
+    add(idsByReference, k, id);
+  }
+
+  private static String key (String designator, String value) {
+    return designator + '\n' + value;
+  }
+
+  private static void add (Hashtable t, Object k, Long id) {
+    Vector v = (Vector) t.get(k);
+    if (v == null) {
+      v = new Vector(1);
+      t.put(k, v);
+    }
+    if (!v.contains(id))
+      v.addElement(id);
+  }
+
+  private static void delete (Hashtable t, Object k, Long id) {
+    Vector v = (Vector) t.get(k);
+    if (v == null)
+      return;
+    v.removeElement(id);
+    if (v.isEmpty())
+      t.remove(k);
+  }
+
+  // collect all of the comparisons in a test tree
+  private static void collectComparisons (QRuleTest qt, Vector v) {
+    QRuleLogicalTest logic = qt.getLogicalTest();
+    if (logic != null) {
+      for (Enumeration e = logic.getOperands(); e.hasMoreElements(); )
+        collectComparisons((QRuleTest) e.nextElement(), v);
+    }
+    else if (qt.getComparison() != null) {
+      v.addElement(qt.getComparison());
+    }
+  }
+}
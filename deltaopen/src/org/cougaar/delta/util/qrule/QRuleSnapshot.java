@@ -0,0 +1,216 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.io.*;
+import java.util.*;
+import org.cougaar.delta.util.*;
+
+/**
+ * A saved copy of a set of rules, together with the operator and operand
+ * tables they refer to, in a compact binary file.  A plugin can read a
+ * snapshot at startup and begin qualifying candidates at once, instead of
+ * waiting for the rules and their tests to be loaded from the database, and
+ * then use isCurrent to check the snapshot against the rule versions in the
+ * database.
+ * <br><br>
+ * Snapshots are written to a temporary file and renamed into place, so a
+ * reader never sees a partly written snapshot.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public class QRuleSnapshot {
+  // file header:  magic number and format version
+  private static final int MAGIC = 0x51525353;
+  private static final int FORMAT_VERSION = 1;
+
+  private long creationTime;
+  private Vector rules;
+  // rule versions keyed by rule ID (Long)
+  private Hashtable versions = new Hashtable();
+
+  private QRuleSnapshot (long t, Vector v) {
+    creationTime = t;
+    rules = v;
+    for (Enumeration e = rules.elements(); e.hasMoreElements(); ) {
+      QRule r = (QRule) e.nextElement();
+      versions.put(new Long(r.getDatabaseId()), new Long(r.getVersion()));
+    }
+  }
+
+  /**
+   *  Get the rules held in this snapshot.
+   *  @return a Vector of QRules
+   */
+  public Vector getRules () {
+    return rules;
+  }
+
+  /**
+   *  Find out when this snapshot was written.
+   *  @return the time, in milliseconds since the epoch
+   */
+  public long getCreationTime () {
+    return creationTime;
+  }
+
+  /**
+   *  Check whether this snapshot holds exactly the given rule versions.
+   *  @param dbVersions rule versions keyed by rule ID (Long), as returned by
+   *         QRuleFactory.getActiveRuleVersions
+   *  @return true if and only if the same rules are present in the same
+   *          versions
+   */
+  public boolean isCurrent (Hashtable dbVersions) {
+    if (dbVersions.size() != versions.size())
+      return false;
+    Enumeration e = dbVersions.keys();
+    while (e.hasMoreElements()) {
+      Object key = e.nextElement();
+      if (!dbVersions.get(key).equals(versions.get(key)))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   *  Write a snapshot of the given rules and of the factory's operators and
+   *  operands.
+   *  @param f the snapshot file
+   *  @param factory the factory from which the rules were loaded
+   *  @param rules the QRules to be saved
+   *  @throws IOException if the snapshot cannot be written
+   */
+  public static void write (File f, QRuleFactory factory, Vector rules)
+      throws IOException
+  {
+    File tmp = new File(f.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(System.currentTimeMillis());
+
+      Vector v = list(factory.getOperators());
+      out.writeInt(v.size());
+      for (int i = 0; i < v.size(); i++)
+        QRuleCodec.writeOperator(out, (QRuleOperator) v.elementAt(i));
+      v = list(factory.getAccessorOperands());
+      out.writeInt(v.size());
+      for (int i = 0; i < v.size(); i++)
+        QRuleCodec.writeAccessorOperand(out, (QRuleAccessorOperand) v.elementAt(i));
+
+      out.writeInt(rules.size());
+      for (int i = 0; i < rules.size(); i++) {
+        QRule r = (QRule) rules.elementAt(i);
+        out.writeLong(r.getDatabaseId());
+        out.writeLong(r.getVersion());
+        QRuleCodec.writeString(out, r.getName());
+        QRuleCodec.writeString(out, r.getAction());
+        out.writeBoolean(r.isActive());
+        out.writeLong(QRuleCodec.dateValue(r.getCreationDate()));
+        out.writeLong(QRuleCodec.dateValue(r.getModificationDate()));
+        QRuleCodec.writeTestTree(out, r);
+      }
+    }
+    finally {
+      out.close();
+    }
+    if (!tmp.renameTo(f)) {
+      f.delete();
+      if (!tmp.renameTo(f))
+        throw new IOException("Unable to replace rule snapshot " + f);
+    }
+  }
+
+  /**
+   *  Read a snapshot.  If the factory has not yet loaded its operators and
+   *  operands, it takes them from the snapshot; the rules are placed in the
+   *  factory's rule cache.
+   *  @param f the snapshot file
+   *  @param factory the factory that will be used with the rules
+   *  @return the snapshot
+   *  @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public static QRuleSnapshot read (File f, QRuleFactory factory)
+      throws IOException
+  {
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(f)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+        throw new IOException(f + " is not a rule snapshot");
+      long t = in.readLong();
+
+      Hashtable ops = new Hashtable();
+      for (int n = in.readInt(); n > 0; n--) {
+        QRuleOperator qro = QRuleCodec.readOperator(in);
+        ops.put(new Long(qro.getDatabaseId()), qro);
+      }
+      Hashtable opns = new Hashtable();
+      for (int n = in.readInt(); n > 0; n--) {
+        QRuleAccessorOperand qrao = QRuleCodec.readAccessorOperand(in);
+        opns.put(new Long(qrao.getDatabaseId()), qrao);
+      }
+      factory.adoptMetadata(ops, opns);
+      // the tests must refer to the factory's own operators and operands
+      ops = byId(factory.getOperators());
+      opns = byId(factory.getAccessorOperands());
+
+      Vector rules = new Vector();
+      for (int n = in.readInt(); n > 0; n--) {
+        long id = in.readLong();
+        long version = in.readLong();
+        QRule r = new QRule(QRuleCodec.readString(in), QRuleCodec.readString(in));
+        r.setDatabaseId(id);
+        r.setVersion(version);
+        r.setActive(in.readBoolean());
+        r.setCreationDate(QRuleCodec.dateObject(in.readLong()));
+        r.setModificationDate(QRuleCodec.dateObject(in.readLong()));
+        QRuleCodec.readTestTree(in, r, ops, opns);
+        factory.cacheRule(r);
+        rules.addElement(r);
+      }
+      return new QRuleSnapshot(t, rules);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static Vector list (Enumeration e) {
+    Vector v = new Vector();
+    while (e.hasMoreElements())
+      v.addElement(e.nextElement());
+    return v;
+  }
+
+  private static Hashtable byId (Enumeration e) {
+    Hashtable t = new Hashtable();
+    while (e.hasMoreElements()) {
+      DBObject o = (DBObject) e.nextElement();
+      t.put(new Long(o.getDatabaseId()), o);
+    }
+    return t;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+  * <copyright>
+  *  Copyright 2002 BBNT Solutions, LLC
+  *  under sponsorship of the Defense Advanced Research Projects Agency (DARPA)
+  *  and the Defense Logistics Agency (DLA).
+  *
+  *  This program is free software; you can redistribute it and/or modify
+  *  it under the terms of the Cougaar Open Source License as published by
+  *  DARPA on the Cougaar Open Source Website (www.cougaar.org).
+  *
+  *  THE COUGAAR SOFTWARE AND ANY DERIVATIVE SUPPLIED BY LICENSOR IS
+  *  PROVIDED 'AS IS' WITHOUT WARRANTIES OF ANY KIND, WHETHER EXPRESS OR
+  *  IMPLIED, INCLUDING (BUT NOT LIMITED TO) ALL IMPLIED WARRANTIES OF
+  *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE, AND WITHOUT
+  *  ANY WARRANTIES AS TO NON-INFRINGEMENT.  IN NO EVENT SHALL COPYRIGHT
+  *  HOLDER BE LIABLE FOR ANY DIRECT, SPECIAL, INDIRECT OR CONSEQUENTIAL
+  *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE OF DATA OR PROFITS,
+  *  TORTIOUS CONDUCT, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+  *  PERFORMANCE OF THE COUGAAR SOFTWARE.
+  * </copyright>
+  */
+
+package org.cougaar.delta.util.qrule;
+
+import java.util.*;
+
+/**
+ * A place to keep QRules other than the rule database.  By default,
+ * QRuleFactory reads and writes the TEMP_QUAL_RULE tables directly; once a
+ * QRuleStore has been installed with QRuleFactory.setRuleStore, the factory
+ * takes its operators, operands and rules from the store instead and sends
+ * every change there.
+ * <br><br>
+ * Implementations are responsible for assigning database IDs and versions
+ * to new rules and tests, just as the database sequences do.
+ * @author ALPINE (alpine-software@bbn.com)
+ */
+public interface QRuleStore {
+
+  /**
+   *  Get all of the comparison operators known to this store.  Each carries
+   *  the database ID by which rule tests refer to it.
+   *  @return the QRuleOperator objects
+   */
+  public Enumeration getOperators ();
+
+  /**
+   *  Get all of the accessor operands known to this store.  Each carries the
+   *  database ID by which rule tests refer to it.
+   *  @return the QRuleAccessorOperand objects
+   */
+  public Enumeration getAccessorOperands ();
+
+  /**
+   *  Get the latest version of every rule in the store.
+   *  @param includeInactive if false, only active rules are returned
+   *  @return a Vector of QRules
+   */
+  public Vector getRules (boolean includeInactive);
+
+  /**
+   *  Find the latest version of a rule by name.  Names are compared without
+   *  regard to case.
+   *  @param name the rule name
+   *  @return the rule, or null if there is no such rule
+   */
+  public QRule getRuleByName (String name);
+
+  /**
+   *  Save a new version of a rule.  A rule whose database ID is
+   *  DBObject.NULL_DATABASE_ID is given a new ID and version 1; otherwise its
+   *  version is advanced past the one held in the store.  Tests without a
+   *  database ID are given one.
+   *  @param r the rule to be saved
+   *  @param description a note for the rule's history, or null
+   *  @throws Exception if the rule could not be saved
+   */
+  public void sync (QRule r, String description) throws Exception;
+
+  /**
+   *  Remove a rule, along with its history, from the store.
+   *  @param r the rule to be deleted
+   *  @throws Exception if the deletion could not be recorded
+   */
+  public void delete (QRule r) throws Exception;
+
+  /**
+   *  Get the modification history of a rule, newest first.  Each entry is a
+   *  Hashtable with the keys "date", "user" and "description", as returned by
+   *  QRuleFactory.getHistory.
+   *  @param r the rule
+   *  @return a (possibly empty) Vector of history entries
+   */
+  public Vector getHistory (QRule r);
+
+  /**
+   *  Find the names of rules with a comparison whose left-hand accessor has
+   *  the given internal name or UI type and whose right-hand literal is the
+   *  given value.  Both are compared without regard to case.
+   *  @param designator the accessor's internal name or UI type
+   *  @param value the literal value
+   *  @return a (possibly empty) Vector of rule names
+   */
+  public Vector hasRuleReference (String designator, String value);
+
+  /**
+   *  Find the names of rules with a comparison whose right-hand literal is one
+   *  of the given region names.
+   *  @param regionNames names in the format "GeographyName:RegionName"
+   *  @return a (possibly empty) Vector of rule names
+   */
+  public Vector lookupByRegionName (Vector regionNames);
+
+  /**
+   *  Release whatever resources the store is holding.  The store may not be
+   *  used afterward.
+   */
+  public void close ();
+}
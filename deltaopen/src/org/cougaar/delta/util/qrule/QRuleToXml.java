@@ -37,6 +37,8 @@ public class QRuleToXml {
 
 
   private static final String indent = "  ";
+  // connection strings with this prefix name an EmbeddedQRuleStore log file
+  private static final String STORE_PREFIX = "file:";
   private static SimpleDateFormat dateFormatter = new SimpleDateFormat("MM/dd/yyyy");
   protected QRuleFactory factory = null;
   protected QueryTable qTable = null;
@@ -69,7 +71,7 @@ public class QRuleToXml {
       try {
         instance = new QRuleToXml(configureFactory(dbConnect));
       }
-      catch (RuntimeException e) {
+      catch (Exception e) {
         System.out.println("Error connecting to database--" + e);
         return;
       }
@@ -132,9 +134,12 @@ public class QRuleToXml {
     }
   }
 
-  private static QRuleFactory configureFactory (String db) {
+  private static QRuleFactory configureFactory (String db) throws IOException {
     QRuleFactory qrf = QRuleFactory.getInstance();
-    qrf.setDbConnectionString(db);
+    if (db.startsWith(STORE_PREFIX))
+      qrf.setRuleStore(new EmbeddedQRuleStore(db.substring(STORE_PREFIX.length())));
+    else
+      qrf.setDbConnectionString(db);
     return qrf;
   }
 
@@ -159,6 +164,8 @@ public class QRuleToXml {
     System.out.println("  java QRuleToXml <db_connection_string> export <rule-id> <xml-file>");
     System.out.println(
       "  java QRuleToXml <db_connection_string> mass-export <rule-id> [<rule-id> ...] <xml-file>");
+    System.out.println("  a db_connection_string of the form " + STORE_PREFIX +
+      "<log-file> uses an EmbeddedQRuleStore instead of the database");
   }
 
   public QRule[] parse (InputStream in) throws Exception {
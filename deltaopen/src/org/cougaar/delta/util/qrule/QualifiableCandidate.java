@@ -37,6 +37,8 @@ public class QualifiableCandidate implements Serializable{
   private String reason;
   private String qualification = QRule.NEUTRAL;
   private Vector qualifications = new Vector();
+  // the candidate's "GeographyName:RegionName" pairs, if known
+  private Vector regions = null;
 
   public void addQualification(String ruleName) {
     qualifications.add(ruleName);
@@ -63,4 +65,28 @@ public class QualifiableCandidate implements Serializable{
     return qualifications;
   }
 
+  /**
+   * Name a region in which the candidate lies, so that it need only be
+   * tested against the rules for that region and the global rules (see
+   * QRulePartitions).  The region should be the one that the rules'
+   * "inRegion" tests examine.
+   * @param region a "GeographyName:RegionName" pair
+   */
+  public void addRegion(String region) {
+    if (regions == null)
+      regions = new Vector();
+    if (!regions.contains(region))
+      regions.addElement(region);
+  }
+
+  /**
+   * Get the regions in which the candidate lies.
+   * @return a Vector of "GeographyName:RegionName" pairs, or null if they
+   *         are not known, in which case the candidate must be tested
+   *         against every rule
+   */
+  public Vector getRegions(){
+    return regions;
+  }
+
 }